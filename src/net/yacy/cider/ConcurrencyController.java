@@ -0,0 +1,191 @@
+/**
+ *  ConcurrencyController.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import org.apache.log4j.Logger;
+
+/**
+ * the concurrency controller adapts the number of concurrent parse processes of a
+ * ConcurrentOfflineExtractor to the current work load. It follows the AIMD scheme:
+ * while documents wait in the queue, the concurrency is increased by one in every interval.
+ * If the throughput drops after an increase, or if the garbage collector takes too
+ * much of the time, the concurrency is reduced by a factor.
+ * CPU-bound documents therefore settle near the number of cores, while I/O-bound
+ * documents lead to a higher concurrency.
+ */
+public class ConcurrencyController extends Thread {
+
+    private static final Logger log = Logger.getLogger(ConcurrencyController.class.getName());
+    
+    private static final double THROUGHPUT_TOLERANCE = 0.05; // relative throughput loss that is accepted as noise
+    private static final double THROUGHPUT_DECREASE  = 0.75; // concurrency factor after a throughput loss
+    private static final double GC_DECREASE          = 0.5;  // concurrency factor under gc pressure
+    
+    private final ConcurrentOfflineExtractor extractor;
+    private final int minConcurrency, maxConcurrency;
+    private final long interval;
+    private final double maxGCFraction;
+    private boolean running;
+    
+    // the measurements of the last interval
+    private double throughput, queueWait, gcFraction;
+    
+    /**
+     * create a controller. The controller must be started to become active.
+     * @param extractor the extractor that is controlled
+     * @param minConcurrency the lowest concurrency that is set
+     * @param maxConcurrency the highest concurrency that is set
+     * @param interval the measurement interval in milliseconds
+     * @param maxGCFraction the fraction of time that the garbage collector may use before the concurrency is reduced, i.e. 0.1
+     */
+    public ConcurrencyController(
+            final ConcurrentOfflineExtractor extractor,
+            final int minConcurrency,
+            final int maxConcurrency,
+            final long interval,
+            final double maxGCFraction) {
+        super("ConcurrencyController");
+        if (minConcurrency < 1 || maxConcurrency < minConcurrency) throw new IllegalArgumentException("bad concurrency range " + minConcurrency + " - " + maxConcurrency);
+        if (interval <= 0) throw new IllegalArgumentException("interval must be positive");
+        this.setDaemon(true);
+        this.extractor = extractor;
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.interval = interval;
+        this.maxGCFraction = maxGCFraction;
+        this.running = true;
+        this.throughput = 0;
+        this.queueWait = 0;
+        this.gcFraction = 0;
+    }
+    
+    /**
+     * stop the controller; the concurrency of the extractor remains as it is
+     */
+    public void terminate() {
+        synchronized (this) {
+            this.running = false;
+        }
+        this.interrupt();
+    }
+    
+    /**
+     * the sum of the collection times of all garbage collectors
+     * @return gc time in milliseconds
+     */
+    private static long gcTime() {
+        long t = 0;
+        for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+            long c = gc.getCollectionTime();
+            if (c > 0) t += c;
+        }
+        return t;
+    }
+    
+    public void run() {
+        long lastTime = System.currentTimeMillis();
+        long lastCompleted = this.extractor.completed();
+        long lastStarted = this.extractor.started();
+        long lastWait = this.extractor.queueWaitTime();
+        long lastGC = gcTime();
+        double lastThroughput = 0;
+        boolean increased = false;
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (!this.running) return;
+                }
+                Thread.sleep(this.interval);
+                
+                // measure
+                final long time = System.currentTimeMillis();
+                final long completed = this.extractor.completed();
+                final long started = this.extractor.started();
+                final long wait = this.extractor.queueWaitTime();
+                final long gc = gcTime();
+                final long dt = Math.max(1, time - lastTime);
+                final double throughput = (completed - lastCompleted) * 1000.0d / dt;
+                final double queueWait = (started == lastStarted) ? 0 : ((double) (wait - lastWait)) / (started - lastStarted);
+                final double gcFraction = ((double) (gc - lastGC)) / dt;
+                synchronized (this) {
+                    this.throughput = throughput;
+                    this.queueWait = queueWait;
+                    this.gcFraction = gcFraction;
+                }
+                lastTime = time;
+                lastCompleted = completed;
+                lastStarted = started;
+                lastWait = wait;
+                lastGC = gc;
+                
+                // control
+                final int concurrency = this.extractor.getConcurrency();
+                int next = concurrency;
+                if (gcFraction > this.maxGCFraction) {
+                    // the heap is under pressure: back off strongly
+                    next = (int) (concurrency * GC_DECREASE);
+                } else if (increased && throughput < lastThroughput * (1.0d - THROUGHPUT_TOLERANCE)) {
+                    // the last increase did not pay off
+                    next = (int) (concurrency * THROUGHPUT_DECREASE);
+                } else if (this.extractor.pending() > 0 || queueWait > this.interval / 10) {
+                    // work is waiting: probe for more throughput
+                    next = concurrency + 1;
+                }
+                next = Math.max(this.minConcurrency, Math.min(this.maxConcurrency, next));
+                increased = next > concurrency;
+                lastThroughput = throughput;
+                if (next != concurrency) {
+                    if (log.isDebugEnabled()) log.debug("concurrency " + concurrency + " -> " + next + " (" + String.format("%.1f", throughput) + " documents/s, queue wait " + String.format("%.0f", queueWait) + " ms, gc " + String.format("%.1f", gcFraction * 100) + "%)");
+                    this.extractor.setConcurrency(next);
+                }
+            }
+        } catch (InterruptedException e) {}
+    }
+    
+    /**
+     * the throughput that was measured in the last interval
+     * @return documents per second
+     */
+    public synchronized double getThroughput() {
+        return this.throughput;
+    }
+    
+    /**
+     * the average time that the documents started in the last interval had waited in the queue
+     * @return queue wait time in milliseconds
+     */
+    public synchronized double getQueueWait() {
+        return this.queueWait;
+    }
+    
+    /**
+     * the fraction of the last interval that was used by the garbage collector
+     * @return gc time fraction, 0 .. 1
+     */
+    public synchronized double getGCFraction() {
+        return this.gcFraction;
+    }
+}
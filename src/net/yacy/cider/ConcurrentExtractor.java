@@ -22,6 +22,8 @@
 
 package net.yacy.cider;
 
+import java.util.concurrent.CompletableFuture;
+
 import com.hp.hpl.jena.rdf.model.Model;
 
 import net.yacy.cider.document.DataSource;
@@ -29,8 +31,38 @@ import net.yacy.cider.document.URI;
 
 public interface ConcurrentExtractor {
 
+    /**
+     * enqueue a source for extraction. This blocks if the extractor
+     * has too many pending sources (backpressure).
+     * @param source the source to be parsed
+     * @return the uri of the submitted source or null if the source produces no result:
+     * either the extractor skipped it or the calling thread was interrupted, in which case
+     * the interrupt flag of the thread is set
+     */
     public URI submit(DataSource source);
     
+    /**
+     * enqueue a source for extraction and return a future for its result.
+     * The result is not delivered by take(). The future fails with a
+     * ParserException if the source cannot be parsed. Like submit(), this
+     * blocks if the extractor has too many pending sources.
+     * @param source the source to be parsed
+     * @return a future that is completed with the parsed model
+     */
+    public CompletableFuture<Model> submitAsync(DataSource source);
+    
+    /**
+     * get the next extraction result. This blocks until a result is available.
+     * Every submitted source produces exactly one result; sources that could
+     * not be parsed produce a null result.
+     * @return the parsed model or null if the parser failed
+     */
     public Model take();
     
+    /**
+     * process all pending sources and terminate the extractor threads.
+     * Results of pending sources can still be retrieved with take().
+     */
+    public void close();
+    
 }
@@ -22,21 +22,957 @@
 
 package net.yacy.cider;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 import net.yacy.cider.document.DataSource;
 import net.yacy.cider.document.URI;
+import net.yacy.cider.parser.Parser;
+import net.yacy.cider.parser.ParserException;
+import net.yacy.cider.util.Digest;
+import net.yacy.cider.util.MemoryBudget;
+
+import org.apache.log4j.Logger;
 
 import com.hp.hpl.jena.rdf.model.Model;
 
+/**
+ * a ConcurrentExtractor that runs a pool of worker threads on the local host.
+ * Sources are placed into a bounded input queue; submit() blocks if that queue is full
+ * so that a fast producer cannot flood the heap with pending documents.
+ * Results are delivered by take() in the order of their completion or, in ordered mode,
+ * in the order of their submission. Time limits, a memory budget, a journal and the scheduling
+ * of the input queue are optional and are described at their setters.
+ */
 public class ConcurrentOfflineExtractor implements ConcurrentExtractor {
 
-    public URI submit(DataSource source) {
-        // TODO Auto-generated method stub
-        return null;
+    private static final Logger log = Logger.getLogger(ConcurrentOfflineExtractor.class.getName());
+    
+    protected final static Entry poison = new Entry(null, null);
+    private static final ThreadMXBean threadMX = ManagementFactory.getThreadMXBean();
+    
+    private final BlockingQueue<Entry> input;
+    private final Semaphore inputSlots;
+    private final AtomicLong sequence;
+    private final long epoch;
+    
+    // the scheduling of the input queue; null if sources are processed in the order of submission
+    private volatile CostModel costModel;
+    private volatile double aging;
+    private final BlockingQueue<Entry> output;
+    
+    // results that close() has moved out of a full output queue; take() delivers them first
+    private final ConcurrentLinkedQueue<Entry> overflow;
+    private final List<Worker> workers;
+    private final AtomicLong workerCount;
+    private boolean closed;
+    
+    // the parse time limits in milliseconds, 0 means no limit; the map contains all entries that are currently parsed
+    private volatile long wallTimeLimit, cpuTimeLimit;
+    private final Map<Thread, Entry> running;
+    private Watchdog watchdog;
+    
+    // the admission control for documents; null if there is no memory limit
+    private volatile MemoryBudget memoryBudget;
+    private volatile long unknownSize;
+    
+    // the journal for resumable runs; null if no journal is written
+    private volatile ExtractionJournal journal;
+    private final AtomicLong skippedCount;
+    
+    // the parse slots limit the number of concurrent parse processes in both modes.
+    // The fetch slots limit the documents in flight in fetch mode; null if the extractor uses a worker pool
+    private final Gate parseSlots;
+    private final Semaphore fetchSlots;
+    private final int fetchConcurrency;
+    private int concurrency;
+    
+    // statistics
+    private final AtomicLong completedCount, startedCount, queueWaitTotal;
+    private final ThreadFactory fetchThreads;
+    
+    // the reorder buffer for the ordered mode; null if results are delivered in completion order
+    private final Map<Long, Entry> reorder;
+    private final Semaphore window;
+    private long nextIn, nextOut;
+    
+    /**
+     * create an extractor with one worker per available processor
+     */
+    public ConcurrentOfflineExtractor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * create an extractor with a given number of workers and an input queue
+     * that can hold two pending sources for each worker
+     * @param concurrency the number of worker threads
+     */
+    public ConcurrentOfflineExtractor(final int concurrency) {
+        this(concurrency, 2 * concurrency);
+    }
+    
+    /**
+     * create an extractor
+     * @param concurrency the number of worker threads
+     * @param queueSize the maximum number of pending sources and of unfetched results
+     */
+    public ConcurrentOfflineExtractor(final int concurrency, final int queueSize) {
+        this(concurrency, queueSize, 0);
+    }
+    
+    /**
+     * create an extractor that delivers the results in the order of submission
+     * if a reorder window is given
+     * @param concurrency the number of worker threads
+     * @param queueSize the maximum number of pending sources and of unfetched results
+     * @param reorderWindow the maximum number of sources that may be submitted but not taken.
+     * If this is 0, the results are delivered in the order of their completion.
+     * Otherwise completed results are held in a reorder buffer until all results of earlier
+     * submissions have been taken; a slow document holds back at most this number of results.
+     * The window should be larger than the concurrency, or workers will idle while
+     * the result of the oldest source is computed.
+     */
+    public ConcurrentOfflineExtractor(final int concurrency, final int queueSize, final int reorderWindow) {
+        this(concurrency, queueSize, reorderWindow, 0);
+    }
+    
+    /**
+     * create an extractor that runs one thread for each document. The thread first loads the
+     * content of the source into memory and then parses it as soon as a parse slot is free.
+     * This keeps many slow network reads in flight while the parsing is limited to the number of cores.
+     * Virtual threads are used if the JVM provides them; otherwise the documents are fetched
+     * with daemon platform threads with a small stack.
+     * @param fetchConcurrency the maximum number of documents in flight; submit() blocks if this is reached
+     * @param parseConcurrency the maximum number of documents that are parsed at the same time,
+     * usually the number of cores
+     * @param reorderWindow the reorder window for the ordered mode or 0 to deliver in completion order
+     * @return the extractor
+     */
+    public static ConcurrentOfflineExtractor newFetchingExtractor(final int fetchConcurrency, final int parseConcurrency, final int reorderWindow) {
+        if (fetchConcurrency < 1) throw new IllegalArgumentException("fetchConcurrency must be at least 1");
+        return new ConcurrentOfflineExtractor(parseConcurrency, parseConcurrency, reorderWindow, fetchConcurrency);
+    }
+    
+    private ConcurrentOfflineExtractor(final int concurrency, final int queueSize, final int reorderWindow, final int fetchConcurrency) {
+        if (concurrency < 1) throw new IllegalArgumentException("concurrency must be at least 1");
+        if (queueSize < 1) throw new IllegalArgumentException("queueSize must be at least 1");
+        if (reorderWindow < 0) throw new IllegalArgumentException("reorderWindow must not be negative");
+        // the queue is ordered by priority; in FIFO mode the priority is the sequence number.
+        // The capacity is limited by the input slots because a priority queue has no bound.
+        this.input = new PriorityBlockingQueue<Entry>(queueSize + 1, new Comparator<Entry>() {
+            public int compare(Entry o1, Entry o2) {
+                int c = Double.compare(o1.priority, o2.priority);
+                return (c != 0) ? c : (o1.sequence < o2.sequence) ? -1 : (o1.sequence > o2.sequence) ? 1 : 0;
+            }
+        });
+        this.inputSlots = new Semaphore(queueSize);
+        this.sequence = new AtomicLong(0);
+        this.epoch = System.currentTimeMillis();
+        this.costModel = null;
+        this.aging = 0;
+        this.output = new ArrayBlockingQueue<Entry>(queueSize + concurrency);
+        this.overflow = new ConcurrentLinkedQueue<Entry>();
+        this.closed = false;
+        this.reorder = (reorderWindow == 0) ? null : new HashMap<Long, Entry>();
+        this.window = (reorderWindow == 0) ? null : new Semaphore(reorderWindow);
+        this.nextIn = 0;
+        this.nextOut = 0;
+        this.fetchConcurrency = fetchConcurrency;
+        this.wallTimeLimit = 0;
+        this.cpuTimeLimit = 0;
+        this.running = new ConcurrentHashMap<Thread, Entry>();
+        this.watchdog = null;
+        this.memoryBudget = null;
+        this.unknownSize = 0;
+        this.journal = null;
+        this.skippedCount = new AtomicLong(0);
+        this.workers = new ArrayList<Worker>();
+        this.workerCount = new AtomicLong(0);
+        this.completedCount = new AtomicLong(0);
+        this.startedCount = new AtomicLong(0);
+        this.queueWaitTotal = new AtomicLong(0);
+        this.concurrency = concurrency;
+        this.parseSlots = new Gate(concurrency);
+        if (fetchConcurrency > 0) {
+            this.fetchSlots = new Semaphore(fetchConcurrency);
+            this.fetchThreads = fetchThreadFactory();
+            return;
+        }
+        this.fetchSlots = null;
+        this.fetchThreads = null;
+        for (int i = 0; i < concurrency; i++) startWorker();
+    }
+    
+    private void startWorker() {
+        startWorker(null);
+    }
+    
+    /**
+     * start a worker
+     * @param late an entry that the worker delivers before it takes sources, or null
+     */
+    private void startWorker(final Entry late) {
+        final Worker worker = new Worker(this.workerCount.getAndIncrement(), late);
+        synchronized (this.workers) {
+            this.workers.add(worker);
+        }
+        worker.start();
+    }
+    
+    /**
+     * change the number of documents that may be parsed at the same time. A ConcurrencyController
+     * can do this automatically from the statistics of the extractor.
+     * In pool mode, new workers are started if necessary; if the concurrency is reduced,
+     * surplus workers terminate after their current document, or within a second if they are idle.
+     * @param concurrency the new number of concurrent parse processes
+     */
+    public void setConcurrency(final int concurrency) {
+        if (concurrency < 1) throw new IllegalArgumentException("concurrency must be at least 1");
+        synchronized (this.parseSlots) {
+            final int delta = concurrency - this.concurrency;
+            if (delta > 0) {
+                if (this.fetchSlots == null) {
+                    int alive;
+                    synchronized (this.workers) {
+                        alive = this.workers.size();
+                    }
+                    boolean closed;
+                    synchronized (this) {
+                        closed = this.closed;
+                    }
+                    if (!closed) for (int i = alive; i < concurrency; i++) startWorker();
+                }
+                this.parseSlots.release(delta);
+            } else if (delta < 0) {
+                this.parseSlots.reduce(-delta);
+            }
+            this.concurrency = concurrency;
+        }
+    }
+    
+    /**
+     * the number of documents that may be parsed at the same time
+     * @return the current concurrency
+     */
+    public int getConcurrency() {
+        synchronized (this.parseSlots) {
+            return this.concurrency;
+        }
+    }
+    
+    /**
+     * the number of documents that had been completed, including failed documents
+     * @return completed documents count
+     */
+    public long completed() {
+        return this.completedCount.get();
+    }
+    
+    /**
+     * the number of documents where parsing had been started
+     * @return started documents count
+     */
+    public long started() {
+        return this.startedCount.get();
+    }
+    
+    /**
+     * the sum of the times that all started documents had waited between submission and start of parsing
+     * @return the total queue wait time in milliseconds
+     */
+    public long queueWaitTime() {
+        return this.queueWaitTotal.get();
+    }
+    
+    /**
+     * set limits for the time that a single document may be parsed. The limits are enforced by a
+     * watchdog thread that is started with the first limit that is set. A document that exceeds a limit
+     * produces a ParserException with the reason TIMEOUT; its thread is interrupted and replaced, and
+     * the result of the abandoned thread is discarded. The CPU time limit is only
+     * applied if the JVM can measure the CPU time of threads.
+     * @param wallTimeLimit the maximum wall-clock time in milliseconds, 0 for no limit
+     * @param cpuTimeLimit the maximum CPU time in milliseconds, 0 for no limit
+     */
+    public void setTimeLimits(final long wallTimeLimit, final long cpuTimeLimit) {
+        if (wallTimeLimit < 0 || cpuTimeLimit < 0) throw new IllegalArgumentException("time limits must not be negative");
+        this.wallTimeLimit = wallTimeLimit;
+        this.cpuTimeLimit = cpuTimeLimit;
+        if (cpuTimeLimit > 0 && !threadMX.isThreadCpuTimeSupported()) log.warn("thread cpu time not supported by this JVM, cpu time limit is ignored");
+        synchronized (this) {
+            if (this.watchdog == null && (wallTimeLimit > 0 || cpuTimeLimit > 0) && !this.closed) {
+                this.watchdog = new Watchdog();
+                this.watchdog.start();
+            }
+        }
+    }
+    
+    /**
+     * limit the heap space that the documents in process may use. A document is only parsed, or fetched,
+     * when its size fits into the budget together with all other documents in process. The size of a document is estimated
+     * from its content length; a document that is larger than the budget is processed alone.
+     * This should be set before the first source is submitted.
+     * @param budget the number of bytes of all documents in process, 0 for no limit
+     * @param unknownSize the size that is assumed for documents where the content length is not known
+     */
+    public void setMemoryBudget(final long budget, final long unknownSize) {
+        if (budget < 0 || unknownSize < 0) throw new IllegalArgumentException("memory budget must not be negative");
+        this.unknownSize = unknownSize;
+        this.memoryBudget = (budget == 0) ? null : new MemoryBudget(budget);
+    }
+    
+    /**
+     * switch the input queue to shortest job first. A pending source is taken before others if its
+     * priority value is smaller; the value is the estimated parse time in milliseconds minus the
+     * waiting time multiplied with the aging factor. With an aging factor of 1.0, a source that is
+     * estimated to need one second more than another source is taken first after it has waited one second longer.
+     * This has no effect on extractors that were created with newFetchingExtractor().
+     * @param costModel the model for the estimation of the parse time, or null for the order of submission
+     * @param aging the priority gain in milliseconds for each millisecond of waiting time, must be positive
+     * to guarantee that large documents are not starved by a stream of small ones
+     */
+    public void setScheduling(final CostModel costModel, final double aging) {
+        if (aging < 0) throw new IllegalArgumentException("aging must not be negative");
+        this.aging = aging;
+        this.costModel = costModel;
+    }
+    
+    /**
+     * attach a journal to the extractor. A document is recorded in the journal when its result is taken
+     * or its future is completed, so that a crash cannot lose results of documents that the journal lists.
+     * Sources that the journal lists as parsed are not processed again: submit() returns null for
+     * them and submitAsync() a cancelled future. This should be done before the first source is submitted.
+     * The journal is not closed by the extractor.
+     * @param journal the journal or null to stop journaling
+     */
+    public void setJournal(final ExtractionJournal journal) {
+        this.journal = journal;
+    }
+    
+    /**
+     * the number of sources that had been skipped because the journal lists them as parsed
+     * @return skipped sources count
+     */
+    public long skipped() {
+        return this.skippedCount.get();
+    }
+    
+    /**
+     * the number of bytes of documents that are currently in process
+     * @return bytes in flight or 0 if there is no memory budget
+     */
+    public long bytesInFlight() {
+        final MemoryBudget budget = this.memoryBudget;
+        return (budget == null) ? 0 : budget.inFlight();
+    }
+    
+    /**
+     * wait until the document of the entry fits into the memory budget
+     * @param entry
+     * @return the budget that the entry has acquired bytes from, or null if there is no budget
+     * @throws InterruptedException
+     */
+    private MemoryBudget admit(final Entry entry) throws InterruptedException {
+        final MemoryBudget budget = this.memoryBudget;
+        if (budget == null) return null;
+        final long size = entry.source.getContentLength();
+        entry.size = (size < 0) ? this.unknownSize : size;
+        budget.acquire(entry.size);
+        return budget;
+    }
+    
+    /**
+     * get the CPU time that the given thread has used so far
+     * @param thread
+     * @return the cpu time in nanoseconds or -1 if the cpu time cannot be measured
+     */
+    private static long cpuTime(final Thread thread) {
+        if (!threadMX.isThreadCpuTimeSupported() || !threadMX.isThreadCpuTimeEnabled()) return -1;
+        return threadMX.getThreadCpuTime(thread.getId());
+    }
+    
+    /**
+     * find a thread factory for the fetch threads. Virtual threads are created with reflection
+     * because they are not available in all JVMs that can run this code.
+     * @return a factory for virtual threads, or for small platform daemon threads as fallback
+     */
+    private static ThreadFactory fetchThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "ConcurrentOfflineExtractor.Fetcher-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            // no virtual threads in this JVM (or only as preview feature)
+            log.info("virtual threads not available, using platform threads for fetching");
+        }
+        final AtomicLong count = new AtomicLong(0);
+        return new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(null, r, "ConcurrentOfflineExtractor.Fetcher-" + count.getAndIncrement(), 256 * 1024);
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+    
+    /**
+     * the result of an attempt to enqueue a source
+     */
+    private enum Admission {
+        QUEUED,      // the source will produce a result
+        SKIPPED,     // the journal lists the source as parsed; it produces no result
+        INTERRUPTED  // the calling thread was interrupted while waiting for space
+    }
+    
+    /**
+     * enqueue a source. If a journal is attached and lists the source as parsed, the source
+     * is skipped and null is returned like for an interrupted submission; callers can tell
+     * both cases apart by the interrupt flag of the current thread, which is only set after an interruption.
+     */
+    public URI submit(final DataSource source) {
+        return (enqueue(new Entry(source, null)) == Admission.QUEUED) ? source.getURI() : null;
+    }
+    
+    /**
+     * enqueue a source; its result bypasses the result queue and the reorder buffer and is
+     * given to the future as soon as it is computed
+     */
+    public CompletableFuture<Model> submitAsync(final DataSource source) {
+        final CompletableFuture<Model> future = new CompletableFuture<Model>();
+        if (enqueue(new Entry(source, future)) != Admission.QUEUED) future.cancel(false);
+        return future;
+    }
+    
+    private Admission enqueue(final Entry entry) {
+        final DataSource source = entry.source;
+        if (source == null) throw new IllegalArgumentException("source is null");
+        final ExtractionJournal journal = this.journal;
+        if (journal != null) {
+            entry.item = ExtractionJournal.item(source);
+            if (entry.item != null && journal.isDone(entry.item)) {
+                if (log.isDebugEnabled()) log.debug("skipped finished source " + entry.item.uri);
+                this.skippedCount.incrementAndGet();
+                return Admission.SKIPPED;
+            }
+        }
+        synchronized (this) {
+            if (this.closed) throw new IllegalStateException("extractor is closed");
+        }
+        if (this.reorder != null && entry.future == null) {
+            // in ordered mode we must reserve a place in the reorder window before we get a number
+            try {
+                this.window.acquire();
+            } catch (InterruptedException e) {
+                log.warn("interrupted while waiting for reorder window space, source not submitted: " + source.getURI());
+                Thread.currentThread().interrupt();
+                return Admission.INTERRUPTED;
+            }
+            synchronized (this.reorder) {
+                entry.number = this.nextIn++;
+            }
+        }
+        try {
+            if (this.fetchSlots == null) {
+                this.inputSlots.acquire();
+                schedule(entry);
+                this.input.put(entry);
+            } else {
+                this.fetchSlots.acquire();
+                this.fetchThreads.newThread(new Fetcher(entry)).start();
+            }
+        } catch (InterruptedException e) {
+            log.warn("interrupted while waiting for input queue space, source not submitted: " + source.getURI());
+            // the number is already taken; fill the gap in the result sequence with a failed entry.
+            // This means that the consumer will see a null result for this source.
+            if (entry.number >= 0) reorder(entry);
+            Thread.currentThread().interrupt();
+            return Admission.INTERRUPTED;
+        }
+        return Admission.QUEUED;
     }
 
+    /**
+     * compute the priority of an entry. Because all entries age with the same rate, the priority
+     * of an entry relative to the others does not change while it waits; it is computed once at submission:
+     * cost - aging * (now - enqueued) < cost' - aging * (now - enqueued') does not depend on now.
+     * @param entry
+     */
+    private void schedule(final Entry entry) {
+        entry.sequence = this.sequence.getAndIncrement();
+        final CostModel model = this.costModel;
+        if (model == null) {
+            entry.priority = entry.sequence;
+            return;
+        }
+        entry.kind = CostModel.kind(entry.source);
+        entry.length = entry.source.getContentLength();
+        final double cost = model.estimate(entry.kind, entry.length) / 1000000.0;
+        entry.priority = cost + this.aging * (entry.enqueued - this.epoch);
+    }
+    
     public Model take() {
-        // TODO Auto-generated method stub
-        return null;
+        try {
+            Entry entry;
+            if (this.reorder == null) {
+                entry = this.overflow.poll();
+                if (entry == null) entry = this.output.take();
+            } else {
+                synchronized (this.reorder) {
+                    while (!this.reorder.containsKey(this.nextOut)) this.reorder.wait();
+                    entry = this.reorder.remove(this.nextOut++);
+                }
+                this.window.release();
+            }
+            record(entry);
+            return entry.model;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+    
+    /**
+     * hand a processed entry over to the consumer side
+     * @param entry
+     * @throws InterruptedException
+     */
+    private void deliver(final Entry entry) throws InterruptedException {
+        this.completedCount.incrementAndGet();
+        if (entry.future != null) {
+            if (entry.model != null) {
+                entry.future.complete(entry.model);
+            } else {
+                entry.future.completeExceptionally(entry.error == null ? new ParserException("parsing failed", entry.source.getURI()) : entry.error);
+            }
+            record(entry);
+        } else if (this.reorder == null) {
+            this.output.put(entry);
+        } else {
+            reorder(entry);
+        }
+    }
+    
+    /**
+     * write the outcome of an entry to the journal. Entries that were never processed,
+     * like the gaps of interrupted submissions in the reorder buffer, are not recorded.
+     * @param entry
+     */
+    private void record(final Entry entry) {
+        final ExtractionJournal journal = this.journal;
+        if (journal == null || entry.item == null) return;
+        final String outcome;
+        if (entry.model != null) {
+            outcome = ExtractionJournal.PARSED;
+        } else if (entry.error != null) {
+            outcome = entry.error.getReason().name().toLowerCase();
+        } else if (entry.started > 0) {
+            outcome = "failed";
+        } else {
+            return;
+        }
+        try {
+            journal.record(entry.item, entry.hash, outcome);
+        } catch (IOException e) {
+            log.error("cannot write journal: " + e.getMessage(), e);
+        }
+    }
+    
+    private void reorder(final Entry entry) {
+        // the reorder buffer does not need a capacity check because the window semaphore
+        // limits the number of entries that can be in the buffer
+        synchronized (this.reorder) {
+            this.reorder.put(entry.number, entry);
+            if (entry.number == this.nextOut) this.reorder.notifyAll();
+        }
+    }
+    
+    /**
+     * process all pending sources and terminate the extractor threads. Threads that cannot deliver
+     * their result because nobody takes results from the full result queue would block close();
+     * the results are therefore moved out of the full queue into an unbounded list while close() waits.
+     * They can still be retrieved with take().
+     */
+    public void close() {
+        synchronized (this) {
+            if (this.closed) return;
+            this.closed = true;
+        }
+        try {
+            if (this.fetchSlots != null) {
+                // wait until all fetch threads have terminated
+                while (!this.fetchSlots.tryAcquire(this.fetchConcurrency, 100, TimeUnit.MILLISECONDS)) unblock();
+                this.fetchSlots.release(this.fetchConcurrency);
+            }
+            final List<Worker> w;
+            synchronized (this.workers) {
+                w = new ArrayList<Worker>(this.workers);
+            }
+            // the poison pills are not counted in the input slots and are sorted behind all sources
+            for (int i = 0; i < w.size(); i++) this.input.put(poison);
+            // wait for the workers; the list may change while abandoned workers are replaced
+            while (w.size() > 0) {
+                for (Worker worker: w) {
+                    worker.join(100);
+                    unblock();
+                }
+                synchronized (this.workers) {
+                    w.clear();
+                    for (Worker worker: this.workers) if (worker.isAlive()) w.add(worker);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (this.watchdog != null) this.watchdog.interrupt();
+        }
+    }
+    
+    /**
+     * move the results out of the result queue if it is full, so that threads that wait
+     * in deliver() can terminate
+     */
+    private void unblock() {
+        if (this.output.remainingCapacity() > 0) return;
+        final List<Entry> entries = new ArrayList<Entry>();
+        this.output.drainTo(entries);
+        this.overflow.addAll(entries);
+        if (log.isDebugEnabled()) log.debug("moved " + entries.size() + " results out of the full result queue");
+    }
+    
+    /**
+     * the number of sources that wait in the input queue for a worker
+     * @return pending sources count
+     */
+    public int pending() {
+        return this.input.size();
+    }
+    
+    /**
+     * the number of completed results that are held back in the reorder buffer
+     * because the result of an earlier submission is not yet available
+     * @return buffered results count; always 0 if the extractor is not in ordered mode
+     */
+    public int buffered() {
+        if (this.reorder == null) return 0;
+        synchronized (this.reorder) {
+            return this.reorder.size();
+        }
+    }
+    
+    /**
+     * a submitted source and its result. The fields are set by the extractor in the course of the processing.
+     */
+    protected final static class Entry {
+        private final DataSource source;
+        private final CompletableFuture<Model> future;
+        private final long enqueued;
+        private long number;
+        private Model model;
+        private ParserException error;
+        private long started, cpuStarted, size;
+        private ExtractionJournal.Item item;
+        private String hash;
+        private double priority;
+        private long sequence, length;
+        private String kind;
+        private final AtomicBoolean claimed;
+        public Entry(final DataSource source, final CompletableFuture<Model> future) {
+            this.source = source;
+            this.future = future;
+            this.enqueued = System.currentTimeMillis();
+            this.number = -1;
+            this.model = null;
+            this.error = null;
+            this.started = 0;
+            this.cpuStarted = -1;
+            this.size = 0;
+            this.item = null;
+            this.hash = null;
+            this.priority = Double.POSITIVE_INFINITY;
+            this.sequence = Long.MAX_VALUE;
+            this.length = -1;
+            this.kind = null;
+            this.claimed = new AtomicBoolean(false);
+        }
+        /**
+         * claim the right to deliver the result of this entry. Both the parsing thread and the
+         * watchdog try this; only the first one succeeds.
+         * @return true if the caller may deliver the entry
+         */
+        public boolean claim() {
+            return this.claimed.compareAndSet(false, true);
+        }
+    }
+    
+    /**
+     * parse the source of an entry and hand the result over to the consumer side
+     * @param entry
+     * @return false if the entry was taken over by the watchdog; then the calling thread is abandoned and must terminate
+     * @throws InterruptedException
+     */
+    private boolean process(final Entry entry) throws InterruptedException {
+        final Thread thread = Thread.currentThread();
+        entry.started = System.currentTimeMillis();
+        entry.cpuStarted = cpuTime(thread);
+        this.startedCount.incrementAndGet();
+        this.queueWaitTotal.addAndGet(entry.started - entry.enqueued);
+        this.running.put(thread, entry);
+        Model model = null;
+        ParserException error = null;
+        final long startNanos = System.nanoTime();
+        DigestInputStream digest = null;
+        try {
+            digest = digest(entry);
+            model = Parser.parseSource(entry.source);
+        } catch (ParserException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            error = new ParserException("interrupted", entry.source.getURI(), e);
+        } catch (IOException e) {
+            error = new ParserException("cannot read content: " + e.getMessage(), entry.source.getURI(), e);
+        } catch (RuntimeException e) {
+            log.error("unexpected exception while parsing " + entry.source.getURI() + ": " + e.getMessage(), e);
+            error = new ParserException("unexpected exception: " + e.getMessage(), entry.source.getURI(), e);
+        } finally {
+            this.running.remove(thread);
+        }
+        if (digest != null) try {
+            // the hash of a parsed document needs the whole content; the rest is read only for the hash
+            if (error == null && !entry.claimed.get()) entry.hash = Digest.finish(digest);
+        } catch (IOException e) {
+            log.warn("cannot compute content hash of " + entry.source.getURI() + ": " + e.getMessage());
+        } finally {
+            try {digest.close();} catch (IOException e) {}
+        }
+        if (!entry.claim()) {
+            // the watchdog has delivered a timeout for this entry and replaced this thread; forget the interrupt
+            Thread.interrupted();
+            return false;
+        }
+        if (error != null) log.warn("parser failed: " + error.getMessage());
+        final CostModel costModel = this.costModel;
+        if (costModel != null && entry.kind != null) costModel.learn(entry.kind, entry.length, System.nanoTime() - startNanos);
+        entry.model = model;
+        entry.error = error;
+        deliver(entry);
+        return true;
+    }
+    
+    /**
+     * prepare the content hash of an entry for the journal. The content of a source that has an array
+     * is hashed at once; a source that has only an uri gets a stream that computes the hash while
+     * the parser reads it, so that the content is not read twice.
+     * @param entry
+     * @return the stream that computes the hash, or null
+     * @throws IOException
+     */
+    private static DigestInputStream digest(final Entry entry) throws IOException {
+        if (entry.item == null) return null;
+        final DataSource source = entry.source;
+        if (source.hasArray()) {
+            entry.hash = Digest.md5Hex(source.getArray());
+            return null;
+        }
+        if (source.hasStream() || !source.hasURI()) return null;
+        final InputStream is = source.getURI().getInputStream();
+        final DigestInputStream digest = Digest.md5Stream(is);
+        source.setStream(digest);
+        return digest;
+    }
+    
+    /**
+     * remove a worker from the pool if there are more workers than the concurrency
+     * @param worker
+     * @return true if the worker must terminate
+     */
+    private boolean retire(final Worker worker) {
+        synchronized (this.parseSlots) {
+            synchronized (this.workers) {
+                if (this.workers.size() <= this.concurrency || !this.workers.remove(worker)) return false;
+            }
+        }
+        if (log.isDebugEnabled()) log.debug("retired surplus worker " + worker.getName());
+        return true;
+    }
+    
+    protected final class Worker extends Thread {
+        private final Entry late;
+        
+        public Worker(final long number, final Entry late) {
+            super("ConcurrentOfflineExtractor.Worker-" + number);
+            this.setDaemon(true);
+            this.late = late;
+        }
+        
+        public void run() {
+            Entry entry;
+            try {
+                // the timeout of the worker that this worker replaces
+                if (this.late != null) deliver(this.late);
+                while (true) {
+                    if (retire(this)) return;
+                    // wait in steps, so that an idle worker notices a reduced concurrency
+                    if (!parseSlots.tryAcquire(1, TimeUnit.SECONDS)) continue;
+                    boolean owned = true;
+                    try {
+                        entry = input.poll(1, TimeUnit.SECONDS);
+                        if (entry == null) continue;
+                        if (entry == poison) return;
+                        inputSlots.release();
+                        // a future may have been cancelled while the entry was waiting in the queue
+                        if (entry.future != null && entry.future.isDone()) continue;
+                        final MemoryBudget budget = admit(entry);
+                        try {
+                            owned = process(entry);
+                            if (!owned) return;
+                        } finally {
+                            if (budget != null) budget.release(entry.size);
+                        }
+                    } finally {
+                        // an abandoned worker had its slot released by the watchdog
+                        if (owned) parseSlots.release();
+                    }
+                }
+            } catch (InterruptedException e) {}
+        }
+    }
+    
+    protected final class Fetcher implements Runnable {
+        private final Entry entry;
+        
+        public Fetcher(final Entry entry) {
+            this.entry = entry;
+        }
+        
+        public void run() {
+            boolean owned = true;
+            MemoryBudget budget = null;
+            try {
+                if (this.entry.future != null && this.entry.future.isDone()) return;
+                budget = admit(this.entry);
+                // load the content; this is the part that blocks on network shares
+                if (!this.entry.source.hasArray() && this.entry.source.getArray() == null) {
+                    this.entry.error = new ParserException("cannot load content", this.entry.source.getURI());
+                    deliver(this.entry);
+                    return;
+                }
+                parseSlots.acquire();
+                try {
+                    owned = process(this.entry);
+                } finally {
+                    // an abandoned fetcher had its slots released by the watchdog
+                    if (owned) parseSlots.release();
+                }
+            } catch (InterruptedException e) {
+            } finally {
+                if (budget != null) budget.release(this.entry.size);
+                if (owned) fetchSlots.release();
+            }
+        }
+    }
+    
+    /**
+     * delivers an entry that the watchdog has given up in fetch mode
+     */
+    protected final class Delivery implements Runnable {
+        private final Entry entry;
+        
+        public Delivery(final Entry entry) {
+            this.entry = entry;
+        }
+        
+        public void run() {
+            try {
+                deliver(this.entry);
+            } catch (InterruptedException e) {}
+        }
+    }
+    
+    /**
+     * a semaphore where the number of permits can be reduced at run-time
+     */
+    private static final class Gate extends Semaphore {
+        private static final long serialVersionUID = 1L;
+        public Gate(final int permits) {
+            super(permits);
+        }
+        public void reduce(final int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+    
+    /**
+     * the watchdog checks all running parse processes against the time limits.
+     * If a limit is exceeded the parsing thread is interrupted and replaced, and the entry
+     * gets a timeout error. The watchdog does not deliver the entry itself because delivery can block
+     * on the output queue; the replacement thread delivers it, so that other timeouts are not delayed.
+     */
+    protected final class Watchdog extends Thread {
+        public Watchdog() {
+            super("ConcurrentOfflineExtractor.Watchdog");
+            this.setDaemon(true);
+        }
+        
+        public void run() {
+            try {
+                while (true) {
+                    long limit = Math.min(wallTimeLimit <= 0 ? Long.MAX_VALUE : wallTimeLimit, cpuTimeLimit <= 0 ? Long.MAX_VALUE : cpuTimeLimit);
+                    Thread.sleep(Math.max(10, Math.min(1000, limit / 4)));
+                    final long now = System.currentTimeMillis();
+                    for (Map.Entry<Thread, Entry> r: running.entrySet()) {
+                        final Thread thread = r.getKey();
+                        final Entry entry = r.getValue();
+                        String reason = null;
+                        if (wallTimeLimit > 0 && now - entry.started > wallTimeLimit) {
+                            reason = "wall-clock time limit of " + wallTimeLimit + " ms exceeded";
+                        } else if (cpuTimeLimit > 0 && entry.cpuStarted >= 0) {
+                            long cpu = cpuTime(thread);
+                            if (cpu >= 0 && (cpu - entry.cpuStarted) / 1000000L > cpuTimeLimit) reason = "cpu time limit of " + cpuTimeLimit + " ms exceeded";
+                        }
+                        if (reason == null || !entry.claim()) continue;
+                        abandon(thread, entry, reason);
+                    }
+                }
+            } catch (InterruptedException e) {}
+        }
+        
+        private void abandon(final Thread thread, final Entry entry, final String reason) {
+            log.warn("abandoned parser thread " + thread.getName() + ": " + reason + " for " + entry.source.getURI());
+            running.remove(thread);
+            thread.interrupt();
+            entry.model = null;
+            entry.error = new ParserException(reason, entry.source.getURI(), ParserException.Reason.TIMEOUT);
+            parseSlots.release();
+            if (thread instanceof Worker) {
+                synchronized (workers) {
+                    workers.remove(thread);
+                }
+                startWorker(entry);
+            } else {
+                fetchSlots.release();
+                fetchThreads.newThread(new Delivery(entry)).start();
+            }
+        }
     }
-
 }
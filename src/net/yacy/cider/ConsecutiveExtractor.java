@@ -22,6 +22,9 @@
 
 package net.yacy.cider;
 
+import java.io.IOException;
+import java.util.Iterator;
+
 import net.yacy.cider.document.DataSource;
 
 import com.hp.hpl.jena.rdf.model.Model;
@@ -30,4 +33,14 @@ public interface ConsecutiveExtractor {
 
     public Model process(DataSource source);
     
+    /**
+     * process a batch of sources and hand every model to a sink as soon as it is extracted.
+     * The models are not collected by the extractor, sources that cannot be parsed are skipped.
+     * @param sources the sources to be parsed
+     * @param sink the receiver of the models
+     * @return a summary of the batch
+     * @throws IOException if the sink fails; the remaining sources are not processed
+     */
+    public ExtractionSummary processAll(Iterator<DataSource> sources, ModelSink sink) throws IOException;
+    
 }
@@ -22,10 +22,13 @@
 
 package net.yacy.cider;
 
+import java.io.IOException;
+import java.util.Iterator;
 
 import org.apache.log4j.Logger;
 
 import net.yacy.cider.document.DataSource;
+import net.yacy.cider.parser.IdiomSessionPool;
 import net.yacy.cider.parser.Parser;
 import net.yacy.cider.parser.ParserException;
 import net.yacy.cider.util.FileUtils;
@@ -37,15 +40,50 @@ public class ConsecutiveOfflineExtractor implements ConsecutiveExtractor {
     private static final Logger log = Logger.getLogger(FileUtils.class.getName());
     
     public Model process(DataSource source) {
-     
+        return process(source, null);
+    }
+    
+    /**
+     * parse a source with the sessions of a batch
+     * @param source
+     * @param pool the sessions of the batch or null to use the session pool of the Parser
+     * @return the model or null if the source cannot be parsed
+     */
+    private Model process(DataSource source, IdiomSessionPool pool) {
         try {
-            return Parser.parseSource(source);
+            return (pool == null) ? Parser.parseSource(source) : Parser.parseSource(source, pool);
         } catch (InterruptedException e) {
             log.error("interrupted", e);
+            Thread.currentThread().interrupt();
         } catch (ParserException e) {
             log.error("parser failed", e);
         }
         return null;
     }
 
+    public ExtractionSummary processAll(Iterator<DataSource> sources, ModelSink sink) throws IOException {
+        ExtractionSummary summary = new ExtractionSummary();
+        // the batch is parsed by one thread; one session per idiom is opened and used for all documents
+        IdiomSessionPool pool = new IdiomSessionPool(1);
+        DataSource source;
+        Model model;
+        try {
+            while (sources.hasNext()) {
+                source = sources.next();
+                model = process(source, pool);
+                summary.count(source.getContentLength(), model == null);
+                if (model != null) sink.put(source, model);
+                if (Thread.currentThread().isInterrupted()) {
+                    log.warn("batch interrupted after " + summary.getDocuments() + " documents");
+                    break;
+                }
+            }
+        } finally {
+            pool.close();
+        }
+        summary.finish();
+        log.info("batch finished: " + summary.toString());
+        return summary;
+    }
+    
 }
@@ -0,0 +1,138 @@
+/**
+ *  CostModel.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.yacy.cider.document.DataSource;
+import net.yacy.cider.document.Extension;
+import net.yacy.cider.document.MimeType;
+import net.yacy.cider.document.URI;
+import net.yacy.cider.parser.Parser;
+import net.yacy.cider.util.FileUtils;
+
+/**
+ * the cost model estimates the time that is needed to parse a document from its size and its kind.
+ * For every kind of document (the mime type, or the extension if the mime type is not known) the model
+ * learns the parse time per byte as a moving average of the finished documents. Because every document has
+ * a fixed cost independent from its size, small documents are counted with a minimum size.
+ * The learned values can be saved and loaded again for the next run.
+ */
+public class CostModel {
+
+    private static final double ALPHA = 0.1; // weight of a new observation in the moving average
+    private static final long MIN_SIZE = 16 * 1024;
+    
+    private final Map<String, Double> nanosPerByte;
+    private final double defaultNanosPerByte;
+    private final long defaultSize;
+    
+    /**
+     * @param defaultNanosPerByte the parse time per byte for kinds that were not seen so far
+     * @param defaultSize the size that is assumed for documents where the content length is not known
+     */
+    public CostModel(final double defaultNanosPerByte, final long defaultSize) {
+        this.nanosPerByte = new HashMap<String, Double>();
+        this.defaultNanosPerByte = defaultNanosPerByte;
+        this.defaultSize = defaultSize;
+    }
+    
+    public CostModel() {
+        this(100.0, 1024 * 1024);
+    }
+    
+    /**
+     * get the kind of a document that selects the learned cost factor
+     * @param source
+     * @return the mime type, the file extension or "unknown"
+     */
+    public static String kind(final DataSource source) {
+        MimeType mime = source.getMimeType();
+        final URI uri = source.getURI();
+        if (mime == null) mime = Parser.mimeOf(uri);
+        if (mime != null) return mime.name();
+        final Extension ext = (uri == null) ? null : uri.getFileExtension();
+        return (ext == null) ? "unknown" : ext.name();
+    }
+    
+    /**
+     * the size of a document that is used for the estimation
+     * @param size the content length or -1 if it is not known
+     * @return the size that is counted
+     */
+    public long size(final long size) {
+        return Math.max(MIN_SIZE, (size < 0) ? this.defaultSize : size);
+    }
+    
+    /**
+     * estimate the parse time of a document
+     * @param kind the kind of the document
+     * @param size the content length or -1 if it is not known
+     * @return the estimated parse time in nanoseconds
+     */
+    public synchronized long estimate(final String kind, final long size) {
+        final Double f = this.nanosPerByte.get(kind);
+        return (long) (size(size) * ((f == null) ? this.defaultNanosPerByte : f.doubleValue()));
+    }
+    
+    /**
+     * learn from a finished document
+     * @param kind the kind of the document
+     * @param size the content length or -1 if it is not known
+     * @param nanos the time that was needed to parse the document
+     */
+    public synchronized void learn(final String kind, final long size, final long nanos) {
+        final double observed = ((double) nanos) / size(size);
+        final Double f = this.nanosPerByte.get(kind);
+        this.nanosPerByte.put(kind, (f == null) ? observed : (1.0 - ALPHA) * f.doubleValue() + ALPHA * observed);
+    }
+    
+    /**
+     * load the cost factors of a previous run
+     * @param file
+     */
+    public synchronized void load(final File file) {
+        if (!file.exists()) return;
+        final Map<String, String> map = FileUtils.loadMap(file);
+        if (map == null) return;
+        for (Map.Entry<String, String> entry: map.entrySet()) {
+            try {
+                this.nanosPerByte.put(entry.getKey(), Double.valueOf(entry.getValue()));
+            } catch (NumberFormatException e) {}
+        }
+    }
+    
+    /**
+     * save the cost factors for the next run
+     * @param file
+     * @throws IOException
+     */
+    public synchronized void save(final File file) throws IOException {
+        final Map<String, String> map = new HashMap<String, String>();
+        for (Map.Entry<String, Double> entry: this.nanosPerByte.entrySet()) map.put(entry.getKey(), entry.getValue().toString());
+        FileUtils.saveMap(file, map, "parse time in nanoseconds per byte");
+    }
+}
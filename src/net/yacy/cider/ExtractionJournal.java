@@ -0,0 +1,199 @@
+/**
+ *  ExtractionJournal.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import net.yacy.cider.document.DataSource;
+import net.yacy.cider.document.URI;
+import net.yacy.cider.util.Digest;
+import net.yacy.cider.util.LongHashSet;
+
+import org.apache.log4j.Logger;
+
+/**
+ * the extraction journal records every finished document of a long extraction run in an append-only file.
+ * Each line contains the normalized uri, the size, the last-modified date, the md5 hash of the content
+ * (or - if the content was not read) and the outcome of the extraction, separated by tabs.
+ * When a run is restarted, the journal of the previous run is loaded and documents with the same uri,
+ * size and last-modified date that were parsed successfully are skipped; documents with any other outcome
+ * are tried again. For the skip check only a 64 bit hash of these attributes is
+ * held in memory for each parsed document.
+ * The file is synchronized to the disk after a batch of records to limit the number of fsync calls;
+ * after a crash at most the records of the last batch are lost, and these documents are processed again.
+ */
+public class ExtractionJournal {
+
+    private static final Logger log = Logger.getLogger(ExtractionJournal.class.getName());
+    
+    /**
+     * the outcome of a successful extraction; documents with this outcome are not extracted again
+     */
+    public static final String PARSED = "parsed";
+    
+    private final File file;
+    private final LongHashSet done;
+    private final FileOutputStream fos;
+    private final Writer writer;
+    private final int syncBatch;
+    private int unsynced;
+    
+    /**
+     * open a journal. If the file exists, the records are loaded and new records are appended.
+     * @param file the journal file
+     * @param syncBatch the number of records after which the file is synchronized to the disk
+     * @throws IOException
+     */
+    public ExtractionJournal(final File file, final int syncBatch) throws IOException {
+        if (syncBatch < 1) throw new IllegalArgumentException("syncBatch must be at least 1");
+        this.file = file;
+        this.syncBatch = syncBatch;
+        this.unsynced = 0;
+        this.done = new LongHashSet();
+        if (file.exists()) load();
+        this.fos = new FileOutputStream(file, true);
+        this.writer = new BufferedWriter(new OutputStreamWriter(this.fos, "UTF-8"));
+    }
+    
+    private void load() throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.file), "UTF-8"));
+        int broken = 0;
+        try {
+            String line;
+            String[] fields;
+            while ((line = reader.readLine()) != null) {
+                fields = line.split("\t");
+                // a crash may leave an incomplete last line
+                if (fields.length < 5) {
+                    broken++;
+                    continue;
+                }
+                // failed documents are tried again
+                if (!PARSED.equals(fields[4])) continue;
+                try {
+                    this.done.add(key(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+                } catch (NumberFormatException e) {
+                    broken++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        log.info("loaded journal " + this.file + ": " + this.done.size() + " parsed documents" + ((broken > 0) ? ", " + broken + " broken records" : ""));
+    }
+    
+    private static long key(final String uri, final long size, final long lastModified) {
+        return Digest.fnv64(uri + "\t" + size + "\t" + lastModified);
+    }
+    
+    /**
+     * the attributes of a document that identify it in the journal
+     */
+    public static final class Item {
+        public final String uri;
+        public final long size, lastModified;
+        private Item(final String uri, final long size, final long lastModified) {
+            this.uri = uri;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+        public long key() {
+            return ExtractionJournal.key(this.uri, this.size, this.lastModified);
+        }
+    }
+    
+    /**
+     * get the journal attributes of a source. This must be computed before the document is
+     * parsed, because the parser may change the content attributes of the source.
+     * @param source
+     * @return the item or null if the source has no uri
+     */
+    public static Item item(final DataSource source) {
+        final URI uri = source.getURI();
+        if (uri == null) return null;
+        final long lastModified = (uri.isFile() || uri.isSMB()) ? uri.lastModified() : 0;
+        return new Item(uri.toNormalform(true, false), source.getContentLength(), lastModified);
+    }
+    
+    /**
+     * check if a document was parsed in a previous run
+     * @param item
+     * @return true if the journal contains a record of the successful extraction of the document
+     */
+    public synchronized boolean isDone(final Item item) {
+        return this.done.contains(item.key());
+    }
+    
+    /**
+     * append a record for a finished document
+     * @param item the document attributes
+     * @param hash the md5 hash of the content as hex string, or null if the content was not read
+     * @param outcome the result of the extraction, i.e. PARSED or the reason of the failure
+     * @throws IOException
+     */
+    public synchronized void record(final Item item, final String hash, final String outcome) throws IOException {
+        this.writer.write(item.uri);
+        this.writer.write('\t');
+        this.writer.write(Long.toString(item.size));
+        this.writer.write('\t');
+        this.writer.write(Long.toString(item.lastModified));
+        this.writer.write('\t');
+        this.writer.write((hash == null) ? "-" : hash);
+        this.writer.write('\t');
+        this.writer.write(outcome);
+        this.writer.write('\n');
+        if (PARSED.equals(outcome)) this.done.add(item.key());
+        if (++this.unsynced >= this.syncBatch) sync();
+    }
+    
+    /**
+     * write all records to the disk
+     * @throws IOException
+     */
+    public synchronized void sync() throws IOException {
+        this.writer.flush();
+        this.fos.getFD().sync();
+        this.unsynced = 0;
+    }
+    
+    /**
+     * the number of documents that the journal lists as parsed
+     * @return parsed documents count
+     */
+    public synchronized int size() {
+        return this.done.size();
+    }
+    
+    public synchronized void close() throws IOException {
+        sync();
+        this.writer.close();
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ *  ExtractionPublisher.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+import net.yacy.cider.document.DataSource;
+
+import org.apache.log4j.Logger;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * a Flow.Publisher that extracts the models of a sequence of sources with a ConcurrentExtractor.
+ * Sources are only submitted to the extractor if the subscriber has requested more models than
+ * are already in flight, so a slow subscriber throttles the extraction instead of piling up
+ * results on the heap. Models are published in the order of their completion; sources that
+ * cannot be parsed are skipped and do not consume demand.
+ * The publisher accepts only one subscriber because the source iterator can only be consumed once.
+ * The extractor should not be shared with other producers while it is used by the publisher;
+ * then maxInFlight should not exceed the queue size of the extractor so that workers that
+ * complete a source never block when they submit the next one.
+ */
+public class ExtractionPublisher implements Flow.Publisher<Model> {
+
+    private static final Logger log = Logger.getLogger(ExtractionPublisher.class.getName());
+    
+    private final ConcurrentExtractor extractor;
+    private final Iterator<DataSource> sources;
+    private final int maxInFlight;
+    private boolean subscribed;
+    
+    /**
+     * create a publisher
+     * @param extractor the extractor that parses the sources
+     * @param sources the sources to be parsed
+     * @param maxInFlight the maximum number of sources that are submitted but not yet published
+     */
+    public ExtractionPublisher(final ConcurrentExtractor extractor, final Iterator<DataSource> sources, final int maxInFlight) {
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be at least 1");
+        this.extractor = extractor;
+        this.sources = sources;
+        this.maxInFlight = maxInFlight;
+        this.subscribed = false;
+    }
+
+    public void subscribe(final Flow.Subscriber<? super Model> subscriber) {
+        if (subscriber == null) throw new NullPointerException("subscriber is null");
+        synchronized (this) {
+            if (this.subscribed) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    public void request(long n) {}
+                    public void cancel() {}
+                });
+                subscriber.onError(new IllegalStateException("publisher accepts only one subscriber"));
+                return;
+            }
+            this.subscribed = true;
+        }
+        final Subscription subscription = new Subscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+    
+    private final class Subscription implements Flow.Subscription {
+        
+        private final Flow.Subscriber<? super Model> subscriber;
+        private final ArrayDeque<Model> ready;
+        private long demand;
+        private int inFlight;
+        private boolean cancelled, exhausted, draining;
+        private Throwable failure;
+        
+        public Subscription(final Flow.Subscriber<? super Model> subscriber) {
+            this.subscriber = subscriber;
+            this.ready = new ArrayDeque<Model>();
+            this.demand = 0;
+            this.inFlight = 0;
+            this.cancelled = false;
+            this.exhausted = false;
+            this.draining = false;
+            this.failure = null;
+        }
+        
+        public void request(final long n) {
+            synchronized (this) {
+                if (this.cancelled) return;
+                if (n <= 0) {
+                    this.failure = new IllegalArgumentException("non-positive request: " + n);
+                } else {
+                    this.demand += n;
+                    if (this.demand < 0) this.demand = Long.MAX_VALUE; // overflow means unbounded
+                }
+            }
+            drain();
+        }
+
+        public void cancel() {
+            synchronized (this) {
+                this.cancelled = true;
+                this.ready.clear();
+            }
+        }
+        
+        private void completed(final Model model, final Throwable error) {
+            synchronized (this) {
+                this.inFlight--;
+                if (this.cancelled) return;
+                if (model != null) {
+                    this.ready.add(model);
+                } else if (log.isDebugEnabled()) {
+                    log.debug("skipped source that could not be parsed: " + ((error == null) ? "no model" : error.getMessage()));
+                }
+            }
+            drain();
+        }
+        
+        /**
+         * the drain loop is the only place where subscriber signals are emitted and where sources are submitted.
+         * It is entered by one thread at a time; a thread that finds the loop busy leaves the work to the
+         * draining thread, which re-evaluates the state in every pass. This serializes the signals and
+         * bounds the recursion depth if the subscriber calls request() from within onNext().
+         */
+        private void drain() {
+            synchronized (this) {
+                if (this.draining) return;
+                this.draining = true;
+            }
+            while (true) {
+                Model next = null;
+                Throwable error = null;
+                boolean submit = false, complete = false;
+                synchronized (this) {
+                    if (this.cancelled) {
+                        this.draining = false;
+                        return;
+                    }
+                    if (this.failure != null) {
+                        error = this.failure;
+                        this.cancelled = true;
+                    } else if (this.demand > 0 && !this.ready.isEmpty()) {
+                        next = this.ready.poll();
+                        if (this.demand != Long.MAX_VALUE) this.demand--;
+                    } else if (!this.exhausted && this.inFlight < maxInFlight && this.inFlight + this.ready.size() < this.demand) {
+                        submit = true;
+                    } else if (this.exhausted && this.inFlight == 0 && this.ready.isEmpty()) {
+                        complete = true;
+                        this.cancelled = true;
+                    } else {
+                        this.draining = false;
+                        return;
+                    }
+                }
+                if (error != null) {
+                    this.subscriber.onError(error);
+                } else if (next != null) {
+                    this.subscriber.onNext(next);
+                } else if (complete) {
+                    this.subscriber.onComplete();
+                } else if (submit) {
+                    submitNext();
+                }
+            }
+        }
+        
+        private void submitNext() {
+            final DataSource source;
+            try {
+                if (!sources.hasNext()) {
+                    synchronized (this) {
+                        this.exhausted = true;
+                    }
+                    return;
+                }
+                source = sources.next();
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    this.failure = e;
+                }
+                return;
+            }
+            synchronized (this) {
+                this.inFlight++;
+            }
+            final CompletableFuture<Model> future;
+            try {
+                future = extractor.submitAsync(source);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    this.inFlight--;
+                    this.failure = e;
+                }
+                return;
+            }
+            future.whenComplete((model, error) -> completed(model, error));
+        }
+    }
+}
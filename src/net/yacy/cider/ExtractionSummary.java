@@ -0,0 +1,85 @@
+/**
+ *  ExtractionSummary.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider;
+
+/**
+ * counters for a batch of extractions
+ */
+public class ExtractionSummary {
+
+    private final long start;
+    private long documents, bytes, failures, end;
+    
+    public ExtractionSummary() {
+        this.start = System.currentTimeMillis();
+        this.documents = 0;
+        this.bytes = 0;
+        this.failures = 0;
+        this.end = 0;
+    }
+    
+    /**
+     * count a processed document
+     * @param size the size of the document in bytes or -1 if the size is not known
+     * @param failed true if the document could not be parsed
+     */
+    public synchronized void count(final long size, final boolean failed) {
+        this.documents++;
+        if (size > 0) this.bytes += size;
+        if (failed) this.failures++;
+    }
+    
+    /**
+     * mark the end of the batch
+     */
+    public synchronized void finish() {
+        this.end = System.currentTimeMillis();
+    }
+    
+    public synchronized long getDocuments() {
+        return this.documents;
+    }
+    
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+    
+    public synchronized long getFailures() {
+        return this.failures;
+    }
+    
+    /**
+     * the time since the start of the batch until it was finished, or until now if the batch is still running
+     * @return elapsed time in milliseconds
+     */
+    public synchronized long getElapsed() {
+        return ((this.end == 0) ? System.currentTimeMillis() : this.end) - this.start;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        final long elapsed = Math.max(1, getElapsed());
+        return this.documents + " documents, " + this.bytes + " bytes, " + this.failures + " failures in " + elapsed + " ms (" +
+               (this.documents * 1000 / elapsed) + " documents/s, " + (this.bytes * 1000 / elapsed) + " bytes/s)";
+    }
+}
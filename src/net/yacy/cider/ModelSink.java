@@ -0,0 +1,42 @@
+/**
+ *  ModelSink.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider;
+
+import java.io.IOException;
+
+import net.yacy.cider.document.DataSource;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+public interface ModelSink {
+
+    /**
+     * receive the result of an extraction. The sink is called as soon as the
+     * model is available; the extractor does not keep a reference to it.
+     * @param source the source that was parsed
+     * @param model the model that was extracted from the source
+     * @throws IOException if the sink cannot store the model; this terminates the batch
+     */
+    public void put(DataSource source, Model model) throws IOException;
+    
+}
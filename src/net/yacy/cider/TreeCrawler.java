@@ -0,0 +1,265 @@
+/**
+ *  TreeCrawler.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider;
+
+import java.net.MalformedURLException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.yacy.cider.document.DataSource;
+import net.yacy.cider.document.URI;
+import net.yacy.cider.parser.Parser;
+
+import org.apache.log4j.Logger;
+
+/**
+ * the tree crawler walks recursively through directories of file:// and smb:// uris
+ * and submits all files that may be parsed to a ConcurrentExtractor.
+ * Directories are listed by a number of concurrent lister threads. Because a file server
+ * suffers if it receives too many listing requests at the same time, the number of concurrent
+ * listings on the same share is limited separately. Files are filtered by their extension
+ * before they are opened; the extractor throttles the crawl if it cannot parse fast enough.
+ * The results must be taken from the extractor by another thread while the crawler is running;
+ * the number of submitted sources is available with submitted().
+ */
+public class TreeCrawler {
+
+    private static final Logger log = Logger.getLogger(TreeCrawler.class.getName());
+    
+    protected final static URI poison;
+    static {
+        URI p = null;
+        try {
+            p = new URI("file", null, -1, "/");
+        } catch (MalformedURLException e) {}
+        poison = p;
+    }
+    
+    private final ConcurrentExtractor extractor;
+    private final int concurrency, listingsPerShare;
+    private final BlockingQueue<URI> directories;
+    private final Map<String, Semaphore> shares;
+    private final AtomicLong outstanding, submitted, skipped, finished, listed;
+    
+    /**
+     * create a crawler
+     * @param extractor the extractor that receives the files
+     * @param concurrency the number of lister threads
+     * @param listingsPerShare the maximum number of concurrent listings on the same share
+     */
+    public TreeCrawler(final ConcurrentExtractor extractor, final int concurrency, final int listingsPerShare) {
+        if (concurrency < 1) throw new IllegalArgumentException("concurrency must be at least 1");
+        if (listingsPerShare < 1) throw new IllegalArgumentException("listingsPerShare must be at least 1");
+        this.extractor = extractor;
+        this.concurrency = concurrency;
+        this.listingsPerShare = listingsPerShare;
+        this.directories = new LinkedBlockingQueue<URI>();
+        this.shares = new ConcurrentHashMap<String, Semaphore>();
+        this.outstanding = new AtomicLong(0);
+        this.submitted = new AtomicLong(0);
+        this.skipped = new AtomicLong(0);
+        this.finished = new AtomicLong(0);
+        this.listed = new AtomicLong(0);
+    }
+    
+    /**
+     * crawl the tree below the given roots. This blocks until all directories are listed
+     * and all files are submitted to the extractor.
+     * @param roots directories or files with file:// or smb:// protocol
+     * @throws InterruptedException
+     */
+    public void crawl(final URI... roots) throws InterruptedException {
+        for (URI root: roots) {
+            if (!root.isFile() && !root.isSMB()) throw new IllegalArgumentException("only file and smb uris can be crawled: " + root);
+            this.outstanding.incrementAndGet();
+            this.directories.put(root);
+        }
+        final Lister[] listers = new Lister[this.concurrency];
+        for (int i = 0; i < listers.length; i++) {
+            listers[i] = new Lister(i);
+            listers[i].start();
+        }
+        try {
+            for (Lister lister: listers) lister.join();
+        } catch (InterruptedException e) {
+            for (Lister lister: listers) lister.interrupt();
+            throw e;
+        }
+        log.info("crawl finished: " + this.listed.get() + " directories, " + this.submitted.get() + " files submitted, " + this.skipped.get() + " files skipped, " + this.finished.get() + " files already finished");
+    }
+    
+    /**
+     * the number of sources that had been submitted to the extractor
+     * @return submitted sources count
+     */
+    public long submitted() {
+        return this.submitted.get();
+    }
+    
+    /**
+     * the number of files that had been skipped because no parser supports them
+     * @return skipped files count
+     */
+    public long skipped() {
+        return this.skipped.get();
+    }
+    
+    /**
+     * the number of files that the extractor did not accept because they had been
+     * parsed in a previous run (see ConcurrentOfflineExtractor.setJournal)
+     * @return finished files count
+     */
+    public long finished() {
+        return this.finished.get();
+    }
+    
+    /**
+     * the share is the unit of the listing limitation. For smb uris this is the host and the
+     * first path element, for local files all paths are on the same share.
+     * @param uri
+     * @return a share name
+     */
+    private static String share(final URI uri) {
+        if (uri.isFile()) return "file";
+        final String path = uri.getPath();
+        final int p = path.indexOf('/', 1);
+        return uri.getProtocol() + "://" + uri.getHost() + ((p < 0) ? path : path.substring(0, p));
+    }
+    
+    private Semaphore shareSemaphore(final String share) {
+        Semaphore s = this.shares.get(share);
+        if (s != null) return s;
+        s = new Semaphore(this.listingsPerShare);
+        final Semaphore s0 = ((ConcurrentHashMap<String, Semaphore>) this.shares).putIfAbsent(share, s);
+        return (s0 == null) ? s : s0;
+    }
+    
+    /**
+     * list a directory and distribute its content: sub-directories are placed into the directory queue,
+     * files are submitted to the extractor
+     * @param dir the directory
+     * @throws InterruptedException
+     */
+    private void process(final URI dir) throws InterruptedException {
+        final Semaphore share = shareSemaphore(share(dir));
+        if (!share.tryAcquire(10, TimeUnit.MILLISECONDS)) {
+            // the share is busy; try again later and use the time for another directory
+            this.outstanding.incrementAndGet();
+            this.directories.put(dir);
+            return;
+        }
+        String[] names;
+        boolean[] isDir;
+        URI[] children;
+        try {
+            if (!dir.isDirectory()) {
+                names = null;
+                isDir = null;
+                children = new URI[]{dir};
+            } else {
+                names = dir.list();
+                this.listed.incrementAndGet();
+                if (names == null) return;
+                children = new URI[names.length];
+                isDir = new boolean[names.length];
+                final String base = dir.getPath().endsWith("/") ? dir.toNormalform(true, false) : dir.toNormalform(true, false) + "/";
+                final URI baseURI = new URI(base);
+                for (int i = 0; i < names.length; i++) {
+                    try {
+                        children[i] = new URI(baseURI, names[i]);
+                    } catch (MalformedURLException e) {
+                        log.warn("cannot crawl " + names[i] + " in " + base + ": " + e.getMessage());
+                        continue;
+                    }
+                    // names with a supported extension are taken as files; this saves a
+                    // request to the server for each document
+                    if (Parser.supportsExtension(children[i]) == null && children[i].getFileExtension() != null) continue;
+                    isDir[i] = children[i].isDirectory();
+                }
+            }
+        } catch (MalformedURLException e) {
+            log.warn("cannot list " + dir + ": " + e.getMessage());
+            return;
+        } finally {
+            share.release();
+        }
+        for (int i = 0; i < children.length; i++) {
+            if (children[i] == null) continue;
+            if (isDir != null && isDir[i]) {
+                URI child;
+                try {
+                    child = new URI(children[i].toNormalform(true, false) + "/");
+                } catch (MalformedURLException e) {
+                    log.warn("cannot crawl " + children[i] + ": " + e.getMessage());
+                    continue;
+                }
+                this.outstanding.incrementAndGet();
+                this.directories.put(child);
+                continue;
+            }
+            if (Parser.supportsExtension(children[i]) != null) {
+                this.skipped.incrementAndGet();
+                continue;
+            }
+            final DataSource source = new DataSource();
+            source.setURI(children[i]);
+            if (this.extractor.submit(source) == null) {
+                // the extractor sets the interrupt flag if the submission was interrupted;
+                // otherwise the source was skipped and the crawl goes on
+                if (Thread.interrupted()) throw new InterruptedException("submit interrupted");
+                this.finished.incrementAndGet();
+                continue;
+            }
+            this.submitted.incrementAndGet();
+        }
+    }
+    
+    protected final class Lister extends Thread {
+        public Lister(final int number) {
+            super("TreeCrawler.Lister-" + number);
+            this.setDaemon(true);
+        }
+        
+        public void run() {
+            URI dir;
+            try {
+                while ((dir = directories.take()) != poison) {
+                    try {
+                        process(dir);
+                    } catch (RuntimeException e) {
+                        log.error("unexpected exception while crawling " + dir + ": " + e.getMessage(), e);
+                    }
+                    if (outstanding.decrementAndGet() == 0) {
+                        // this was the last directory; terminate all listers
+                        for (int i = 0; i < concurrency; i++) directories.put(poison);
+                    }
+                }
+            } catch (InterruptedException e) {}
+        }
+    }
+}
@@ -150,13 +150,20 @@ public class DataSource extends HashMap<DataSource.Names, Object> {
                 return null;
             }
             byte[] b = baos.toByteArray();
+            // the stream is consumed now; further readers must use the array
+            this.remove(Names.STREAM);
             this.put(Names.ARRAY, b);
             return b;
         }
         if (this.containsKey(Names.URI)) {
             try {
                 ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                FileUtils.copy(((URI) this.get(Names.URI)).getInputStream(), baos);
+                final InputStream is = ((URI) this.get(Names.URI)).getInputStream();
+                try {
+                    FileUtils.copy(is, baos);
+                } finally {
+                    is.close();
+                }
                 byte[] b = baos.toByteArray();
                 this.put(Names.ARRAY, b);
                 return b;
@@ -193,6 +200,21 @@ public class DataSource extends HashMap<DataSource.Names, Object> {
         return -1;
     }
     
+    /**
+     * get the content length without loading the content. The length is taken from the size attribute,
+     * from a content array or from the resource that the uri denotes if it is a local file or a smb resource.
+     * A negative size attribute marks the length as unknown; then the resource is not asked, i.e. for
+     * sources with an uri that names a part of a resource.
+     * @return the content length in bytes or -1 if the length is not known
+     */
+    public long getContentLength() {
+        if (this.hasSize()) return Math.max(-1, this.getSize());
+        if (this.containsKey(Names.ARRAY)) return ((byte[]) this.get(Names.ARRAY)).length;
+        URI uri = this.getURI();
+        if (uri != null && (uri.isFile() || uri.isSMB())) return uri.length();
+        return -1;
+    }
+    
     public String getCharset() {
         Object o = this.get(Names.CHARSET);
         if (o == null) return "UTF-8";
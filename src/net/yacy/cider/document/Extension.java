@@ -193,13 +193,16 @@ public enum Extension {
         mimeMapper.put(XPI, MimeType.APPLICATION_XPINSTALL);
         mimeMapper.put(ZIP, MimeType.APPLICATION_ZIP);
         mimeMapper.put(HQX, MimeType.APPLICATION_MAXC_BINHEX40);
+        mimeMapper.put(DOC, MimeType.APPLICATION_MSWORD);
+        mimeMapper.put(DOT, MimeType.APPLICATION_MSWORD);
+        mimeMapper.put(DOCX, MimeType.APPLICATION_OOXML_WORD);
         mimeMapper.put(XLA, MimeType.APPLICATION_MSEXCEL);
         mimeMapper.put(XLS, MimeType.APPLICATION_MSEXCEL);
-        mimeMapper.put(XLSX, MimeType.APPLICATION_MSEXCEL);
+        mimeMapper.put(XLSX, MimeType.APPLICATION_OOXML_EXCEL);
         mimeMapper.put(POT, MimeType.APPLICATION_MSPOWERPOINT);
         mimeMapper.put(PPT, MimeType.APPLICATION_MSPOWERPOINT);
         mimeMapper.put(PPS, MimeType.APPLICATION_MSPOWERPOINT);
-        mimeMapper.put(PPTX, MimeType.APPLICATION_MSPOWERPOINT);
+        mimeMapper.put(PPTX, MimeType.APPLICATION_OOXML_POWERPOINT);
         mimeMapper.put(PPZ, MimeType.APPLICATION_MSPOWERPOINT);
         mimeMapper.put(DB, MimeType.APPLICATION_OCTET_STREAM);
         mimeMapper.put(DLL, MimeType.APPLICATION_OCTET_STREAM);
@@ -40,6 +40,9 @@ public enum MimeType {
     APPLICATION_MSWORD("application/msword"),
     APPLICATION_NS_PROXY_AUTOCONFIG("application/x-ns-proxy-autoconfig"),
     APPLICATION_OCTET_STREAM("application/octet-stream"),
+    APPLICATION_OOXML_WORD("application/vnd.openxmlformats-officedocument.wordprocessingml.document"),
+    APPLICATION_OOXML_EXCEL("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"),
+    APPLICATION_OOXML_POWERPOINT("application/vnd.openxmlformats-officedocument.presentationml.presentation"),
     APPLICATION_OO_CALC("application/OOo-calc"),
     APPLICATION_OO_DRAW("application/OOo-draw"),
     APPLICATION_OO_IMPRESS("application/OOo-impress"),
@@ -793,7 +793,8 @@ public class URI {
      */
     public java.io.File getFSFile() {
         if (!isFile()) throw new UnsupportedOperationException();
-        return new java.io.File(this.toNormalform(false, true).substring(7));
+        // the path is stored escaped; the file system needs the original names
+        return new java.io.File(unescape(this.toNormalform(false, true).substring(7)));
     }
     
     /**
@@ -967,6 +968,27 @@ public class URI {
         public int read() throws IOException {
             return this.is.read();
         }
+        
+        // the default implementation of InputStream reads single bytes; that is one system call for each byte
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return this.is.read(b, off, len);
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            return this.is.skip(n);
+        }
+        
+        @Override
+        public int available() throws IOException {
+            return this.is.available();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            this.is.close();
+        }
 
     }
     
@@ -22,6 +22,7 @@
 
 package net.yacy.cider.parser;
 
+import java.io.IOException;
 import java.util.Set;
 
 import net.yacy.cider.document.DataSource;
@@ -32,6 +33,8 @@ import net.yacy.cider.util.FileUtils;
 import org.apache.log4j.Logger;
 
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
 
 
 public abstract class AbstractIdiom implements Idiom {
@@ -52,6 +55,54 @@ public abstract class AbstractIdiom implements Idiom {
     }
 
     public abstract Model parse(DataSource source) throws ParserException;
+    
+    /**
+     * the default implementation parses into a model and gives the statements of the model to the sink.
+     * Idioms that produce their statements one by one should override this and implement
+     * parse(DataSource) with a ModelStatementSink.
+     */
+    public void parse(DataSource source, StatementSink sink) throws ParserException {
+        emit(parse(source), sink, source);
+    }
+    
+    /**
+     * give all statements of a model to a sink
+     * @param model
+     * @param sink
+     * @param source the source of the model, used for error messages
+     * @throws ParserException
+     */
+    public static final void emit(Model model, StatementSink sink, DataSource source) throws ParserException {
+        if (model == null) return;
+        StmtIterator i = model.listStatements();
+        try {
+            while (i.hasNext()) {
+                Statement s = i.nextStatement();
+                sink.add(s.getSubject(), s.getPredicate(), s.getObject());
+            }
+        } catch (IOException e) {
+            throw new ParserException("cannot write statement: " + e.getMessage(), source.getURI(), e);
+        } finally {
+            i.close();
+        }
+    }
+
+    /**
+     * the default session has no state and calls parse(DataSource) for every document.
+     * Idioms with expensive helper objects should override this.
+     */
+    public IdiomSession openSession() {
+        return new IdiomSession() {
+            public Model parse(DataSource source) throws ParserException {
+                return AbstractIdiom.this.parse(source);
+            }
+            public void parse(DataSource source, StatementSink sink) throws ParserException {
+                AbstractIdiom.this.parse(source, sink);
+            }
+            public void reset() {}
+            public void close() {}
+        };
+    }
 
     /**
      * helper method to concatenate all string lists into one string
@@ -0,0 +1,303 @@
+/**
+ *  ContentSniffer.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 27.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.yacy.cider.document.Charset;
+import net.yacy.cider.document.MimeType;
+
+/**
+ * the content sniffer guesses the mime type of a document from the first bytes of its content.
+ * The mime type that a server or the file name extension declares is often wrong; a parser that is
+ * chosen from the content is more likely to succeed than a parser that is chosen from the name.
+ * The sniffer knows only a few formats that can be identified safely from their signature.
+ * Container formats (zip, ole2) are refined by a look into the container if possible.
+ */
+public final class ContentSniffer {
+
+    /**
+     * the number of bytes that the sniffer needs to see
+     */
+    public static final int PEEK_SIZE = 4096;
+    
+    private static final class Signature {
+        public final int offset;
+        public final byte[] magic;
+        public final MimeType mime;
+        public Signature(final int offset, final int[] magic, final MimeType mime) {
+            this.offset = offset;
+            this.magic = new byte[magic.length];
+            for (int i = 0; i < magic.length; i++) this.magic[i] = (byte) magic[i];
+            this.mime = mime;
+        }
+        public boolean matches(final byte[] b, final int len) {
+            if (len < this.offset + this.magic.length) return false;
+            for (int i = 0; i < this.magic.length; i++) if (b[this.offset + i] != this.magic[i]) return false;
+            return true;
+        }
+    }
+    
+    private static final Signature[] signatures = new Signature[] {
+        new Signature(0, new int[]{'%', 'P', 'D', 'F', '-'}, MimeType.APPLICATION_PDF),
+        new Signature(0, new int[]{'P', 'K', 0x03, 0x04}, MimeType.APPLICATION_ZIP),
+        new Signature(0, new int[]{0xD0, 0xCF, 0x11, 0xE0, 0xA1, 0xB1, 0x1A, 0xE1}, MimeType.APPLICATION_MSWORD),
+        new Signature(0, new int[]{0x1F, 0x8B}, MimeType.APPLICATION_GZIP),
+        new Signature(0, new int[]{0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A}, MimeType.IMAGE_PNG),
+        new Signature(0, new int[]{'{', '\\', 'r', 't', 'f'}, MimeType.APPLICATION_RTF),
+        new Signature(0, new int[]{'%', '!', 'P', 'S'}, MimeType.APPLICATION_POSTSCRIPT),
+        new Signature(0, new int[]{'F', 'W', 'S'}, MimeType.APPLICATION_SHOCKWAVE_FLASH),
+        new Signature(0, new int[]{'C', 'W', 'S'}, MimeType.APPLICATION_SHOCKWAVE_FLASH),
+        new Signature(257, new int[]{'u', 's', 't', 'a', 'r'}, MimeType.APPLICATION_TAR)
+    };
+    
+    // the ole2 signature does not tell which office application wrote the file
+    private static final MimeType[] OLE2_FAMILY = new MimeType[] {
+        MimeType.APPLICATION_MSWORD,
+        MimeType.APPLICATION_MSEXCEL,
+        MimeType.APPLICATION_MSEXCEL_2,
+        MimeType.APPLICATION_MSPOWERPOINT,
+        MimeType.APPLICATION_MSPOWERPOINT_2,
+        MimeType.APPLICATION_VISIO,
+        MimeType.APPLICATION_VISIO_2
+    };
+    
+    // mime types of the 'mimetype' entry in OpenOffice.org 1.x files
+    private static final Map<String, MimeType> OOO_MIMES = new HashMap<String, MimeType>();
+    static {
+        OOO_MIMES.put("application/vnd.sun.xml.writer", MimeType.APPLICATION_OO_WRITER);
+        OOO_MIMES.put("application/vnd.sun.xml.calc", MimeType.APPLICATION_OO_CALC);
+        OOO_MIMES.put("application/vnd.sun.xml.impress", MimeType.APPLICATION_OO_IMPRESS);
+        OOO_MIMES.put("application/vnd.sun.xml.draw", MimeType.APPLICATION_OO_DRAW);
+    }
+    
+    /**
+     * read the first bytes of a stream and reset the stream to its start
+     * @param stream a stream that supports mark/reset
+     * @return the first PEEK_SIZE bytes or less if the stream is shorter
+     * @throws IOException
+     */
+    public static byte[] peek(final InputStream stream) throws IOException {
+        assert stream.markSupported();
+        stream.mark(PEEK_SIZE);
+        try {
+            return read(stream);
+        } finally {
+            stream.reset();
+        }
+    }
+    
+    /**
+     * read the first bytes of a stream
+     * @param stream
+     * @return the first PEEK_SIZE bytes or less if the stream is shorter
+     * @throws IOException
+     */
+    public static byte[] read(final InputStream stream) throws IOException {
+        final byte[] b = new byte[PEEK_SIZE];
+        int len = 0, c;
+        while (len < PEEK_SIZE && (c = stream.read(b, len, PEEK_SIZE - len)) > 0) len += c;
+        if (len == PEEK_SIZE) return b;
+        final byte[] t = new byte[len];
+        System.arraycopy(b, 0, t, 0, len);
+        return t;
+    }
+    
+    /**
+     * guess the mime type of a content
+     * @param b the first bytes of the content
+     * @param len the number of valid bytes in b
+     * @param hint the mime type that was declared for the content, or null.
+     * It is returned if the sniffer finds a container format where the hint is a valid member.
+     * @return the mime type or null if the content is not recognized
+     */
+    public static MimeType sniff(final byte[] b, final int len, final MimeType hint) {
+        for (Signature signature: signatures) {
+            if (!signature.matches(b, len)) continue;
+            if (signature.mime == MimeType.APPLICATION_ZIP) return sniffZip(b, len);
+            if (signature.mime == MimeType.APPLICATION_MSWORD) {
+                for (MimeType m: OLE2_FAMILY) if (m == hint) return hint;
+            }
+            return signature.mime;
+        }
+        return sniffMarkup(b, len);
+    }
+    
+    private static int uint16(final byte[] b, final int pos) {
+        return (b[pos] & 0xff) | ((b[pos + 1] & 0xff) << 8);
+    }
+    
+    private static long uint32(final byte[] b, final int pos) {
+        return uint16(b, pos) | (((long) uint16(b, pos + 2)) << 16);
+    }
+    
+    /**
+     * walk through the local file headers of a zip file as far as they are visible
+     * and look for entry names that identify a document format
+     */
+    private static MimeType sniffZip(final byte[] b, final int len) {
+        int pos = 0;
+        while (pos + 30 <= len && b[pos] == 'P' && b[pos + 1] == 'K' && b[pos + 2] == 0x03 && b[pos + 3] == 0x04) {
+            final int flags = uint16(b, pos + 6);
+            final int method = uint16(b, pos + 8);
+            final long compressedSize = uint32(b, pos + 18);
+            final int nameLength = uint16(b, pos + 26);
+            final int extraLength = uint16(b, pos + 28);
+            if (pos + 30 + nameLength > len) break;
+            final String name = ascii(b, pos + 30, nameLength);
+            final int data = pos + 30 + nameLength + extraLength;
+            if (name.equals("mimetype") && method == 0) {
+                // OpenDocument and OpenOffice.org store the mime type uncompressed in the first entry
+                if (data + compressedSize > len) break;
+                final String mime = ascii(b, data, (int) compressedSize).trim();
+                final MimeType m = OOO_MIMES.get(mime);
+                if (m != null) return m;
+                return MimeType.getMimetype(mime);
+            }
+            if (name.startsWith("word/")) return MimeType.APPLICATION_OOXML_WORD;
+            if (name.startsWith("xl/")) return MimeType.APPLICATION_OOXML_EXCEL;
+            if (name.startsWith("ppt/")) return MimeType.APPLICATION_OOXML_POWERPOINT;
+            if (name.equals("META-INF/MANIFEST.MF") || name.equals("META-INF/")) return MimeType.APPLICATION_JAVA_ARCHIVE;
+            // without a size we cannot find the next entry
+            if ((flags & 0x08) != 0 && compressedSize == 0) break;
+            // the next header must be inside the sniffed bytes; compare before the cast because large sizes overflow an int
+            if (data + compressedSize + 30 > len) break;
+            pos = (int) (data + compressedSize);
+        }
+        return MimeType.APPLICATION_ZIP;
+    }
+    
+    /**
+     * recognize html and xml from the first tag in the content
+     */
+    private static MimeType sniffMarkup(final byte[] b, final int len) {
+        String s;
+        try {
+            if (len >= 2 && (b[0] & 0xff) == 0xFE && (b[1] & 0xff) == 0xFF) {
+                s = new String(b, 2, len - 2, "UTF-16BE");
+            } else if (len >= 2 && (b[0] & 0xff) == 0xFF && (b[1] & 0xff) == 0xFE) {
+                s = new String(b, 2, len - 2, "UTF-16LE");
+            } else if (len >= 3 && (b[0] & 0xff) == 0xEF && (b[1] & 0xff) == 0xBB && (b[2] & 0xff) == 0xBF) {
+                s = ascii(b, 3, len - 3);
+            } else {
+                s = ascii(b, 0, len);
+            }
+        } catch (UnsupportedEncodingException e) {
+            return null;
+        }
+        s = s.trim().toLowerCase();
+        if (s.startsWith("<?xml")) {
+            if (s.indexOf("<html") >= 0) return MimeType.TEXT_HTML;
+            if (s.indexOf("<rdf:rdf") >= 0) return MimeType.APPLICATION_RDF_XML;
+            return MimeType.TEXT_XML;
+        }
+        if (s.startsWith("<!doctype html") ||
+            s.startsWith("<html") ||
+            s.startsWith("<head") ||
+            s.startsWith("<body") ||
+            s.startsWith("<title")) return MimeType.TEXT_HTML;
+        return null;
+    }
+    
+    /**
+     * guess the charset of a text content from a byte order mark, an xml declaration or a html meta tag
+     * @param b the first bytes of the content
+     * @param len the number of valid bytes in b
+     * @return the name of a supported charset or null if the content does not declare a charset
+     */
+    public static String charset(final byte[] b, final int len) {
+        if (len >= 3 && (b[0] & 0xff) == 0xEF && (b[1] & 0xff) == 0xBB && (b[2] & 0xff) == 0xBF) return "UTF-8";
+        if (len >= 2 && (b[0] & 0xff) == 0xFE && (b[1] & 0xff) == 0xFF) return "UTF-16BE";
+        if (len >= 2 && (b[0] & 0xff) == 0xFF && (b[1] & 0xff) == 0xFE) return "UTF-16LE";
+        final String s = ascii(b, 0, len).toLowerCase();
+        String declared = null;
+        if (s.startsWith("<?xml")) {
+            final int end = s.indexOf("?>");
+            declared = attribute(s, s.indexOf("encoding", 5), (end < 0) ? s.length() : end);
+        }
+        int p = 0;
+        while (declared == null && (p = s.indexOf("<meta", p)) >= 0) {
+            int end = s.indexOf('>', p);
+            if (end < 0) end = s.length();
+            declared = attribute(s, s.indexOf("charset", p), end);
+            p = end;
+        }
+        if (declared == null) return null;
+        declared = Charset.patchCharsetEncoding(declared);
+        try {
+            return java.nio.charset.Charset.isSupported(declared) ? declared : null;
+        } catch (IllegalCharsetNameException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * the value after a name and an equal sign, with or without quotes
+     * @param s
+     * @param p the position of the name or -1
+     * @param end the end of the tag
+     * @return the value or null if the name is not inside of the tag
+     */
+    private static String attribute(final String s, int p, final int end) {
+        if (p < 0 || p >= end) return null;
+        p = s.indexOf('=', p);
+        if (p < 0 || p >= end) return null;
+        p++;
+        while (p < end && (s.charAt(p) == ' ' || s.charAt(p) == '"' || s.charAt(p) == '\'')) p++;
+        int q = p;
+        while (q < end && " \"';/>".indexOf(s.charAt(q)) < 0) q++;
+        return (q > p) ? s.substring(p, q) : null;
+    }
+    
+    /**
+     * check if a content is valid UTF-8; a sequence that is cut by the end of the bytes is accepted
+     * @param b the first bytes of the content
+     * @param len the number of valid bytes in b
+     * @return true if the bytes can be decoded as UTF-8
+     */
+    public static boolean isUTF8(final byte[] b, final int len) {
+        int i = 0;
+        while (i < len) {
+            final int c = b[i] & 0xff;
+            final int n = (c < 0x80) ? 0 : (c >= 0xC2 && c < 0xE0) ? 1 : (c >= 0xE0 && c < 0xF0) ? 2 : (c >= 0xF0 && c < 0xF5) ? 3 : -1;
+            if (n < 0) return false;
+            i++;
+            for (int j = 0; j < n; j++, i++) {
+                if (i >= len) return true;
+                if ((b[i] & 0xC0) != 0x80) return false;
+            }
+        }
+        return true;
+    }
+    
+    private static String ascii(final byte[] b, final int offset, final int length) {
+        final char[] c = new char[length];
+        for (int i = 0; i < length; i++) c[i] = (char) (b[offset + i] & 0xff);
+        return new String(c);
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ *  FailureCache.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.yacy.cider.document.DataSource;
+import net.yacy.cider.document.URI;
+import net.yacy.cider.util.Digest;
+
+import org.apache.log4j.Logger;
+
+/**
+ * the failure cache remembers documents that no idiom could parse, so that they are not parsed again
+ * in the next crawl pass. A document is identified by its normalized uri, size and last-modified date,
+ * and optionally also by the hash of its content, so that copies of a bad document under other urls are
+ * recognized. Only a 64 bit hash of the key and the expiry time is held for each document.
+ * Entries expire after a time-to-live, so that documents are tried again after a parser update;
+ * if the cache is full, the oldest entries are removed.
+ * A persistent cache appends every entry to a file and loads the entries that are not expired at start.
+ */
+public class FailureCache {
+
+    private static final Logger log = Logger.getLogger(FailureCache.class.getName());
+    
+    private final LinkedHashMap<Long, Long> expires; // key -> expiry time, in insertion order
+    private final int maxEntries;
+    private final long ttl;
+    private final boolean byContent;
+    private final File file;
+    private Writer writer;
+    private long hits;
+    
+    /**
+     * create a failure cache in memory
+     * @param maxEntries the maximum number of documents
+     * @param ttl the time in milliseconds after which a document is tried again
+     * @param byContent true if documents shall also be identified by the hash of their content
+     */
+    public FailureCache(final int maxEntries, final long ttl, final boolean byContent) {
+        this.expires = new LinkedHashMap<Long, Long>();
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.byContent = byContent;
+        this.file = null;
+        this.writer = null;
+        this.hits = 0;
+    }
+    
+    /**
+     * create a persistent failure cache. The entries of the file that are not expired are loaded,
+     * and the file is rewritten without the expired entries.
+     * @param maxEntries the maximum number of documents
+     * @param ttl the time in milliseconds after which a document is tried again
+     * @param byContent true if documents shall also be identified by the hash of their content
+     * @param file the file for the entries
+     * @throws IOException
+     */
+    public FailureCache(final int maxEntries, final long ttl, final boolean byContent, final File file) throws IOException {
+        this.expires = new LinkedHashMap<Long, Long>();
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.byContent = byContent;
+        this.file = file;
+        this.hits = 0;
+        if (file.exists()) load();
+        // write the live entries into a new file
+        final File tmp = new File(file.getPath() + ".tmp");
+        final Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+        try {
+            for (Map.Entry<Long, Long> e: this.expires.entrySet()) write(w, e.getKey().longValue(), e.getValue().longValue());
+        } finally {
+            w.close();
+        }
+        if (file.exists() && !file.delete()) throw new IOException("cannot delete " + file);
+        if (!tmp.renameTo(file)) throw new IOException("cannot rename " + tmp + " to " + file);
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+    }
+    
+    private void load() throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.file), "UTF-8"));
+        final long now = System.currentTimeMillis();
+        int expired = 0;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int p = line.indexOf('\t');
+                if (p < 0) continue;
+                try {
+                    final long key = Long.parseLong(line.substring(0, p));
+                    final long expiry = Long.parseLong(line.substring(p + 1));
+                    if (expiry <= now) {
+                        expired++;
+                        continue;
+                    }
+                    put(key, expiry);
+                } catch (NumberFormatException e) {
+                    // an incomplete last line after a crash
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        log.info("loaded failure cache " + this.file + ": " + this.expires.size() + " documents, " + expired + " expired");
+    }
+    
+    private static void write(final Writer w, final long key, final long expiry) throws IOException {
+        w.write(Long.toString(key));
+        w.write('\t');
+        w.write(Long.toString(expiry));
+        w.write('\n');
+    }
+    
+    private void put(final long key, final long expiry) {
+        final Long k = Long.valueOf(key);
+        // a new failure moves the entry to the end of the eviction order
+        this.expires.remove(k);
+        this.expires.put(k, Long.valueOf(expiry));
+        final Iterator<Long> i = this.expires.keySet().iterator();
+        while (this.expires.size() > this.maxEntries && i.hasNext()) {
+            i.next();
+            i.remove();
+        }
+    }
+    
+    /**
+     * @return true if documents are also identified by the hash of their content
+     */
+    public boolean isByContent() {
+        return this.byContent;
+    }
+    
+    /**
+     * compute the key of a document from its location
+     * @param source
+     * @return the key or 0 if the source has no uri
+     */
+    public static long key(final DataSource source) {
+        return key(source.getURI(), source.getContentLength());
+    }
+    
+    /**
+     * compute the key of a document from its location
+     * @param uri
+     * @param size the content length or -1 if it is not known
+     * @return the key or 0 if the uri is null
+     */
+    public static long key(final URI uri, final long size) {
+        if (uri == null) return 0;
+        final long lastModified = (uri.isFile() || uri.isSMB()) ? uri.lastModified() : 0;
+        return Digest.fnv64("u\t" + uri.toNormalform(true, false) + "\t" + size + "\t" + lastModified);
+    }
+    
+    /**
+     * compute the key of a document from the hash of its content
+     * @param md5 the md5 hash of the content as hex string
+     * @return the key
+     */
+    public static long key(final String md5) {
+        return Digest.fnv64("c\t" + md5);
+    }
+    
+    /**
+     * check if a document failed before
+     * @param key
+     * @return true if the document failed and the entry is not expired
+     */
+    public synchronized boolean contains(final long key) {
+        if (key == 0) return false;
+        final Long k = Long.valueOf(key);
+        final Long expiry = this.expires.get(k);
+        if (expiry == null) return false;
+        if (expiry.longValue() <= System.currentTimeMillis()) {
+            this.expires.remove(k);
+            return false;
+        }
+        this.hits++;
+        return true;
+    }
+    
+    /**
+     * remember a document that failed
+     * @param key
+     */
+    public synchronized void add(final long key) {
+        if (key == 0) return;
+        final long expiry = System.currentTimeMillis() + this.ttl;
+        put(key, expiry);
+        if (this.writer != null) try {
+            write(this.writer, key, expiry);
+            this.writer.flush();
+        } catch (IOException e) {
+            log.warn("cannot write failure cache " + this.file + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * @return the number of times that a document was found in the cache
+     */
+    public synchronized long hits() {
+        return this.hits;
+    }
+    
+    /**
+     * @return the number of documents in the cache, including expired documents that were not checked yet
+     */
+    public synchronized int size() {
+        return this.expires.size();
+    }
+    
+    public synchronized void close() throws IOException {
+        if (this.writer != null) {
+            this.writer.close();
+            this.writer = null;
+        }
+    }
+}
@@ -57,7 +57,24 @@ public interface Idiom {
      * @throws ParserException
      */
     public Model parse(DataSource source) throws ParserException;
+    
+    /**
+     * parse the given source and give every statement to the sink as soon as it is produced.
+     * The statements are not collected in a model.
+     * @param source the source as DataSource
+     * @param sink the receiver of the statements
+     * @throws ParserException
+     */
+    public void parse(DataSource source, StatementSink sink) throws ParserException;
 
+    /**
+     * open a session that can parse a number of documents one after another and keeps
+     * expensive helper objects between the documents. Idioms without such state return a session
+     * that calls parse(DataSource).
+     * @return a new session
+     */
+    public IdiomSession openSession();
+    
     /**
      * Returns the name of the parser
      * @return parser name
@@ -0,0 +1,158 @@
+/**
+ *  IdiomDescriptor.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import net.yacy.cider.document.Extension;
+import net.yacy.cider.document.MimeType;
+
+import org.apache.log4j.Logger;
+
+/**
+ * an idiom descriptor declares the mime types and extensions of an idiom without loading the idiom class.
+ * The idiom is created the first time that it is requested, so that the libraries of an idiom are only
+ * loaded if a document of that type is actually parsed.
+ */
+public class IdiomDescriptor {
+
+    private static final Logger log = Logger.getLogger(IdiomDescriptor.class.getName());
+    
+    private final String name;
+    private final String className;
+    private final Set<MimeType> mimeTypes;
+    private final Set<Extension> extensions;
+    private final ClassLoader loader;
+    private volatile Idiom idiom;
+    private volatile boolean failed;
+    
+    /**
+     * @param name the name of the idiom
+     * @param className the class name of the idiom; the class must have a public constructor without arguments
+     * @param mimeTypes the supported mime types; the first one is the prototype mime for the extensions
+     * @param extensions the supported extensions
+     * @param loader the class loader of the provider; it must be able to load the idiom class and its libraries
+     */
+    public IdiomDescriptor(final String name, final String className, final MimeType[] mimeTypes, final Extension[] extensions, final ClassLoader loader) {
+        this.name = name;
+        this.className = className;
+        this.loader = loader;
+        // keep the order of the mime types for the prototype mime
+        this.mimeTypes = Collections.unmodifiableSet(new LinkedHashSet<MimeType>(Arrays.asList(mimeTypes)));
+        this.extensions = Collections.unmodifiableSet(new HashSet<Extension>(Arrays.asList(extensions)));
+        this.idiom = null;
+        this.failed = false;
+    }
+    
+    /**
+     * describe an idiom that can be loaded by the class loader of this class
+     */
+    public IdiomDescriptor(final String name, final String className, final MimeType[] mimeTypes, final Extension[] extensions) {
+        this(name, className, mimeTypes, extensions, IdiomDescriptor.class.getClassLoader());
+    }
+    
+    /**
+     * wrap an idiom that is already instantiated
+     * @param idiom
+     */
+    public IdiomDescriptor(final Idiom idiom) {
+        this.name = idiom.getName();
+        this.className = idiom.getClass().getName();
+        this.mimeTypes = idiom.supportedMimeTypes();
+        this.extensions = idiom.supportedExtensions();
+        this.loader = idiom.getClass().getClassLoader();
+        this.idiom = idiom;
+        this.failed = false;
+    }
+    
+    public String getName() {
+        return this.name;
+    }
+    
+    public String getClassName() {
+        return this.className;
+    }
+    
+    public Set<MimeType> supportedMimeTypes() {
+        return this.mimeTypes;
+    }
+    
+    public Set<Extension> supportedExtensions() {
+        return this.extensions;
+    }
+    
+    /**
+     * @return true if the idiom was already created
+     */
+    public boolean isLoaded() {
+        return this.idiom != null;
+    }
+    
+    /**
+     * get the idiom; it is created at the first call
+     * @return the idiom or null if the idiom cannot be created, i.e. because a library is missing
+     */
+    public Idiom getIdiom() {
+        Idiom i = this.idiom;
+        if (i != null || this.failed) return i;
+        synchronized (this) {
+            if (this.idiom != null || this.failed) return this.idiom;
+            try {
+                i = (Idiom) Class.forName(this.className, true, this.loader).getDeclaredConstructor().newInstance();
+            } catch (Exception e) {
+                log.error("cannot create idiom " + this.className + ": " + e.getMessage(), e);
+                this.failed = true;
+                return null;
+            } catch (LinkageError e) {
+                log.error("cannot load idiom " + this.className + ": " + e.getMessage(), e);
+                this.failed = true;
+                return null;
+            }
+            if (!i.supportedMimeTypes().equals(this.mimeTypes) || !i.supportedExtensions().equals(this.extensions)) {
+                log.warn("descriptor of idiom " + this.className + " does not match the mime types or extensions of the idiom");
+            }
+            if (log.isDebugEnabled()) log.debug("created idiom " + i.getName());
+            this.idiom = i;
+            return i;
+        }
+    }
+    
+    @Override
+    public boolean equals(final Object o) {
+        return (o instanceof IdiomDescriptor) && this.className.equals(((IdiomDescriptor) o).className);
+    }
+    
+    @Override
+    public int hashCode() {
+        return this.className.hashCode();
+    }
+    
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
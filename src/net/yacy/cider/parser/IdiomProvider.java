@@ -0,0 +1,41 @@
+/**
+ *  IdiomProvider.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser;
+
+import java.util.List;
+
+/**
+ * an idiom provider lists the idioms of a library. Providers are found with the java.util.ServiceLoader;
+ * a jar that contains idioms must name its provider in the file
+ * META-INF/services/net.yacy.cider.parser.IdiomProvider.
+ * A provider must not load the idiom classes, it only describes them; its descriptors should name
+ * the class loader of the provider, so that idioms can be loaded from a separate class loader.
+ */
+public interface IdiomProvider {
+
+    /**
+     * @return the descriptors of all idioms of this provider
+     */
+    public List<IdiomDescriptor> descriptors();
+    
+}
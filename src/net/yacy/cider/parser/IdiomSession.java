@@ -0,0 +1,62 @@
+/**
+ *  IdiomSession.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser;
+
+import net.yacy.cider.document.DataSource;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * an idiom session holds the state of an idiom that can be used again for the next document,
+ * like text strippers, parser factories or decoders. A session is used by only one thread at a time,
+ * but it may be used by different threads one after another.
+ */
+public interface IdiomSession {
+
+    /**
+     * parse the given source with the state of this session
+     * @param source the source as DataSource
+     * @return a model containing resource objects
+     * @throws ParserException
+     */
+    public Model parse(DataSource source) throws ParserException;
+    
+    /**
+     * parse the given source with the state of this session and give the statements to the sink
+     * @param source the source as DataSource
+     * @param sink the receiver of the statements
+     * @throws ParserException
+     */
+    public void parse(DataSource source, StatementSink sink) throws ParserException;
+    
+    /**
+     * clear all state that belongs to the last document, so that the session can parse the next document
+     */
+    public void reset();
+    
+    /**
+     * release all resources of the session. The session cannot be used after close.
+     */
+    public void close();
+    
+}
@@ -0,0 +1,143 @@
+/**
+ *  IdiomSessionPool.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.yacy.cider.document.DataSource;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * a pool of idle idiom sessions. A worker takes a session for an idiom, parses a document and returns the
+ * session to the pool, so that the next worker finds a session that is already warmed up. A session that
+ * failed with an unexpected exception is closed and not used again.
+ * The number of idle sessions per idiom should be the number of workers.
+ */
+public class IdiomSessionPool {
+
+    private final Map<Idiom, ConcurrentLinkedQueue<IdiomSession>> idle;
+    private final int maxIdle;
+    
+    /**
+     * @param maxIdle the maximum number of idle sessions for each idiom
+     */
+    public IdiomSessionPool(final int maxIdle) {
+        this.idle = new ConcurrentHashMap<Idiom, ConcurrentLinkedQueue<IdiomSession>>();
+        this.maxIdle = maxIdle;
+    }
+    
+    private ConcurrentLinkedQueue<IdiomSession> queue(final Idiom idiom) {
+        ConcurrentLinkedQueue<IdiomSession> q = this.idle.get(idiom);
+        if (q != null) return q;
+        synchronized (this.idle) {
+            q = this.idle.get(idiom);
+            if (q == null) {
+                q = new ConcurrentLinkedQueue<IdiomSession>();
+                this.idle.put(idiom, q);
+            }
+            return q;
+        }
+    }
+    
+    /**
+     * parse a source with a session of the idiom from the pool
+     * @param idiom
+     * @param source
+     * @return the model
+     * @throws ParserException
+     */
+    public Model parse(final Idiom idiom, final DataSource source) throws ParserException {
+        final IdiomSession session = borrow(idiom);
+        boolean reusable = false;
+        try {
+            final Model model = session.parse(source);
+            reusable = true;
+            return model;
+        } catch (ParserException e) {
+            // the document was bad, not the session
+            reusable = !Thread.currentThread().isInterrupted();
+            throw e;
+        } finally {
+            release(idiom, session, reusable);
+        }
+    }
+    
+    /**
+     * parse a source with a session of the idiom from the pool and give the statements to the sink
+     * @param idiom
+     * @param source
+     * @param sink
+     * @throws ParserException
+     */
+    public void parse(final Idiom idiom, final DataSource source, final StatementSink sink) throws ParserException {
+        final IdiomSession session = borrow(idiom);
+        boolean reusable = false;
+        try {
+            session.parse(source, sink);
+            reusable = true;
+        } catch (ParserException e) {
+            reusable = !Thread.currentThread().isInterrupted();
+            throw e;
+        } finally {
+            release(idiom, session, reusable);
+        }
+    }
+    
+    private IdiomSession borrow(final Idiom idiom) {
+        final IdiomSession session = queue(idiom).poll();
+        return (session == null) ? idiom.openSession() : session;
+    }
+    
+    private void release(final Idiom idiom, final IdiomSession session, final boolean reusable) {
+        if (!reusable) {
+            session.close();
+            return;
+        }
+        session.reset();
+        final ConcurrentLinkedQueue<IdiomSession> q = queue(idiom);
+        // the size of a ConcurrentLinkedQueue is computed by traversal; it is short here
+        if (q.size() < this.maxIdle) q.offer(session); else session.close();
+    }
+    
+    /**
+     * @return the number of idle sessions of all idioms
+     */
+    public int idle() {
+        int c = 0;
+        for (ConcurrentLinkedQueue<IdiomSession> q: this.idle.values()) c += q.size();
+        return c;
+    }
+    
+    /**
+     * close all idle sessions
+     */
+    public void close() {
+        for (ConcurrentLinkedQueue<IdiomSession> q: this.idle.values()) {
+            IdiomSession session;
+            while ((session = q.poll()) != null) session.close();
+        }
+    }
+}
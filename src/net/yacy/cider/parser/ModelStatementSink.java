@@ -0,0 +1,53 @@
+/**
+ *  ModelStatementSink.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * a statement sink that collects the statements in a model
+ */
+public class ModelStatementSink implements StatementSink {
+
+    private final Model model;
+    
+    public ModelStatementSink() {
+        this(ModelFactory.createDefaultModel());
+    }
+    
+    public ModelStatementSink(final Model model) {
+        this.model = model;
+    }
+    
+    public void add(final Resource subject, final Property predicate, final RDFNode object) {
+        this.model.add(subject, predicate, object);
+    }
+    
+    public Model getModel() {
+        return this.model;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ *  NTriplesStatementSink.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * a statement sink that writes every statement as one N-Triples line. No statement is held in memory.
+ * The writer is not closed by the sink.
+ */
+public class NTriplesStatementSink implements StatementSink {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    
+    private final Writer writer;
+    private final StringBuilder line;
+    private long count;
+    
+    public NTriplesStatementSink(final Writer writer) {
+        this.writer = writer;
+        this.line = new StringBuilder(256);
+        this.count = 0;
+    }
+    
+    public void add(final Resource subject, final Property predicate, final RDFNode object) throws IOException {
+        this.line.setLength(0);
+        resource(subject);
+        this.line.append(' ');
+        resource(predicate);
+        this.line.append(' ');
+        if (object.isLiteral()) literal(object.as(Literal.class)); else resource(object.as(Resource.class));
+        this.line.append(" .\n");
+        this.writer.write(this.line.toString());
+        this.count++;
+    }
+    
+    /**
+     * @return the number of statements that were written
+     */
+    public long count() {
+        return this.count;
+    }
+    
+    private void resource(final Resource r) {
+        if (r.isAnon()) {
+            // blank node labels must be alphanumeric
+            final String id = r.getId().getLabelString();
+            this.line.append("_:b");
+            for (int i = 0; i < id.length(); i++) {
+                final char c = id.charAt(i);
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) this.line.append(c); else this.line.append('x').append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+            }
+            return;
+        }
+        this.line.append('<');
+        escape(r.getURI());
+        this.line.append('>');
+    }
+    
+    private void literal(final Literal l) {
+        this.line.append('"');
+        escape(l.getLexicalForm());
+        this.line.append('"');
+        final String lang = l.getLanguage();
+        if (lang != null && lang.length() > 0) {
+            this.line.append('@').append(lang);
+        } else if (l.getDatatypeURI() != null) {
+            this.line.append("^^<");
+            escape(l.getDatatypeURI());
+            this.line.append('>');
+        }
+    }
+    
+    private void escape(final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+            case '\\': this.line.append("\\\\"); break;
+            case '"':  this.line.append("\\\""); break;
+            case '\n': this.line.append("\\n"); break;
+            case '\r': this.line.append("\\r"); break;
+            case '\t': this.line.append("\\t"); break;
+            default:
+                // surrogate pairs are written as two escapes, as the jena reader does not know \U
+                if (c >= 0x20 && c < 0x7f) this.line.append(c); else hex(c);
+            }
+        }
+    }
+    
+    private void hex(final char c) {
+        this.line.append("\\u");
+        for (int i = 3; i >= 0; i--) this.line.append(HEX[(c >> (4 * i)) & 0xf]);
+    }
+}
@@ -0,0 +1,379 @@
+/**
+ *  ParseCache.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.yacy.cider.util.Digest;
+
+import org.apache.log4j.Logger;
+
+import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+
+/**
+ * the parse cache stores the models of parsed documents by the hash of their content, so that a document
+ * that appears under several urls is parsed only once. The key contains also the names and versions of the
+ * parsers that were candidates for the document, so that a new parser version does not get old results.
+ * The cache has two tiers: a memory tier that holds models up to an estimated number of bytes in least-recently-used
+ * order, and an optional disk tier that holds gzipped N-Triples files up to a limited number of bytes.
+ * Entries that are evicted from the memory tier remain on disk; a disk hit is promoted to the memory tier.
+ * A model that is returned from the cache is a copy where the resource of the original url is replaced
+ * by the resource of the requested url.
+ */
+public class ParseCache {
+
+    private static final Logger log = Logger.getLogger(ParseCache.class.getName());
+    private static final String SUFFIX = ".nt.gz";
+    
+    // estimated heap use of a statement in a memory model without the literal text:
+    // the triple, its nodes and the entries in the indexes of the graph
+    private static final int STATEMENT_BYTES = 200;
+    
+    private static class Entry {
+        public final String uri;
+        public final Model model;
+        public final long size;
+        public Entry(final String uri, final Model model) {
+            this.uri = uri;
+            this.model = model;
+            this.size = estimate(model);
+        }
+    }
+    
+    private final LinkedHashMap<String, Entry> memory; // in access order
+    private final long maxMemory;
+    private long memoryBytes;
+    private final File dir;
+    private final LinkedHashMap<String, Long> disk; // file sizes in access order
+    private final long maxBytes;
+    private long bytes;
+    private long hits, misses;
+    
+    /**
+     * create a parse cache with a memory tier only
+     * @param maxMemory the maximum estimated heap use in bytes of all models of the memory tier
+     */
+    public ParseCache(final long maxMemory) {
+        this.memory = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+        this.maxMemory = maxMemory;
+        this.memoryBytes = 0;
+        this.dir = null;
+        this.disk = null;
+        this.maxBytes = 0;
+        this.bytes = 0;
+        this.hits = 0;
+        this.misses = 0;
+    }
+    
+    /**
+     * create a parse cache with a memory tier and a disk tier. Entries of a previous run in the
+     * directory are used again.
+     * @param maxMemory the maximum estimated heap use in bytes of all models of the memory tier
+     * @param dir the directory for the disk tier
+     * @param maxBytes the maximum size of all files in the disk tier
+     * @throws IOException
+     */
+    public ParseCache(final long maxMemory, final File dir, final long maxBytes) throws IOException {
+        this.memory = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+        this.maxMemory = maxMemory;
+        this.memoryBytes = 0;
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("cannot create cache directory " + dir);
+        this.dir = dir;
+        this.disk = new LinkedHashMap<String, Long>(16, 0.75f, true);
+        this.maxBytes = maxBytes;
+        this.bytes = 0;
+        this.hits = 0;
+        this.misses = 0;
+        load();
+    }
+    
+    private void load() {
+        final File[] files = this.dir.listFiles();
+        if (files == null) return;
+        // the oldest files are the least recently used
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File o1, File o2) {
+                final long d = o1.lastModified() - o2.lastModified();
+                return (d < 0) ? -1 : (d > 0) ? 1 : 0;
+            }
+        });
+        for (File f: files) {
+            final String name = f.getName();
+            if (!name.endsWith(SUFFIX)) {
+                // left over from an interrupted write
+                if (name.endsWith(".tmp")) f.delete();
+                continue;
+            }
+            this.disk.put(name.substring(0, name.length() - SUFFIX.length()), f.length());
+            this.bytes += f.length();
+        }
+        evictDisk();
+        log.info("parse cache loaded " + this.disk.size() + " entries, " + this.bytes + " bytes from " + this.dir);
+    }
+    
+    /**
+     * compute the cache key for a content and a list of candidate parsers
+     * @param md5 the md5 hash of the content as hex string
+     * @param idioms the parsers in the order in which they are tried
+     * @return the key
+     */
+    public static String key(final String md5, final List<Idiom> idioms) {
+        final StringBuilder sb = new StringBuilder(64);
+        sb.append(md5);
+        for (Idiom idiom: idioms) {
+            final Package p = idiom.getClass().getPackage();
+            final String version = (p == null) ? null : p.getImplementationVersion();
+            sb.append('|').append(idiom.getClass().getName()).append('/').append(idiom.getName()).append('/').append(version == null ? "0" : version);
+        }
+        // the key is used as file name
+        return Digest.md5Hex(sb.toString());
+    }
+    
+    /**
+     * get a model from the cache
+     * @param key the key of the content
+     * @param uri the uri of the requested document
+     * @return a copy of the cached model with the requested uri as subject, or null if the key is not cached
+     */
+    public Model get(final String key, final String uri) {
+        Entry entry;
+        synchronized (this) {
+            entry = this.memory.get(key);
+            if (entry == null && (this.disk == null || this.disk.get(key) == null)) {
+                this.misses++;
+                return null;
+            }
+        }
+        if (entry == null) {
+            try {
+                entry = read(key);
+            } catch (IOException e) {
+                log.warn("cannot read cache entry " + key + ": " + e.getMessage());
+                synchronized (this) {
+                    removeDisk(key);
+                    this.misses++;
+                }
+                return null;
+            }
+            synchronized (this) {
+                putMemory(key, entry);
+            }
+        }
+        synchronized (this) {
+            this.hits++;
+        }
+        return resubject(entry, uri);
+    }
+    
+    /**
+     * store a model in the cache
+     * @param key the key of the content
+     * @param uri the uri of the document that was parsed
+     * @param model the parsed model; the cache stores a copy
+     */
+    public void put(final String key, final String uri, final Model model) {
+        final Model copy = ModelFactory.createDefaultModel();
+        copy.setNsPrefixes(model);
+        copy.add(model);
+        final Entry entry = new Entry(uri, copy);
+        synchronized (this) {
+            putMemory(key, entry);
+        }
+        if (this.dir != null) try {
+            final long size = write(key, entry);
+            synchronized (this) {
+                final Long old = this.disk.put(key, size);
+                if (old != null) this.bytes -= old.longValue();
+                this.bytes += size;
+                evictDisk();
+            }
+        } catch (IOException e) {
+            log.warn("cannot write cache entry " + key + ": " + e.getMessage());
+        }
+    }
+    
+    public synchronized long hits() {
+        return this.hits;
+    }
+    
+    public synchronized long misses() {
+        return this.misses;
+    }
+    
+    public synchronized int size() {
+        return (this.disk == null) ? this.memory.size() : this.disk.size();
+    }
+    
+    private void putMemory(final String key, final Entry entry) {
+        final Entry old = this.memory.put(key, entry);
+        if (old != null) this.memoryBytes -= old.size;
+        this.memoryBytes += entry.size;
+        final Iterator<Map.Entry<String, Entry>> i = this.memory.entrySet().iterator();
+        while (this.memoryBytes > this.maxMemory && i.hasNext()) {
+            final Map.Entry<String, Entry> eldest = i.next();
+            if (eldest.getValue() == entry) continue;
+            this.memoryBytes -= eldest.getValue().size;
+            i.remove();
+        }
+    }
+    
+    /**
+     * estimate the heap use of a model. A single document can produce a few statements with
+     * megabytes of text, so the text of the literals is counted in addition to the statements.
+     */
+    private static long estimate(final Model model) {
+        long size = 0;
+        final StmtIterator i = model.listStatements();
+        try {
+            while (i.hasNext()) {
+                final RDFNode object = i.nextStatement().getObject();
+                size += STATEMENT_BYTES;
+                if (object.isLiteral()) size += 2L * ((Literal) object).getLexicalForm().length();
+            }
+        } finally {
+            i.close();
+        }
+        return size;
+    }
+    
+    private void removeDisk(final String key) {
+        final Long size = this.disk.remove(key);
+        if (size != null) this.bytes -= size.longValue();
+        new File(this.dir, key + SUFFIX).delete();
+    }
+    
+    private void evictDisk() {
+        final List<String> evict = new ArrayList<String>();
+        long b = this.bytes;
+        for (Map.Entry<String, Long> e: this.disk.entrySet()) {
+            if (b <= this.maxBytes) break;
+            evict.add(e.getKey());
+            b -= e.getValue().longValue();
+        }
+        for (String key: evict) removeDisk(key);
+    }
+    
+    private File file(final String key) {
+        return new File(this.dir, key + SUFFIX);
+    }
+    
+    private long write(final String key, final Entry entry) throws IOException {
+        // each writer has its own temporary file; the same content can be parsed by several threads at the same time
+        final File tmp = File.createTempFile(key + ".", ".tmp", this.dir);
+        final File f = file(key);
+        boolean moved = false;
+        try {
+            final OutputStream os = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                // the first line is the uri of the original document, followed by the statements
+                os.write(entry.uri.getBytes("UTF-8"));
+                os.write('\n');
+                entry.model.write(os, "N-TRIPLE");
+            } finally {
+                os.close();
+            }
+            // readers see either the old or the new complete file
+            try {
+                Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        } finally {
+            if (!moved) tmp.delete();
+        }
+        return f.length();
+    }
+    
+    private Entry read(final String key) throws IOException {
+        final File f = file(key);
+        final InputStream is = new GZIPInputStream(new BufferedInputStream(new FileInputStream(f)));
+        try {
+            final ByteArrayOutputStream uri = new ByteArrayOutputStream();
+            int c;
+            while ((c = is.read()) >= 0 && c != '\n') uri.write(c);
+            if (c < 0) throw new IOException("truncated cache entry " + f);
+            final Model model = ModelFactory.createDefaultModel();
+            model.read(is, null, "N-TRIPLE");
+            // mark the file as recently used for the next start
+            f.setLastModified(System.currentTimeMillis());
+            return new Entry(uri.toString("UTF-8"), model);
+        } finally {
+            is.close();
+        }
+    }
+    
+    /**
+     * copy the model and replace the resource of the original uri by the resource of the new uri
+     */
+    private static Model resubject(final Entry entry, final String uri) {
+        final Model copy = ModelFactory.createDefaultModel();
+        copy.setNsPrefixes(entry.model);
+        synchronized (entry.model) {
+            if (uri == null || entry.uri.length() == 0 || uri.equals(entry.uri)) {
+                copy.add(entry.model);
+                return copy;
+            }
+            final Resource oldResource = entry.model.createResource(entry.uri);
+            final Resource newResource = copy.createResource(uri);
+            final StmtIterator i = entry.model.listStatements();
+            try {
+                while (i.hasNext()) {
+                    final Statement s = i.nextStatement();
+                    final Resource subject = s.getSubject().equals(oldResource) ? newResource : s.getSubject();
+                    final RDFNode object = s.getObject().equals(oldResource) ? newResource : s.getObject();
+                    copy.add(subject, s.getPredicate(), object);
+                }
+            } finally {
+                i.close();
+            }
+        }
+        return copy;
+    }
+}
@@ -28,75 +28,172 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import net.yacy.cider.document.Charset;
 import net.yacy.cider.document.DataSource;
 import net.yacy.cider.document.Extension;
 import net.yacy.cider.document.MimeType;
 import net.yacy.cider.document.URI;
-import net.yacy.cider.parser.idiom.pdfIdiom;
+import net.yacy.cider.parser.idiom.BuiltinIdioms;
+import net.yacy.cider.util.ContentBuffer;
+import net.yacy.cider.util.Digest;
 import net.yacy.cider.util.FileUtils;
 
 import org.apache.log4j.Logger;
 
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
 
 public class Parser {
 
     private static final Logger log = Logger.getLogger(FileUtils.class.getName());
 
-    private static final Map<MimeType, Idiom> mime2parser = new ConcurrentHashMap<MimeType, Idiom>();
-    private static final Map<Extension, Idiom> ext2parser = new ConcurrentHashMap<Extension, Idiom>();
+    private static final Map<MimeType, IdiomDescriptor> mime2parser = new ConcurrentHashMap<MimeType, IdiomDescriptor>();
+    private static final Map<Extension, IdiomDescriptor> ext2parser = new ConcurrentHashMap<Extension, IdiomDescriptor>();
     private static final Map<Extension, MimeType> ext2mime = new ConcurrentHashMap<Extension, MimeType>();
     
+    private static volatile boolean speculative = false;
+    private static volatile long speculativeHeadStart = 50;
+    private static ExecutorService speculativeExecutor = null;
+    private static volatile ParseCache cache = null;
+    private static volatile FailureCache failures = null;
+    private static volatile IdiomSessionPool sessions = null;
+    // the sessions of a batch that is parsed by the current thread; they are preferred to the shared pool
+    private static final ThreadLocal<IdiomSessionPool> batchSessions = new ThreadLocal<IdiomSessionPool>();
+    
     static {
-        initParser(new pdfIdiom());
+        // the idioms are only described here; they are created when they are needed for the first time
+        int count = 0;
+        for (IdiomProvider provider: ServiceLoader.load(IdiomProvider.class)) {
+            for (IdiomDescriptor descriptor: provider.descriptors()) {
+                initParser(descriptor);
+                count++;
+            }
+        }
+        if (count == 0) {
+            // the service file is missing if the classes are not run from the jar, i.e. in some IDEs
+            log.warn("no idiom provider found by the service loader, using the builtin idioms");
+            for (IdiomDescriptor descriptor: new BuiltinIdioms().descriptors()) {
+                initParser(descriptor);
+                count++;
+            }
+        }
+        log.info("registered " + count + " idioms for " + mime2parser.size() + " mime types and " + ext2parser.size() + " extensions");
     }
     
+    /**
+     * get all idioms. This creates all idioms that were not used so far.
+     * @return the idioms that can be created
+     */
     public static Set<Idiom> idioms() {
         Set<Idiom> c = new HashSet<Idiom>();
+        for (IdiomDescriptor descriptor: descriptors()) {
+            Idiom idiom = descriptor.getIdiom();
+            if (idiom != null) c.add(idiom);
+        }
+        return c;
+    }
+    
+    /**
+     * get the descriptors of all registered idioms without creating the idioms
+     * @return the idiom descriptors
+     */
+    public static Set<IdiomDescriptor> descriptors() {
+        Set<IdiomDescriptor> c = new HashSet<IdiomDescriptor>();
         c.addAll(ext2parser.values());
         c.addAll(mime2parser.values());
         return c;
     }
+    
+    /**
+     * register an idiom in addition to the idioms that are found by the service loader
+     * @param idiom
+     */
+    public static void addIdiom(Idiom idiom) {
+        initParser(new IdiomDescriptor(idiom));
+    }
 
-    private static void initParser(Idiom parser) {
+    private static void initParser(IdiomDescriptor parser) {
         MimeType prototypeMime = null;
         for (MimeType mime: parser.supportedMimeTypes()) {
             // process the mime types
             if (prototypeMime == null) prototypeMime = mime;
-            Idiom p0 = mime2parser.get(mime);
+            IdiomDescriptor p0 = mime2parser.get(mime);
             if (p0 != null) log.error("parser for mime '" + mime + "' was set to '" + p0.getName() + "', overwriting with new parser '" + parser.getName() + "'.");
             mime2parser.put(mime, parser);
-            log.info("Parser for mime type '" + mime + "': " + parser.getName());
+            if (log.isDebugEnabled()) log.debug("Parser for mime type '" + mime + "': " + parser.getName());
         }
         
         if (prototypeMime != null) for (Extension ext: parser.supportedExtensions()) {
+            // an idiom for several formats keeps the mime type that belongs to the extension
+            MimeType m = Extension.getMimeType(ext);
+            if (m == null || !parser.supportedMimeTypes().contains(m)) m = prototypeMime;
             MimeType s = ext2mime.get(ext);
-            if (s != null) log.error("parser for extension '" + ext + "' was set to mime '" + s + "', overwriting with new mime '" + prototypeMime + "'.");
-            ext2mime.put(ext, prototypeMime);
+            if (s != null) log.error("parser for extension '" + ext + "' was set to mime '" + s + "', overwriting with new mime '" + m + "'.");
+            ext2mime.put(ext, m);
         }
         
         for (Extension ext: parser.supportedExtensions()) {
             // process the extensions
-            Idiom p0 = ext2parser.get(ext);
+            IdiomDescriptor p0 = ext2parser.get(ext);
             if (p0 != null) log.error("parser for extension '" + ext + "' was set to '" + p0.getName() + "', overwriting with new parser '" + parser.getName() + "'.");
             ext2parser.put(ext, parser);
-            log.info("Parser for extension '" + ext + "': " + parser.getName());
+            if (log.isDebugEnabled()) log.debug("Parser for extension '" + ext + "': " + parser.getName());
         }
     }
     
     public static Model parseSource(final DataSource source) throws InterruptedException, ParserException {
         if (log.isDebugEnabled()) log.debug("Parsing '" + source.getURI().toNormalform(true, true) + "' from DataSource");
-        List<Idiom> idioms = null;
-        idioms = idiomParser(source.getURI(), source.getMimeType());
-        return parseSource(source, idioms);
+        // a known bad document is rejected before the content is touched
+        long failureKey = checkFailures(source.getURI(), source.getContentLength());
+        final boolean opened = opens(source);
+        MimeType sniffed = sniff(source);
+        try {
+            if (!source.hasMimeType() && sniffed != null) source.setMimeType(sniffed);
+            List<Idiom> idioms = idiomParser(source.getURI(), sniffed, source.getMimeType());
+            return parseSource(source, idioms, failureKey);
+        } finally {
+            if (opened) closeStream(source);
+        }
+    }
+    
+    /**
+     * parse a source with the idiom sessions of a batch. A thread that parses a sequence of documents
+     * keeps one session per idiom in its own pool, so that the idioms keep their helper objects from one document
+     * to the next. Parsers that run in other threads, i.e. speculative attempts, do not use the pool.
+     * @param source
+     * @param pool the sessions of the batch; the pool must not be used by another thread at the same time
+     * @return the model
+     * @throws InterruptedException
+     * @throws ParserException
+     */
+    public static Model parseSource(final DataSource source, final IdiomSessionPool pool) throws InterruptedException, ParserException {
+        final IdiomSessionPool old = batchSessions.get();
+        batchSessions.set(pool);
+        try {
+            return parseSource(source);
+        } finally {
+            if (old == null) batchSessions.remove(); else batchSessions.set(old);
+        }
     }
     
     public static Model parseSource(final URI location) throws InterruptedException, ParserException {
@@ -141,28 +238,91 @@ public class Parser {
             MimeType mimeType,
             final String charset,
             final long contentLength,
-            final InputStream sourceStream
+            InputStream sourceStream
         ) throws InterruptedException, ParserException {
         if (log.isDebugEnabled()) log.debug("Parsing '" + location + "' from stream");
-        List<Idiom> idioms = null;
-        idioms = idiomParser(location, mimeType);
+        long failureKey = checkFailures(location, contentLength);
+        if (!sourceStream.markSupported()) sourceStream = new BufferedInputStream(sourceStream, ContentSniffer.PEEK_SIZE);
+        MimeType sniffed;
+        try {
+            byte[] head = ContentSniffer.peek(sourceStream);
+            sniffed = ContentSniffer.sniff(head, head.length, mimeType);
+        } catch (IOException e) {
+            throw new ParserException("cannot read content: " + e.getMessage(), location, e);
+        }
+        if (mimeType == null) mimeType = sniffed;
+        List<Idiom> idioms = idiomParser(location, sniffed, mimeType);
 
         assert !idioms.isEmpty();
         
-        // if we do not have more than one parser or the content size is over MaxInt
-        // then we use only one stream-oriented parser.
-        if (idioms.size() == 1 || contentLength > Integer.MAX_VALUE) {
+        // if we do not have more than one parser then we use only one stream-oriented parser.
+        if (idioms.size() == 1 && cache == null && failures == null) {
             // use a specific stream-oriented parser
             return parseSource(location, mimeType, idioms.get(0), charset, contentLength, sourceStream);
         }
         
-        // in case that we know more parsers we first transform the content into a byte[] and use that as base
-        // for a number of different parse attempts.
-        try {
-            return parseSource(new DataSource(location, mimeType, charset, FileUtils.read(sourceStream, (int) contentLength)), idioms);
+        DataSource source = new DataSource(location, mimeType, charset, sourceStream);
+        if (contentLength >= 0) source.setSize(contentLength);
+        return parseSource(source, idioms, failureKey);
+    }
+    
+    /**
+     * parse a content buffer with a number of parsers. Every parser gets its own stream from the buffer.
+     * If a parse cache is set, the cache is asked first and the result is stored in the cache.
+     */
+    private static Model parseSource(
+            final URI location,
+            MimeType mimeType,
+            final String charset,
+            final ContentBuffer buffer,
+            final List<Idiom> idioms
+        ) throws InterruptedException, ParserException {
+        final ParseCache c = cache;
+        final FailureCache f = (failures != null && failures.isByContent()) ? failures : null;
+        final String uri = (location == null) ? "" : location.toNormalform(true, true);
+        String md5 = null;
+        if (c != null || f != null) try {
+            md5 = Digest.md5Hex(buffer.newStream());
         } catch (IOException e) {
-            throw new ParserException(e.getMessage(), location);
+            throw new ParserException(e.getMessage(), location, e);
+        }
+        if (f != null && f.contains(FailureCache.key(md5))) {
+            throw new ParserException("content failed before", location, ParserException.Reason.KNOWN_BAD);
+        }
+        String key = null;
+        if (c != null) {
+            key = ParseCache.key(md5, idioms);
+            Model doc = c.get(key, uri);
+            if (doc != null) return doc;
+        }
+        Model doc;
+        try {
+            doc = parseSource(sources(location, mimeType, charset, buffer, idioms.size()), idioms);
+        } catch (ParserException e) {
+            if (f != null && e.getReason() == ParserException.Reason.FAILED && !Thread.currentThread().isInterrupted()) f.add(FailureCache.key(md5));
+            throw e;
+        }
+        if (c != null) c.put(key, uri, doc);
+        return doc;
+    }
+    
+    /**
+     * create one data source for every parser from a content buffer
+     */
+    private static List<DataSource> sources(
+            final URI location,
+            MimeType mimeType,
+            final String charset,
+            final ContentBuffer buffer,
+            final int count) {
+        if (!buffer.isSpilled()) return Collections.nCopies(count, new DataSource(location, mimeType, charset, buffer.getArray()));
+        List<DataSource> sources = new ArrayList<DataSource>(count);
+        for (int i = 0; i < count; i++) {
+            DataSource source = new DataSource(location, mimeType, charset, buffer.newStream());
+            source.setSize(buffer.length());
+            sources.add(source);
         }
+        return sources;
     }
     
     public static Model parseSource(
@@ -173,8 +333,9 @@ public class Parser {
         ) throws InterruptedException, ParserException {
         if (log.isDebugEnabled()) log.debug("Parsing '" + location + "' from stream");
         MimeType mimeType = MimeType.getMimetype(mimeTypeString);
-        List<Idiom> idioms = null;
-        idioms = idiomParser(location, mimeType);
+        MimeType sniffed = ContentSniffer.sniff(sourceArray, sourceArray.length, mimeType);
+        if (mimeType == null) mimeType = sniffed;
+        List<Idiom> idioms = idiomParser(location, sniffed, mimeType);
 
         assert !idioms.isEmpty();        
         return parseSource(new DataSource(location, mimeType, charset, sourceArray), idioms);
@@ -195,7 +356,7 @@ public class Parser {
 
         if (log.isDebugEnabled()) log.info("Parsing " + location + " with mimeType '" + mimeType + "' and file extension '" + ((ext == null) ? "null" : ext.toString())  + "'.");
         try {
-            return idiom.parse(new DataSource(location, mimeType, documentCharset, sourceStream));
+            return parse(idiom, new DataSource(location, mimeType, documentCharset, sourceStream));
         } catch (ParserException e) {
             throw new ParserException("parser failed: " + idiom.getName(), location);
         }
@@ -205,14 +366,221 @@ public class Parser {
             final DataSource source,
             List<Idiom> idioms
         ) throws InterruptedException, ParserException {
-        if (log.isDebugEnabled()) log.debug("Parsing " + source.getURI());
+        return parseSource(source, idioms, checkFailures(source.getURI(), source.getContentLength()));
+    }
+    
+    private static Model parseSource(
+            final DataSource source,
+            final List<Idiom> idioms,
+            final long failureKey
+        ) throws InterruptedException, ParserException {
+        final FailureCache f = failures;
+        try {
+            if (cache == null && (f == null || !f.isByContent()) && (idioms.size() == 1 || source.hasArray() || !source.hasStream())) {
+                return parseSource(Collections.nCopies(idioms.size(), source), idioms);
+            }
+            
+            // In case that we know more parsers or want to look into the cache we first put the content
+            // into a content buffer that can be read several times. Small contents are held in memory, large
+            // contents are written to a temporary file.
+            ContentBuffer buffer = buffer(source);
+            try {
+                return parseSource(source.getURI(), source.getMimeType(), source.getCharset(), buffer, idioms);
+            } finally {
+                buffer.close();
+            }
+        } catch (ParserException e) {
+            if (f != null && e.getReason() == ParserException.Reason.FAILED && !Thread.currentThread().isInterrupted()) f.add(failureKey);
+            throw e;
+        }
+    }
+    
+    /**
+     * set a cache for documents that could not be parsed. Such documents are rejected with a
+     * ParserException of the reason KNOWN_BAD until their entry expires.
+     * @param f the failure cache or null to parse every document
+     */
+    public static void setFailureCache(final FailureCache f) {
+        failures = f;
+    }
+    
+    public static FailureCache getFailureCache() {
+        return failures;
+    }
+    
+    /**
+     * check the failure cache for a document location
+     * @return the failure cache key of the location, or 0 if there is no failure cache
+     * @throws ParserException if the document failed before
+     */
+    private static long checkFailures(final URI location, final long size) throws ParserException {
+        final FailureCache f = failures;
+        if (f == null) return 0;
+        final long key = FailureCache.key(location, size);
+        if (f.contains(key)) throw new ParserException("document failed before", location, ParserException.Reason.KNOWN_BAD);
+        return key;
+    }
+    
+    private static ContentBuffer buffer(final DataSource source) throws ParserException {
+        if (source.hasArray()) return new ContentBuffer(source.getArray());
+        InputStream is = source.getStream();
+        if (is == null) throw new ParserException("no content", source.getURI());
+        try {
+            return new ContentBuffer(is, source.getContentLength());
+        } catch (IOException e) {
+            throw new ParserException(e.getMessage(), source.getURI(), e);
+        } finally {
+            // a stream that was opened from the uri is closed here; a given stream is closed by its owner
+            if (!source.hasStream()) try {is.close();} catch (IOException e) {}
+        }
+    }
+    
+    /**
+     * parse a source and give the statements to the sink while they are produced. No model is created,
+     * so that the memory for the result does not grow with the size of the document.
+     * Because statements that were given to the sink cannot be taken back, the next parser is only
+     * tried if the failed parser did not produce a statement. The parse cache is not used.
+     * @param source
+     * @param sink the receiver of the statements
+     * @throws InterruptedException
+     * @throws ParserException
+     */
+    public static void parseSource(final DataSource source, final StatementSink sink) throws InterruptedException, ParserException {
+        if (log.isDebugEnabled()) log.debug("Parsing '" + source.getURI().toNormalform(true, true) + "' from DataSource to sink");
+        long failureKey = checkFailures(source.getURI(), source.getContentLength());
+        final boolean opened = opens(source);
+        MimeType sniffed = sniff(source);
+        try {
+            if (!source.hasMimeType() && sniffed != null) source.setMimeType(sniffed);
+            List<Idiom> idioms = idiomParser(source.getURI(), sniffed, source.getMimeType());
+            try {
+                if (idioms.size() == 1 || source.hasArray() || !source.hasStream()) {
+                    parseSource(Collections.nCopies(idioms.size(), source), idioms, sink);
+                    return;
+                }
+                ContentBuffer buffer = buffer(source);
+                try {
+                    parseSource(sources(source.getURI(), source.getMimeType(), source.getCharset(), buffer, idioms.size()), idioms, sink);
+                } finally {
+                    buffer.close();
+                }
+            } catch (ParserException e) {
+                final FailureCache f = failures;
+                if (f != null && e.getReason() == ParserException.Reason.FAILED && !Thread.currentThread().isInterrupted()) f.add(failureKey);
+                throw e;
+            }
+        } finally {
+            if (opened) closeStream(source);
+        }
+    }
+    
+    private static void parseSource(
+            final List<DataSource> sources,
+            final List<Idiom> idioms,
+            final StatementSink sink
+        ) throws InterruptedException, ParserException {
+        final DataSource source = sources.get(0);
+        final HashMap<Idiom, ParserException> failedParser = new HashMap<Idiom, ParserException>();
+        final long[] count = new long[1];
+        final StatementSink counter;
+        if (sink instanceof ModelStatementSink) {
+            // the idioms must still see a model sink; they write the content text of a model in one statement
+            final ModelStatementSink model = (ModelStatementSink) sink;
+            counter = new ModelStatementSink(model.getModel()) {
+                public void add(Resource subject, Property predicate, RDFNode object) {
+                    model.add(subject, predicate, object);
+                    count[0]++;
+                }
+            };
+        } else {
+            counter = new StatementSink() {
+                public void add(Resource subject, Property predicate, RDFNode object) throws IOException {
+                    sink.add(subject, predicate, object);
+                    count[0]++;
+                }
+            };
+        }
+        for (int i = 0; i < idioms.size(); i++) {
+            Idiom parser = idioms.get(i);
+            try {
+                parse(parser, sources.get(i), counter);
+                return;
+            } catch (ParserException e) {
+                if (count[0] > 0) throw new ParserException("parser " + parser.getName() + " failed after " + count[0] + " statements: " + e.getMessage(), source.getURI(), e);
+                failedParser.put(parser, e);
+            }
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+        }
+        throw failed(source, failedParser);
+    }
+    
+    /**
+     * set a pool for idiom sessions. With a pool the idioms keep their helper objects from one document
+     * to the next; the pool should hold as many idle sessions per idiom as there are parsing threads.
+     * @param pool the pool or null to create a new session for every document
+     */
+    public static void setSessionPool(final IdiomSessionPool pool) {
+        IdiomSessionPool old = sessions;
+        sessions = pool;
+        if (old != null && old != pool) old.close();
+    }
+    
+    public static IdiomSessionPool getSessionPool() {
+        return sessions;
+    }
+    
+    private static IdiomSessionPool sessionPool() {
+        final IdiomSessionPool batch = batchSessions.get();
+        return (batch == null) ? sessions : batch;
+    }
+    
+    private static Model parse(final Idiom idiom, final DataSource source) throws ParserException {
+        final IdiomSessionPool pool = sessionPool();
+        if (pool == null) return idiom.parse(source);
+        return pool.parse(idiom, source);
+    }
+    
+    private static void parse(final Idiom idiom, final DataSource source, final StatementSink sink) throws ParserException {
+        final IdiomSessionPool pool = sessionPool();
+        if (pool == null) idiom.parse(source, sink); else pool.parse(idiom, source, sink);
+    }
+    
+    /**
+     * set a cache for parse results. Documents with the same content are then parsed only once.
+     * @param c the cache or null to switch caching off
+     */
+    public static void setCache(final ParseCache c) {
+        cache = c;
+    }
+    
+    public static ParseCache getCache() {
+        return cache;
+    }
+    
+    /**
+     * try the parsers in the given order
+     * @param sources the data source for each parser; this can be the same source for all parsers
+     * if the source can be read several times
+     * @param idioms the parsers
+     * @return the result of the first parser that was successful
+     */
+    private final static Model parseSource(
+            final List<DataSource> sources,
+            List<Idiom> idioms
+        ) throws InterruptedException, ParserException {
         assert !idioms.isEmpty();
+        assert sources.size() == idioms.size();
+        final DataSource source = sources.get(0);
+        if (log.isDebugEnabled()) log.debug("Parsing " + source.getURI());
+
+        if (speculative && idioms.size() > 1 && shareable(sources)) return parseSpeculative(sources, idioms);
 
         Model doc = null;
         HashMap<Idiom, ParserException> failedParser = new HashMap<Idiom, ParserException>();
-        for (Idiom parser: idioms) {
+        for (int i = 0; i < idioms.size(); i++) {
+            Idiom parser = idioms.get(i);
             try {
-                doc = parser.parse(source);
+                doc = parse(parser, sources.get(i));
             } catch (ParserException e) {
                 failedParser.put(parser, e);
                 //log.warn("tried parser '" + parser.getName() + "' to parse " + location.toNormalform(true, false) + " but failed: " + e.getMessage(), e);
@@ -220,20 +588,176 @@ public class Parser {
             if (doc != null) break;
         }
         
-        if (doc == null) {
-            if (failedParser.size() == 0) {
-                //log.warn("Unable to parse '" + location + "'. " + errorMsg);
-                throw new ParserException("parsing failed", source.getURI());
+        if (doc == null) throw failed(source, failedParser);
+        return doc;
+    }
+    
+    private static ParserException failed(final DataSource source, final Map<Idiom, ParserException> failedParser) {
+        if (failedParser.size() == 0) {
+            //log.warn("Unable to parse '" + location + "'. " + errorMsg);
+            return new ParserException("parsing failed", source.getURI());
+        }
+        String failedParsers = "";
+        for (Map.Entry<Idiom, ParserException> error: failedParser.entrySet()) {
+            // the stack trace is only interesting for the development of a parser
+            if (log.isDebugEnabled()) {
+                log.debug("tried parser '" + error.getKey().getName() + "' to parse " + source.getURI().toNormalform(true, false) + " but failed: " + error.getValue().getMessage(), error.getValue());
             } else {
-                String failedParsers = "";
-                for (Map.Entry<Idiom, ParserException> error: failedParser.entrySet()) {
-                    log.warn("tried parser '" + error.getKey().getName() + "' to parse " + source.getURI().toNormalform(true, false) + " but failed: " + error.getValue().getMessage(), error.getValue());
-                    failedParsers += error.getKey().getName() + " ";
+                log.warn("tried parser '" + error.getKey().getName() + "' to parse " + source.getURI().toNormalform(true, false) + " but failed: " + error.getValue().getMessage());
+            }
+            failedParsers += error.getKey().getName() + " ";
+        }
+        return new ParserException("all parser failed: " + failedParsers, source.getURI());
+    }
+    
+    /**
+     * switch the speculative parsing mode on or off. In speculative mode the parsers for a document
+     * are not only tried one after another: if the parser with the highest confidence does not finish
+     * within the head start time, the next parser is started concurrently on the same content.
+     * A failed parser also starts the next one at once. The first parser that returns a model wins and
+     * all other parsers are cancelled. This shortens the latency for documents with a wrong mime type
+     * or extension, at the cost of additional CPU time for documents that take longer than the head start.
+     * @param on true to switch speculative parsing on
+     * @param headStart the time in milliseconds that a parser can run alone before the next one starts; 0 starts all at once
+     */
+    public static void setSpeculative(final boolean on, final long headStart) {
+        if (headStart < 0) throw new IllegalArgumentException("headStart must not be negative");
+        speculativeHeadStart = headStart;
+        speculative = on;
+    }
+    
+    public static boolean isSpeculative() {
+        return speculative;
+    }
+    
+    private static ExecutorService speculativeExecutor() {
+        synchronized (Parser.class) {
+            if (speculativeExecutor == null) {
+                speculativeExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                    private int count = 0;
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "Parser.speculative-" + (this.count++));
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            }
+            return speculativeExecutor;
+        }
+    }
+    
+    /**
+     * a source can be given to several parsers at the same time if it is not a stream that is shared
+     */
+    private static boolean shareable(final List<DataSource> sources) {
+        for (int i = 0; i < sources.size(); i++) {
+            DataSource source = sources.get(i);
+            if (source.hasArray()) continue;
+            for (int j = i + 1; j < sources.size(); j++) if (sources.get(j) == source) return false;
+        }
+        return true;
+    }
+    
+    private static Future<Model> attempt(final CompletionService<Model> attempts, final Idiom idiom, final DataSource source) {
+        // every parser gets its own copy of the attributes; the content array is shared
+        final DataSource s = new DataSource();
+        s.putAll(source);
+        return attempts.submit(new Callable<Model>() {
+            public Model call() throws Exception {
+                return parse(idiom, s);
+            }
+        });
+    }
+    
+    private final static Model parseSpeculative(
+            final List<DataSource> sources,
+            final List<Idiom> idioms
+        ) throws InterruptedException, ParserException {
+        final DataSource source = sources.get(0);
+        final CompletionService<Model> attempts = new ExecutorCompletionService<Model>(speculativeExecutor());
+        final Map<Future<Model>, Idiom> running = new HashMap<Future<Model>, Idiom>();
+        final HashMap<Idiom, ParserException> failedParser = new HashMap<Idiom, ParserException>();
+        int next = 0;
+        try {
+            while (next < idioms.size() || !running.isEmpty()) {
+                if (running.isEmpty() || (next < idioms.size() && speculativeHeadStart == 0)) {
+                    // start the parser with the next lower confidence
+                    running.put(attempt(attempts, idioms.get(next), sources.get(next)), idioms.get(next));
+                    next++;
+                    continue;
+                }
+                final Future<Model> done = (next < idioms.size()) ? attempts.poll(speculativeHeadStart, TimeUnit.MILLISECONDS) : attempts.take();
+                if (done == null) {
+                    // the running parsers did not finish within the head start
+                    running.put(attempt(attempts, idioms.get(next), sources.get(next)), idioms.get(next));
+                    next++;
+                    continue;
+                }
+                final Idiom idiom = running.remove(done);
+                try {
+                    final Model doc = done.get();
+                    if (doc != null) return doc;
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    failedParser.put(idiom, (cause instanceof ParserException) ?
+                            (ParserException) cause :
+                            new ParserException(String.valueOf(cause), source.getURI(), cause));
                 }
-                throw new ParserException("all parser failed: " + failedParsers, source.getURI());
             }
+        } finally {
+            // cancel the parsers that are still running
+            for (Future<Model> f: running.keySet()) f.cancel(true);
         }
-        return doc;
+        throw failed(source, failedParser);
+    }
+    
+    /**
+     * guess the mime type of a data source from the first bytes of its content.
+     * If the source has a stream, the stream is replaced by a stream that can be reset and
+     * the content is not consumed. A source that has only an uri gets such a stream from the uri,
+     * so that the parser reads the content from the same stream and the resource is opened only once;
+     * the caller must close that stream (see opens()).
+     * @param source
+     * @return the mime type of the content or null if the content is not recognized
+     */
+    public static MimeType sniff(final DataSource source) {
+        try {
+            if (source.hasArray()) {
+                byte[] b = source.getArray();
+                return ContentSniffer.sniff(b, b.length, source.getMimeType());
+            }
+            if (!source.hasStream() && source.hasURI()) {
+                source.setStream(new BufferedInputStream(source.getURI().getInputStream(), ContentSniffer.PEEK_SIZE));
+            }
+            if (source.hasStream()) {
+                InputStream is = source.getStream();
+                if (!is.markSupported()) {
+                    is = new BufferedInputStream(is, ContentSniffer.PEEK_SIZE);
+                    source.setStream(is);
+                }
+                byte[] b = ContentSniffer.peek(is);
+                return ContentSniffer.sniff(b, b.length, source.getMimeType());
+            }
+        } catch (IOException e) {
+            log.warn("cannot sniff content of " + source.getURI() + ": " + e.getMessage());
+        }
+        return null;
+    }
+    
+    /**
+     * check if sniff() opens a stream for a source
+     * @param source
+     * @return true if the source has only an uri; then the stream that sniff() sets must be closed with closeStream()
+     */
+    private static boolean opens(final DataSource source) {
+        return !source.hasArray() && !source.hasStream() && source.hasURI();
+    }
+    
+    private static void closeStream(final DataSource source) {
+        if (!source.hasStream()) return;
+        try {
+            source.getStream().close();
+        } catch (IOException e) {}
     }
     
     /**
@@ -245,7 +769,7 @@ public class Parser {
     public static String supports(final URI url, MimeType mimeType) {
         try {
             // try to get a parser. If this works, we don't need the parser itself, we just return null to show that everything is ok.
-            List<Idiom> idioms = idiomParser(url, mimeType);
+            List<Idiom> idioms = idiomParser(url, null, mimeType);
             return (idioms == null || idioms.isEmpty()) ? "no parser found" : null;
         } catch (ParserException e) {
             // in case that a parser is not available, return a error string describing the problem.
@@ -258,39 +782,55 @@ public class Parser {
      * because mime types returned by web severs are sometimes wrong, we also compute the mime type again
      * from the extension that can be extracted from the url path. That means that there are 3 criteria
      * that can be used to select a parser:
+     * - the mime type that was sniffed from the content
      * - the given extension
      * - the given mime type
      * - the mime type computed from the extension
      * @param url the given url
+     * @param sniffed the mime type sniffed from the content or null
      * @param mimeType the given mime type
      * @return a list of Idiom parsers that may be appropriate for the given criteria
      * @throws ParserException
      */
-    private static List<Idiom> idiomParser(final URI url, MimeType mimeType) throws ParserException {
-        List<Idiom> idioms = new ArrayList<Idiom>(2);
+    private static List<Idiom> idiomParser(final URI url, MimeType sniffed, MimeType mimeType) throws ParserException {
+        List<IdiomDescriptor> descriptors = new ArrayList<IdiomDescriptor>(2);
+        
+        // check sniffed mime type; the content is the most reliable evidence
+        IdiomDescriptor descriptor;
+        if (sniffed != null) {
+            descriptor = mime2parser.get(sniffed);
+            if (descriptor != null) descriptors.add(descriptor);
+        }
         
         // check extension
         Extension ext = url.getFileExtension();
-        Idiom idiom;
         if (ext != null) {
-            idiom = ext2parser.get(ext);
-            if (idiom != null) idioms.add(idiom);
+            descriptor = ext2parser.get(ext);
+            if (descriptor != null && !descriptors.contains(descriptor)) descriptors.add(descriptor);
         }
         
         // check given mime type
         if (mimeType != null) {
-            idiom = mime2parser.get(mimeType);
-            if (idiom != null && !idioms.contains(idiom)) idioms.add(idiom);
+            descriptor = mime2parser.get(mimeType);
+            if (descriptor != null && !descriptors.contains(descriptor)) descriptors.add(descriptor);
         }
         
         // check mime type computed from extension
-        MimeType mimeType2 = ext2mime.get(ext);
-        if (mimeType2 == null) return idioms; // in this case we are a bit more lazy
-        idiom = mime2parser.get(mimeType2);
-        if (idiom != null && !idioms.contains(idiom)) idioms.add(idiom);
+        MimeType mimeType2 = (ext == null) ? null : ext2mime.get(ext);
+        if (mimeType2 != null) {
+            descriptor = mime2parser.get(mimeType2);
+            if (descriptor != null && !descriptors.contains(descriptor)) descriptors.add(descriptor);
+        }
+        
+        // create the idioms that are needed
+        List<Idiom> idioms = new ArrayList<Idiom>(descriptors.size());
+        for (IdiomDescriptor d: descriptors) {
+            Idiom idiom = d.getIdiom();
+            if (idiom != null) idioms.add(idiom);
+        }
         
         // finally check if we found any parser
-        if (idioms.isEmpty()) throw new ParserException("no parser found for extension '" + ext + "' and mime type '" + mimeType.toString() + "'", url);
+        if (idioms.isEmpty()) throw new ParserException("no parser found for extension '" + ext + "' and mime type '" + ((sniffed == null) ? mimeType : sniffed) + "'", url);
         
         return idioms;
     }
@@ -307,9 +847,9 @@ public class Parser {
         if (ext == null) return null;
         MimeType mimeType = ext2mime.get(ext);
         if (mimeType == null) return "no parser available";
-        Idiom idiom = mime2parser.get(mimeType);
-        assert idiom != null;
-        if (idiom == null) return "no parser available (internal error!)";
+        IdiomDescriptor descriptor = mime2parser.get(mimeType);
+        assert descriptor != null;
+        if (descriptor == null) return "no parser available (internal error!)";
         return null;
     }
     
@@ -26,7 +26,16 @@ import net.yacy.cider.document.URI;
 
 
 public class ParserException extends Exception {
+    
+    public enum Reason {
+        FAILED,        // the parser could not process the content
+        TIMEOUT,       // the parser exceeded a time limit and was abandoned
+        INTERRUPTED,   // the parser was cancelled before the document was finished
+        KNOWN_BAD;     // the document failed before and was not parsed again
+    }
+    
     private URI url = null;
+    private Reason reason = Reason.FAILED;
     
     private static final long serialVersionUID = 1L;
 
@@ -44,6 +53,15 @@ public class ParserException extends Exception {
         this.url = url;
     }
     
+    public ParserException(final String message, final URI url, final Reason reason) {
+        this(message, url);
+        this.reason = reason;
+    }
+    
+    public Reason getReason() {
+        return this.reason;
+    }
+    
     public URI getURL() {
         return this.url;
     }
@@ -0,0 +1,131 @@
+/**
+ *  BuiltinIdioms.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser.idiom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.yacy.cider.document.Extension;
+import net.yacy.cider.document.MimeType;
+import net.yacy.cider.parser.IdiomDescriptor;
+import net.yacy.cider.parser.IdiomProvider;
+
+/**
+ * the provider for the idioms in this package. The mime types and extensions of the idioms are
+ * declared here only; the idiom classes take their sets from these arrays, so that the descriptors
+ * can be created without loading the idiom classes. The first mime type of an idiom is its prototype mime.
+ */
+public class BuiltinIdioms implements IdiomProvider {
+
+    static final MimeType[] PDF_MIME_TYPES = new MimeType[]{
+            MimeType.APPLICATION_PDF,
+            MimeType.APPLICATION_XPDF,
+            MimeType.APPLICATION_ACROBAT,
+            MimeType.APPLICATION_VNDPDF,
+            MimeType.TEXT_PDF,
+            MimeType.TEXT_XPDF};
+    static final Extension[] PDF_EXTENSIONS = new Extension[]{Extension.PDF};
+    
+    static final MimeType[] ARCHIVE_MIME_TYPES = new MimeType[]{
+            MimeType.APPLICATION_ZIP,
+            MimeType.APPLICATION_JAVA_ARCHIVE,
+            MimeType.APPLICATION_TAR,
+            MimeType.APPLICATION_GZIP};
+    static final Extension[] ARCHIVE_EXTENSIONS = new Extension[]{
+            Extension.ZIP,
+            Extension.JAR,
+            Extension.TAR,
+            Extension.TGZ,
+            Extension.GZ};
+    
+    static final MimeType[] HTML_MIME_TYPES = new MimeType[]{MimeType.TEXT_HTML, MimeType.TEXT_XHTML_XML};
+    static final Extension[] HTML_EXTENSIONS = new Extension[]{
+            Extension.HTM,
+            Extension.HTML,
+            Extension.SHTML,
+            Extension.XHTML};
+    
+    static final MimeType[] TEXT_MIME_TYPES = new MimeType[]{MimeType.TEXT_PLAIN};
+    static final Extension[] TEXT_EXTENSIONS = new Extension[]{Extension.TXT};
+    
+    static final MimeType[] ODF_MIME_TYPES = new MimeType[]{
+            MimeType.APPLICATION_OPENDOCUMENT_TEXT,
+            MimeType.APPLICATION_OPENDOCUMENT_SPREADSHEET,
+            MimeType.APPLICATION_OPENDOCUMENT_PRESENTATION,
+            MimeType.APPLICATION_OPENDOCUMENT_GRAPHICS,
+            MimeType.APPLICATION_OPENDOCUMENT_TEXT_MASTER,
+            MimeType.APPLICATION_OPENDOCUMENT_TEXT_TEMPLATE,
+            MimeType.APPLICATION_OPENDOCUMENT_SPREADSHEET_TEMPLATE,
+            MimeType.APPLICATION_OPENDOCUMENT_PRESENTATION_TEMPLATE,
+            MimeType.APPLICATION_OPENDOCUMENT_GRAPHICS_TEMPLATE,
+            MimeType.APPLICATION_OO_WRITER,
+            MimeType.APPLICATION_OO_CALC,
+            MimeType.APPLICATION_OO_IMPRESS,
+            MimeType.APPLICATION_OO_DRAW};
+    static final Extension[] ODF_EXTENSIONS = new Extension[]{
+            Extension.ODT,
+            Extension.ODS,
+            Extension.ODP,
+            Extension.ODG,
+            Extension.ODM,
+            Extension.OTT,
+            Extension.OTS,
+            Extension.OTP,
+            Extension.OTG,
+            Extension.SXW,
+            Extension.SXC,
+            Extension.SXI,
+            Extension.SXD};
+    
+    static final MimeType[] OOXML_MIME_TYPES = new MimeType[]{MimeType.APPLICATION_OOXML_WORD, MimeType.APPLICATION_OOXML_POWERPOINT, MimeType.APPLICATION_OOXML_EXCEL};
+    static final Extension[] OOXML_EXTENSIONS = new Extension[]{Extension.DOCX, Extension.PPTX, Extension.XLSX};
+    
+    static final MimeType[] OLE2_MIME_TYPES = new MimeType[]{
+            MimeType.APPLICATION_MSWORD,
+            MimeType.APPLICATION_MSEXCEL,
+            MimeType.APPLICATION_MSEXCEL_2,
+            MimeType.APPLICATION_MSPOWERPOINT,
+            MimeType.APPLICATION_MSPOWERPOINT_2};
+    static final Extension[] OLE2_EXTENSIONS = new Extension[]{
+            Extension.DOC,
+            Extension.DOT,
+            Extension.XLS,
+            Extension.XLA,
+            Extension.PPT,
+            Extension.PPS,
+            Extension.POT};
+    
+    public List<IdiomDescriptor> descriptors() {
+        final ClassLoader loader = BuiltinIdioms.class.getClassLoader();
+        List<IdiomDescriptor> d = new ArrayList<IdiomDescriptor>();
+        d.add(new IdiomDescriptor("Acrobat Portable Document Parser", "net.yacy.cider.parser.idiom.pdfIdiom", PDF_MIME_TYPES, PDF_EXTENSIONS, loader));
+        d.add(new IdiomDescriptor("Archive Parser", "net.yacy.cider.parser.idiom.archiveIdiom", ARCHIVE_MIME_TYPES, ARCHIVE_EXTENSIONS, loader));
+        d.add(new IdiomDescriptor("HTML Parser", "net.yacy.cider.parser.idiom.htmlIdiom", HTML_MIME_TYPES, HTML_EXTENSIONS, loader));
+        d.add(new IdiomDescriptor("Text Parser", "net.yacy.cider.parser.idiom.textIdiom", TEXT_MIME_TYPES, TEXT_EXTENSIONS, loader));
+        d.add(new IdiomDescriptor("OpenDocument Parser", "net.yacy.cider.parser.idiom.odfIdiom", ODF_MIME_TYPES, ODF_EXTENSIONS, loader));
+        d.add(new IdiomDescriptor("Office Open XML Parser", "net.yacy.cider.parser.idiom.ooxmlIdiom", OOXML_MIME_TYPES, OOXML_EXTENSIONS, loader));
+        d.add(new IdiomDescriptor("OLE2 Office Document Parser", "net.yacy.cider.parser.idiom.ole2Idiom", OLE2_MIME_TYPES, OLE2_EXTENSIONS, loader));
+        return d;
+    }
+    
+}
@@ -0,0 +1,141 @@
+/**
+ *  ContentText.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser.idiom;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+
+import net.yacy.cider.parser.ModelStatementSink;
+import net.yacy.cider.parser.StatementSink;
+import net.yacy.cider.vocabulary.CIDER;
+
+/**
+ * the content text of a document that is given to the sink while it is read. For a streaming sink, a text that is
+ * longer than the segment size is given in several content statements, each ending at the first line end after
+ * the segment size. A ModelStatementSink gets the whole text in one statement, because the statements of a model
+ * have no order and equal segments would collapse into one.
+ * Whitespace can be collapsed, so that idioms for markup can append all characters that they read.
+ */
+final class ContentText {
+    
+    public static final int SEGMENT_SIZE = 1024 * 1024;
+    
+    private final Resource resource;
+    private final StatementSink sink;
+    private final boolean segmented;
+    private final StringBuilder segment;
+    private boolean space;
+    
+    public ContentText(final Resource resource, final StatementSink sink) {
+        this.resource = resource;
+        this.sink = sink;
+        this.segmented = !(sink instanceof ModelStatementSink);
+        this.segment = new StringBuilder();
+        this.space = false;
+    }
+    
+    /**
+     * append a character as it is
+     * @throws IOException if the sink fails
+     */
+    public void append(final char c) throws IOException {
+        this.segment.append(c);
+        // a segment without line ends is cut anywhere
+        if (this.segmented && this.segment.length() >= 2 * SEGMENT_SIZE) flush();
+    }
+    
+    /**
+     * append characters; a sequence of whitespace is written as one space,
+     * and no space is written at the start of a line
+     * @throws IOException if the sink fails
+     */
+    public void collapse(final char[] c, final int offset, final int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            if (c[i] <= ' ' || c[i] == 0xA0) {
+                this.space = true;
+                continue;
+            }
+            if (this.space && this.segment.length() > 0 && this.segment.charAt(this.segment.length() - 1) != '\n') this.segment.append(' ');
+            this.space = false;
+            append(c[i]);
+        }
+    }
+    
+    /**
+     * end a line
+     * @throws IOException if the sink fails
+     */
+    public void newline() throws IOException {
+        this.segment.append('\n');
+        this.space = false;
+        if (this.segmented && this.segment.length() >= SEGMENT_SIZE) flush();
+    }
+    
+    /**
+     * a writer that appends the characters as they are. Line ends of all platforms end a line;
+     * the writer does not flush the text when it is closed.
+     * @return a writer for libraries that write their text output to a writer
+     */
+    public Writer writer() {
+        return new Writer() {
+            private boolean cr = false;
+            @Override
+            public void write(final char[] c, final int offset, final int length) throws IOException {
+                for (int i = offset; i < offset + length; i++) {
+                    if (c[i] == '\r') {
+                        ContentText.this.newline();
+                        this.cr = true;
+                        continue;
+                    }
+                    if (c[i] == '\n') {
+                        if (!this.cr) ContentText.this.newline();
+                    } else {
+                        ContentText.this.append(c[i]);
+                    }
+                    this.cr = false;
+                }
+            }
+            @Override
+            public void flush() {}
+            @Override
+            public void close() {}
+        };
+    }
+    
+    /**
+     * give the rest of the text to the sink; a text that contains only whitespace is not given
+     * @throws IOException if the sink fails
+     */
+    public void flush() throws IOException {
+        for (int i = 0; i < this.segment.length(); i++) {
+            if (this.segment.charAt(i) > ' ') {
+                this.sink.add(this.resource, CIDER.data_content_text, ResourceFactory.createPlainLiteral(this.segment.toString()));
+                break;
+            }
+        }
+        this.segment.setLength(0);
+    }
+}
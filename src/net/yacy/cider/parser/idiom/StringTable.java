@@ -0,0 +1,97 @@
+/**
+ *  StringTable.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser.idiom;
+
+import java.io.IOException;
+
+/**
+ * a table of strings in one char buffer. The strings are numbered in the order in which they are added;
+ * an offset table holds the start of each string in the buffer.
+ */
+final class StringTable {
+    
+    private char[] chars;
+    private int length;
+    private int[] offsets;
+    private int count;
+    
+    public StringTable() {
+        this.chars = new char[1024];
+        this.length = 0;
+        this.offsets = new int[64];
+        this.count = 0;
+    }
+    
+    /**
+     * begin the next string; the following calls of append() add to this string
+     */
+    public void start() {
+        if (this.count == this.offsets.length) {
+            final int[] o = new int[this.offsets.length * 2];
+            System.arraycopy(this.offsets, 0, o, 0, this.count);
+            this.offsets = o;
+        }
+        this.offsets[this.count++] = this.length;
+    }
+    
+    private void ensure(final int len) throws IOException {
+        if (this.length + len <= this.chars.length) return;
+        final long size = Math.max((long) this.chars.length * 2, (long) this.length + len);
+        if (size > Integer.MAX_VALUE - 8) throw new IOException("string table too large");
+        final char[] n = new char[(int) size];
+        System.arraycopy(this.chars, 0, n, 0, this.length);
+        this.chars = n;
+    }
+    
+    public void append(final char[] c, final int offset, final int len) throws IOException {
+        if (this.count == 0) start();
+        ensure(len);
+        System.arraycopy(c, offset, this.chars, this.length, len);
+        this.length += len;
+    }
+    
+    /**
+     * add a complete string
+     */
+    public void add(final StringBuilder s) throws IOException {
+        start();
+        ensure(s.length());
+        s.getChars(0, s.length(), this.chars, this.length);
+        this.length += s.length();
+    }
+    
+    public int size() {
+        return this.count;
+    }
+    
+    /**
+     * write a string to the text; a string number that is not in the table is ignored
+     */
+    public void write(final int i, final ContentText text) throws IOException {
+        if (i < 0 || i >= this.count) return;
+        final int start = this.offsets[i];
+        final int end = (i + 1 < this.count) ? this.offsets[i + 1] : this.length;
+        text.collapse(this.chars, start, end - start);
+    }
+}
+
@@ -0,0 +1,594 @@
+/**
+ *  archiveIdiom.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser.idiom;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+
+import net.yacy.cider.document.DataSource;
+import net.yacy.cider.document.Extension;
+import net.yacy.cider.document.MimeType;
+import net.yacy.cider.document.URI;
+import net.yacy.cider.parser.AbstractIdiom;
+import net.yacy.cider.parser.ContentSniffer;
+import net.yacy.cider.parser.Idiom;
+import net.yacy.cider.parser.ModelStatementSink;
+import net.yacy.cider.parser.Parser;
+import net.yacy.cider.parser.ParserException;
+import net.yacy.cider.parser.StatementSink;
+import net.yacy.cider.vocabulary.CIDER;
+
+/**
+ * the archive idiom reads zip, jar, tar and gzip files as a stream; nothing is extracted to disk.
+ * Every entry gets the uri of the archive with the entry path appended, is linked to the archive with
+ * the referrer property of the cider references vocabulary and is given to the Parser again, so that
+ * archives inside of archives are also parsed.
+ * Entries of an archive that is not itself inside of an archive are parsed concurrently:
+ * small entries are read into memory and parsed by a pool thread while the stream reads the next entry.
+ * The pool is shared by all archives and has at most as many threads as the concurrency; if all pool threads
+ * are busy, the thread that reads the archive parses the entry itself.
+ */
+public class archiveIdiom extends AbstractIdiom implements Idiom {
+
+    private static final Set<MimeType>  SUPPORTED_MIME_TYPES = new HashSet<MimeType>();
+    private static final Set<Extension> SUPPORTED_EXTENSIONS = new HashSet<Extension>();
+    private static final Set<String>    USED_VOCABULARIES    = new HashSet<String>();
+    
+    static {
+        Collections.addAll(SUPPORTED_EXTENSIONS, BuiltinIdioms.ARCHIVE_EXTENSIONS);
+        Collections.addAll(SUPPORTED_MIME_TYPES, BuiltinIdioms.ARCHIVE_MIME_TYPES);
+        USED_VOCABULARIES.add(CIDER.getReferencesURI());
+    }
+    
+    private static final int MAX_DEPTH = 8; // archives that are nested deeper are not parsed
+    private static final int MEMORY_ENTRY_SIZE = 1024 * 1024; // larger entries are parsed from the stream
+    
+    // the nesting depth of the archive that is parsed by the current thread
+    private static final ThreadLocal<Integer> depth = new ThreadLocal<Integer>() {
+        protected Integer initialValue() {
+            return Integer.valueOf(0);
+        }
+    };
+    
+    private static volatile int concurrency = Runtime.getRuntime().availableProcessors();
+    private static ThreadPoolExecutor executor = null;
+    
+    public archiveIdiom() {        
+        super("Archive Parser"); 
+    }
+
+    @Override
+    public Set<MimeType> supportedMimeTypes() {
+        return SUPPORTED_MIME_TYPES;
+    }
+
+    @Override
+    public Set<Extension> supportedExtensions() {
+        return SUPPORTED_EXTENSIONS;
+    }
+
+    public Set<String> usedVocabularies() {
+        return USED_VOCABULARIES;
+    }
+    
+    /**
+     * set the number of entries of one archive that are parsed at the same time. This is also the
+     * number of pool threads that parse entries for all archives together.
+     * @param c the number of entries; 1 parses the entries one after another in the calling thread
+     */
+    public static void setConcurrency(final int c) {
+        if (c < 1) throw new IllegalArgumentException("concurrency must be at least 1");
+        synchronized (archiveIdiom.class) {
+            concurrency = c;
+            if (executor == null) return;
+            // the core size must not exceed the maximum size at any time
+            if (c > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(c);
+                executor.setCorePoolSize(c);
+            } else {
+                executor.setCorePoolSize(c);
+                executor.setMaximumPoolSize(c);
+            }
+        }
+    }
+    
+    @Override
+    public Model parse(DataSource source) throws ParserException {
+        ModelStatementSink sink = new ModelStatementSink();
+        parse(source, sink);
+        return sink.getModel();
+    }
+    
+    @Override
+    public void parse(DataSource source, StatementSink sink) throws ParserException {
+        if (!source.hasURI()) throw new ParserException("an archive needs an uri to name its entries", null);
+        final int level = depth.get().intValue();
+        if (level >= MAX_DEPTH) throw new ParserException("archive is nested too deep", source.getURI());
+        InputStream is = source.getStream();
+        if (is == null) throw new ParserException("no content", source.getURI());
+        
+        // the format is taken from the content because the extension of a tgz file denotes a tar file
+        MimeType mime;
+        try {
+            if (!is.markSupported()) is = new BufferedInputStream(is, ContentSniffer.PEEK_SIZE);
+            final byte[] head = ContentSniffer.peek(is);
+            mime = ContentSniffer.sniff(head, head.length, null);
+        } catch (IOException e) {
+            throw new ParserException("cannot read archive: " + e.getMessage(), source.getURI(), e);
+        }
+        if (mime == null || !SUPPORTED_MIME_TYPES.contains(mime)) mime = source.getMimeType();
+        if (mime == null || !SUPPORTED_MIME_TYPES.contains(mime)) mime = Parser.mimeOf(source.getURI());
+        final Extractor extractor = new Extractor(source, sink, level + 1, (level == 0) ? concurrency : 1);
+        try {
+            if (mime == MimeType.APPLICATION_GZIP) {
+                extractor.entry(gzipEntryName(source.getURI()), -1, new GZIPInputStream(is));
+            } else if (mime == MimeType.APPLICATION_TAR) {
+                final TarReader tar = new TarReader(is);
+                String name;
+                while ((name = tar.next()) != null) {
+                    if (!tar.isFile()) continue;
+                    extractor.entry(name, tar.size(), tar.stream());
+                }
+            } else {
+                final ZipInputStream zip = new ZipInputStream(is);
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null) {
+                    if (entry.isDirectory()) continue;
+                    extractor.entry(entry.getName(), entry.getSize(), new FilterInputStream(zip) {
+                        public void close() {
+                            // the entry is closed by getNextEntry()
+                        }
+                    });
+                }
+            }
+        } catch (IOException e) {
+            throw new ParserException("cannot read archive: " + e.getMessage(), source.getURI(), e);
+        } catch (IllegalArgumentException e) {
+            // a zip entry name with a wrong encoding
+            throw new ParserException("cannot read archive: " + e.getMessage(), source.getURI(), e);
+        } finally {
+            extractor.finish();
+        }
+        extractor.check();
+        if (extractor.entries == 0) throw new ParserException("archive has no entries", source.getURI());
+    }
+    
+    /**
+     * the name of the file in a gzip file: the name of the gzip file without the extension;
+     * a tgz file contains a tar file
+     */
+    private static String gzipEntryName(final URI uri) {
+        final String name = uri.getFileName();
+        final int p = name.lastIndexOf('.');
+        if (p <= 0) return name + ".ungz";
+        final String ext = name.substring(p + 1).toLowerCase();
+        if (ext.equals("tgz")) return name.substring(0, p) + ".tar";
+        if (ext.equals("gz")) return name.substring(0, p);
+        return name + ".ungz";
+    }
+    
+    private static ThreadPoolExecutor executor() {
+        synchronized (archiveIdiom.class) {
+            if (executor == null) {
+                // no queue: a task that finds no idle thread is run by the submitting thread, so that the
+                // number of entries that are parsed at the same time does not grow with the number of archives
+                executor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                        new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                    private int count = 0;
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "archiveIdiom-" + (this.count++));
+                        t.setDaemon(true);
+                        return t;
+                    }
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+                executor.allowCoreThreadTimeOut(true);
+            }
+            return executor;
+        }
+    }
+    
+    /**
+     * the extractor gives the entries of one archive to the parser. With a concurrency above 1 the
+     * entries are parsed by pool threads; the number of entries in memory is limited by the concurrency.
+     */
+    private static class Extractor {
+        
+        private final DataSource container;
+        private final String base;
+        private final Resource resource;
+        private final StatementSink sink;
+        private final int level;
+        private final int concurrency;
+        private final Semaphore slots;
+        private final List<Future<?>> tasks;
+        private IOException sinkError;
+        public int entries;
+        
+        public Extractor(final DataSource container, final StatementSink sink, final int level, final int concurrency) {
+            this.container = container;
+            this.base = container.getURI().toNormalform(true, true);
+            this.resource = ResourceFactory.createResource(this.base);
+            this.level = level;
+            this.concurrency = concurrency;
+            this.slots = new Semaphore(concurrency);
+            this.tasks = new ArrayList<Future<?>>();
+            this.sinkError = null;
+            this.entries = 0;
+            // the sink is shared by the pool threads; an error of the sink stops the archive.
+            // A model sink stays a model sink, so that the idioms write the content text of an entry in one statement
+            if (sink instanceof ModelStatementSink) {
+                final ModelStatementSink model = (ModelStatementSink) sink;
+                this.sink = new ModelStatementSink(model.getModel()) {
+                    public void add(Resource subject, Property predicate, RDFNode object) {
+                        synchronized (Extractor.this) {
+                            model.add(subject, predicate, object);
+                        }
+                    }
+                };
+            } else {
+                this.sink = new StatementSink() {
+                    public void add(Resource subject, Property predicate, RDFNode object) throws IOException {
+                        synchronized (Extractor.this) {
+                            if (sinkError != null) throw sinkError;
+                            try {
+                                sink.add(subject, predicate, object);
+                            } catch (IOException e) {
+                                sinkError = e;
+                                throw e;
+                            }
+                        }
+                    }
+                };
+            }
+        }
+        
+        public void entry(String name, final long size, final InputStream is) throws IOException, ParserException {
+            check();
+            while (name.startsWith("/") || name.startsWith("./")) name = name.substring(name.indexOf('/') + 1);
+            if (name.length() == 0) return;
+            final URI uri;
+            try {
+                uri = new URI(this.base + "/" + URI.escape(name).toString());
+            } catch (MalformedURLException e) {
+                log.warn("cannot name archive entry '" + name + "' in " + this.base);
+                return;
+            }
+            this.entries++;
+            this.sink.add(ResourceFactory.createResource(uri.toNormalform(true, true)), CIDER.references_referrer_URI, this.resource);
+            final DataSource source = new DataSource();
+            source.setURI(uri);
+            // the uri of an entry is no file; an unknown size must not be taken from the file system
+            source.setSize(size);
+            
+            if (this.concurrency == 1 || size > MEMORY_ENTRY_SIZE) {
+                source.setStream(is);
+                parse(source);
+                return;
+            }
+            // read a small entry into memory and parse it concurrently
+            final byte[] b = new byte[(size >= 0) ? (int) size : MEMORY_ENTRY_SIZE];
+            int n = 0, c;
+            while (n < b.length && (c = is.read(b, n, b.length - n)) > 0) n += c;
+            if (n == b.length && size < 0 && (c = is.read()) >= 0) {
+                // the entry is too large for the memory; parse the rest from the stream
+                final InputStream head = new SequenceInputStream(new ByteArrayInputStream(b), new ByteArrayInputStream(new byte[]{(byte) c}));
+                source.setStream(new SequenceInputStream(head, is));
+                parse(source);
+                return;
+            }
+            source.setArray((n == b.length) ? b : copy(b, n));
+            try {
+                this.slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ParserException("interrupted", this.container.getURI(), ParserException.Reason.INTERRUPTED);
+            }
+            // the task may run in this thread if the pool is busy; the task list must not be locked meanwhile
+            final Future<?> task = executor().submit(new Runnable() {
+                public void run() {
+                    try {
+                        parse(source);
+                    } catch (ParserException e) {
+                        // the archive is stopped by check()
+                    } finally {
+                        slots.release();
+                    }
+                }
+            });
+            synchronized (this.tasks) {
+                // forget the finished tasks; only running tasks must be cancelled
+                if (this.tasks.size() > 2 * this.concurrency) {
+                    for (int i = this.tasks.size() - 1; i >= 0; i--) if (this.tasks.get(i).isDone()) this.tasks.remove(i);
+                }
+                this.tasks.add(task);
+            }
+        }
+        
+        private void parse(final DataSource source) throws ParserException {
+            final Integer old = depth.get();
+            depth.set(Integer.valueOf(this.level));
+            try {
+                Parser.parseSource(source, this.sink);
+            } catch (ParserException e) {
+                check();
+                // a cancelled entry stops the archive; other entries may still be parsed after a failure
+                if (e.getReason() == ParserException.Reason.INTERRUPTED || e.getReason() == ParserException.Reason.TIMEOUT) throw e;
+                if (log.isDebugEnabled()) log.debug("cannot parse archive entry: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ParserException("interrupted", source.getURI(), ParserException.Reason.INTERRUPTED);
+            } finally {
+                depth.set(old);
+            }
+        }
+        
+        /**
+         * throw an exception if the sink failed
+         */
+        public void check() throws ParserException {
+            final IOException e;
+            synchronized (this) {
+                e = this.sinkError;
+            }
+            if (e != null) throw new ParserException("cannot write statement: " + e.getMessage(), this.container.getURI(), e);
+        }
+        
+        /**
+         * wait until all entries are parsed; if the thread is interrupted the running entries are cancelled
+         */
+        public void finish() {
+            if (this.concurrency == 1) return;
+            try {
+                this.slots.acquire(this.concurrency);
+                this.slots.release(this.concurrency);
+            } catch (InterruptedException e) {
+                synchronized (this.tasks) {
+                    for (Future<?> task: this.tasks) task.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        private static byte[] copy(final byte[] b, final int n) {
+            final byte[] c = new byte[n];
+            System.arraycopy(b, 0, c, 0, n);
+            return c;
+        }
+    }
+    
+    /**
+     * a reader for the entries of a tar stream in ustar, gnu or pax format. Only the names and the
+     * sizes of the entries are read from the headers.
+     */
+    private static class TarReader {
+        
+        private static final int BLOCK = 512;
+        
+        private final InputStream is;
+        private final byte[] header;
+        private String name;
+        private char type;
+        private long size, remaining, padding;
+        
+        public TarReader(final InputStream is) {
+            this.is = is;
+            this.header = new byte[BLOCK];
+            this.remaining = 0;
+            this.padding = 0;
+        }
+        
+        /**
+         * skip the rest of the current entry and read the header of the next entry
+         * @return the name of the entry or null if the archive ends
+         * @throws IOException
+         */
+        public String next() throws IOException {
+            String longName = null;
+            while (true) {
+                skip(this.remaining + this.padding);
+                if (!readBlock()) return null;
+                if (isZero()) return null;
+                if (!checksum()) throw new IOException("wrong tar header checksum");
+                this.type = (char) this.header[156];
+                this.size = number(124, 12);
+                this.remaining = this.size;
+                this.padding = (BLOCK - this.size % BLOCK) % BLOCK;
+                if (this.type == 'L') {
+                    // gnu long name: the name is the content of this entry
+                    longName = cstring(readContent(), 0, (int) this.size);
+                    continue;
+                }
+                if (this.type == 'x') {
+                    // pax extended header: records 'length path=value\n'
+                    final String path = paxPath(readContent());
+                    if (path != null) longName = path;
+                    continue;
+                }
+                if (this.type == 'g') continue;
+                if (longName != null) {
+                    this.name = longName;
+                } else {
+                    this.name = cstring(this.header, 0, 100);
+                    if (cstring(this.header, 257, 5).equals("ustar")) {
+                        final String prefix = cstring(this.header, 345, 155);
+                        if (prefix.length() > 0) this.name = prefix + "/" + this.name;
+                    }
+                }
+                return this.name;
+            }
+        }
+        
+        public boolean isFile() {
+            return this.type == '0' || this.type == 0 || this.type == '7';
+        }
+        
+        public long size() {
+            return this.size;
+        }
+        
+        /**
+         * the content of the current entry; the stream ends at the end of the entry and close() does nothing
+         */
+        public InputStream stream() {
+            return new InputStream() {
+                public int read() throws IOException {
+                    if (remaining <= 0) return -1;
+                    final int c = is.read();
+                    if (c < 0) throw new EOFException("tar entry is truncated");
+                    remaining--;
+                    return c;
+                }
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (remaining <= 0) return -1;
+                    final int n = is.read(b, off, (int) Math.min(len, remaining));
+                    if (n < 0) throw new EOFException("tar entry is truncated");
+                    remaining -= n;
+                    return n;
+                }
+                public int available() throws IOException {
+                    return (int) Math.min(is.available(), remaining);
+                }
+            };
+        }
+        
+        private byte[] readContent() throws IOException {
+            if (this.size > MEMORY_ENTRY_SIZE) throw new IOException("tar extension header too large");
+            final byte[] b = new byte[(int) this.size];
+            int n = 0, c;
+            while (n < b.length && (c = this.is.read(b, n, b.length - n)) > 0) n += c;
+            if (n < b.length) throw new EOFException("tar header is truncated");
+            this.remaining = 0;
+            return b;
+        }
+        
+        private boolean readBlock() throws IOException {
+            int n = 0, c;
+            while (n < BLOCK && (c = this.is.read(this.header, n, BLOCK - n)) > 0) n += c;
+            if (n == 0) return false;
+            if (n < BLOCK) throw new EOFException("tar header is truncated");
+            return true;
+        }
+        
+        private void skip(long n) throws IOException {
+            while (n > 0) {
+                long s = this.is.skip(n);
+                if (s <= 0) {
+                    if (this.is.read() < 0) throw new EOFException("tar entry is truncated");
+                    s = 1;
+                }
+                n -= s;
+            }
+            this.remaining = 0;
+            this.padding = 0;
+        }
+        
+        private boolean isZero() {
+            for (int i = 0; i < BLOCK; i++) if (this.header[i] != 0) return false;
+            return true;
+        }
+        
+        private boolean checksum() {
+            final long stored = number(148, 8);
+            long sum = 0;
+            for (int i = 0; i < BLOCK; i++) sum += (i >= 148 && i < 156) ? ' ' : (this.header[i] & 0xff);
+            return sum == stored;
+        }
+        
+        /**
+         * a number in octal notation or, if the first bit is set, in big endian binary notation
+         */
+        private long number(final int offset, final int length) {
+            long n = 0;
+            if ((this.header[offset] & 0x80) != 0) {
+                for (int i = offset + 1; i < offset + length; i++) n = (n << 8) | (this.header[i] & 0xff);
+                return n;
+            }
+            for (int i = offset; i < offset + length; i++) {
+                final int c = this.header[i];
+                if (c == 0 || c == ' ') {
+                    if (n == 0) continue; // leading blanks
+                    break;
+                }
+                if (c < '0' || c > '7') break;
+                n = (n << 3) + (c - '0');
+            }
+            return n;
+        }
+        
+        private static String cstring(final byte[] b, final int offset, final int length) {
+            int end = offset;
+            while (end < offset + length && b[end] != 0) end++;
+            try {
+                return new String(b, offset, end - offset, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                return new String(b, offset, end - offset);
+            }
+        }
+        
+        private static String paxPath(final byte[] b) throws IOException {
+            int p = 0;
+            while (p < b.length) {
+                int q = p;
+                while (q < b.length && b[q] != ' ') q++;
+                final int length;
+                try {
+                    length = Integer.parseInt(new String(b, p, q - p, "US-ASCII"));
+                } catch (NumberFormatException e) {
+                    throw new IOException("wrong pax header");
+                }
+                if (length <= 0 || p + length > b.length) throw new IOException("wrong pax header");
+                final String record = new String(b, q + 1, p + length - q - 2, "UTF-8");
+                if (record.startsWith("path=")) return record.substring(5);
+                p += length;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,607 @@
+/**
+ *  htmlIdiom.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser.idiom;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.vocabulary.DC;
+import com.hp.hpl.jena.vocabulary.VCARD;
+
+import net.yacy.cider.document.Charset;
+import net.yacy.cider.document.DataSource;
+import net.yacy.cider.document.Extension;
+import net.yacy.cider.document.MimeType;
+import net.yacy.cider.document.URI;
+import net.yacy.cider.parser.AbstractIdiom;
+import net.yacy.cider.parser.ContentSniffer;
+import net.yacy.cider.parser.Idiom;
+import net.yacy.cider.parser.ModelStatementSink;
+import net.yacy.cider.parser.ParserException;
+import net.yacy.cider.parser.StatementSink;
+import net.yacy.cider.vocabulary.CIDER;
+
+/**
+ * the html idiom reads a html page in one pass with a tokenizer; no document tree is built.
+ * The charset is taken from a byte order mark or a meta tag in the first bytes of the page.
+ * The tokenizer keeps only the attributes of the current tag; the text is given to the sink in segments
+ * and links are given to the sink as soon as they are found.
+ */
+public class htmlIdiom extends AbstractIdiom implements Idiom {
+
+    private static final Set<MimeType>  SUPPORTED_MIME_TYPES = new HashSet<MimeType>();
+    private static final Set<Extension> SUPPORTED_EXTENSIONS = new HashSet<Extension>();
+    private static final Set<String>    USED_VOCABULARIES    = new HashSet<String>();
+    
+    static {
+        Collections.addAll(SUPPORTED_EXTENSIONS, BuiltinIdioms.HTML_EXTENSIONS);
+        Collections.addAll(SUPPORTED_MIME_TYPES, BuiltinIdioms.HTML_MIME_TYPES);
+        USED_VOCABULARIES.add(DC.getURI());
+        USED_VOCABULARIES.add(VCARD.getURI());
+        USED_VOCABULARIES.add(CIDER.getDataURI());
+        USED_VOCABULARIES.add(CIDER.getReferencesURI());
+    }
+    
+    private static final int MAX_VALUE = 8192; // longer attribute values and titles are cut
+    private static final int MAX_NAME = 32;    // longer tag and entity names are cut
+    private static final int MAX_LINKS = 1024; // the number of recent link targets that are not given again
+    
+    // tags that separate the text like a line break
+    private static final Set<String> BREAKS = new HashSet<String>();
+    static {
+        for (String tag: new String[]{
+                "address", "article", "blockquote", "body", "br", "caption", "center", "dd", "div", "dl", "dt",
+                "footer", "form", "frame", "h1", "h2", "h3", "h4", "h5", "h6", "head", "header", "hr", "html",
+                "iframe", "li", "nav", "ol", "option", "p", "pre", "section", "table", "td", "th", "title", "tr", "ul"}) BREAKS.add(tag);
+    }
+    
+    // tags where the attributes are needed
+    private static final Set<String> ATTRIBUTES = new HashSet<String>();
+    static {
+        for (String tag: new String[]{"a", "area", "base", "frame", "iframe", "meta"}) ATTRIBUTES.add(tag);
+    }
+    
+    // the named character references of html 4
+    private static final Map<String, Character> ENTITIES = new HashMap<String, Character>();
+    static {
+        final String[] latin1 = new String[]{
+            "nbsp", "iexcl", "cent", "pound", "curren", "yen", "brvbar", "sect", "uml", "copy", "ordf", "laquo",
+            "not", "shy", "reg", "macr", "deg", "plusmn", "sup2", "sup3", "acute", "micro", "para", "middot",
+            "cedil", "sup1", "ordm", "raquo", "frac14", "frac12", "frac34", "iquest", "Agrave", "Aacute", "Acirc", "Atilde",
+            "Auml", "Aring", "AElig", "Ccedil", "Egrave", "Eacute", "Ecirc", "Euml", "Igrave", "Iacute", "Icirc", "Iuml",
+            "ETH", "Ntilde", "Ograve", "Oacute", "Ocirc", "Otilde", "Ouml", "times", "Oslash", "Ugrave", "Uacute", "Ucirc",
+            "Uuml", "Yacute", "THORN", "szlig", "agrave", "aacute", "acirc", "atilde", "auml", "aring", "aelig", "ccedil",
+            "egrave", "eacute", "ecirc", "euml", "igrave", "iacute", "icirc", "iuml", "eth", "ntilde", "ograve", "oacute",
+            "ocirc", "otilde", "ouml", "divide", "oslash", "ugrave", "uacute", "ucirc", "uuml", "yacute", "thorn", "yuml"};
+        for (int i = 0; i < latin1.length; i++) ENTITIES.put(latin1[i], Character.valueOf((char) (160 + i)));
+        final Object[] special = new Object[]{
+            "quot", 34, "amp", 38, "apos", 39, "lt", 60, "gt", 62, "OElig", 338, "oelig", 339, "Scaron", 352,
+            "scaron", 353, "Yuml", 376, "fnof", 402, "circ", 710, "tilde", 732, "ensp", 8194, "emsp", 8195,
+            "thinsp", 8201, "zwnj", 8204, "zwj", 8205, "lrm", 8206, "rlm", 8207, "ndash", 8211, "mdash", 8212,
+            "lsquo", 8216, "rsquo", 8217, "sbquo", 8218, "ldquo", 8220, "rdquo", 8221, "bdquo", 8222,
+            "dagger", 8224, "Dagger", 8225, "bull", 8226, "hellip", 8230, "permil", 8240, "prime", 8242,
+            "Prime", 8243, "lsaquo", 8249, "rsaquo", 8250, "euro", 8364, "trade", 8482, "larr", 8592,
+            "uarr", 8593, "rarr", 8594, "darr", 8595, "harr", 8596, "minus", 8722, "le", 8804, "ge", 8805};
+        for (int i = 0; i < special.length; i += 2) ENTITIES.put((String) special[i], Character.valueOf((char) ((Integer) special[i + 1]).intValue()));
+    }
+    
+    public htmlIdiom() {        
+        super("HTML Parser"); 
+    }
+
+    @Override
+    public Set<MimeType> supportedMimeTypes() {
+        return SUPPORTED_MIME_TYPES;
+    }
+
+    @Override
+    public Set<Extension> supportedExtensions() {
+        return SUPPORTED_EXTENSIONS;
+    }
+
+    public Set<String> usedVocabularies() {
+        return USED_VOCABULARIES;
+    }
+    
+    @Override
+    public Model parse(DataSource source) throws ParserException {
+        ModelStatementSink sink = new ModelStatementSink();
+        parse(source, sink);
+        return sink.getModel();
+    }
+    
+    @Override
+    public void parse(DataSource source, StatementSink sink) throws ParserException {
+        InputStream is = source.getStream();
+        if (is == null) throw new ParserException("no content", source.getURI());
+        try {
+            if (!is.markSupported()) is = new BufferedInputStream(is, ContentSniffer.PEEK_SIZE);
+            final byte[] head = ContentSniffer.peek(is);
+            final String charset = charset(source, head);
+            final Tokenizer tokenizer = new Tokenizer(new InputStreamReader(is, charset), source, sink);
+            tokenizer.run();
+            tokenizer.finish();
+        } catch (IOException e) {
+            throw new ParserException("cannot read html: " + e.getMessage(), source.getURI(), e);
+        }
+    }
+    
+    /**
+     * find the charset of a page. A byte order mark or a meta tag is trusted; otherwise a page
+     * that is valid UTF-8 is read as UTF-8 and any other page with the charset of the source or windows-1252
+     * @param source
+     * @param head the first bytes of the page
+     * @return the name of a supported charset
+     */
+    public static String charset(final DataSource source, final byte[] head) {
+        final String declared = ContentSniffer.charset(head, head.length);
+        if (declared != null) return declared;
+        if (ContentSniffer.isUTF8(head, head.length)) return "UTF-8";
+        if (source.hasCharset()) {
+            final String given = Charset.patchCharsetEncoding(source.getCharset());
+            try {
+                if (!given.equals("UTF-8") && java.nio.charset.Charset.isSupported(given)) return given;
+            } catch (IllegalCharsetNameException e) {}
+        }
+        return "windows-1252";
+    }
+    
+    /**
+     * the tokenizer reads the page once. It collects the meta data of the page
+     * and gives the text and the links to the sink.
+     */
+    private static final class Tokenizer {
+        
+        private final Reader reader;
+        private final char[] buffer;
+        private int pos, len;
+        private final DataSource source;
+        private final StatementSink sink;
+        private final Resource resource;
+        private URI base;
+        
+        private final ContentText text;
+        private final StringBuilder value, name, reference;
+        private boolean started, space, lineBreak;
+        private final Map<String, String> attributes;
+        private final Map<String, Boolean> links;
+        private String title, metaTitle, description, keywords, author;
+        
+        public Tokenizer(final Reader reader, final DataSource source, final StatementSink sink) {
+            this.reader = reader;
+            this.buffer = new char[8192];
+            this.pos = 0;
+            this.len = 0;
+            this.source = source;
+            this.sink = sink;
+            this.base = source.getURI();
+            this.resource = source.hasURI() ? ResourceFactory.createResource(this.base.toNormalform(true, true)) : ResourceFactory.createResource();
+            this.text = new ContentText(this.resource, sink);
+            this.value = new StringBuilder();
+            this.name = new StringBuilder();
+            this.reference = new StringBuilder();
+            this.started = false;
+            this.space = false;
+            this.lineBreak = false;
+            this.attributes = new HashMap<String, String>();
+            // a page can have any number of links; only the recently given targets are remembered
+            this.links = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+                    return this.size() > MAX_LINKS;
+                }
+            };
+            this.title = null;
+            this.metaTitle = null;
+            this.description = null;
+            this.keywords = null;
+            this.author = null;
+        }
+        
+        private int read() throws IOException {
+            if (this.pos == this.len) {
+                this.len = this.reader.read(this.buffer, 0, this.buffer.length);
+                this.pos = 0;
+                if (this.len <= 0) {
+                    this.len = 0;
+                    return -1;
+                }
+            }
+            return this.buffer[this.pos++];
+        }
+        
+        /**
+         * go back one character; this is only possible directly after a read() that did not return -1
+         */
+        private void unread() {
+            this.pos--;
+        }
+        
+        public void run() throws IOException {
+            int c = read();
+            if (c == 0xFEFF) c = read(); // byte order mark
+            while (c >= 0) {
+                if (c == '<') {
+                    tag();
+                } else if (c == '&') {
+                    entity(null);
+                } else {
+                    put(c, null);
+                }
+                c = read();
+            }
+        }
+        
+        /**
+         * give the rest of the text and the meta data of the page to the sink
+         * @throws IOException
+         */
+        public void finish() throws IOException {
+            this.text.flush();
+            if (this.title == null || this.title.length() == 0) this.title = this.metaTitle;
+            if (this.title != null && this.title.length() > 0) {
+                this.sink.add(this.resource, DC.title, ResourceFactory.createPlainLiteral(this.title));
+            }
+            if (this.description != null && this.description.length() > 0) {
+                this.sink.add(this.resource, DC.description, ResourceFactory.createPlainLiteral(this.description));
+            }
+            if (this.keywords != null && this.keywords.length() > 0) {
+                this.sink.add(this.resource, DC.coverage, ResourceFactory.createPlainLiteral(concat(this.keywords.split("\\s*[,;]\\s*"))));
+            }
+            if (this.author != null && this.author.length() > 0) {
+                this.sink.add(this.resource, VCARD.FN, ResourceFactory.createPlainLiteral(this.author));
+                this.sink.add(this.resource, DC.creator, ResourceFactory.createPlainLiteral(this.author));
+            }
+        }
+        
+        /**
+         * add a character to the text of the page or to a value; whitespace in the text is collapsed
+         * @param c the character
+         * @param target the value or null for the text of the page
+         * @throws IOException if the sink fails
+         */
+        private void put(final int c, final StringBuilder target) throws IOException {
+            if (target != null) {
+                if (target.length() < MAX_VALUE) target.appendCodePoint(c);
+                return;
+            }
+            if (c <= ' ' || c == 0xA0) {
+                this.space = true;
+                return;
+            }
+            if (this.space && this.started) {
+                if (this.lineBreak) this.text.newline(); else this.text.append(' ');
+            }
+            this.started = true;
+            this.space = false;
+            this.lineBreak = false;
+            if (Character.isSupplementaryCodePoint(c)) {
+                this.text.append(Character.highSurrogate(c));
+                this.text.append(Character.lowSurrogate(c));
+            } else {
+                this.text.append((char) c);
+            }
+        }
+        
+        /**
+         * read a character reference after the '&'. An unknown reference is kept as it is.
+         * @param target the value or null for the text of the page
+         * @throws IOException
+         */
+        private void entity(final StringBuilder target) throws IOException {
+            this.reference.setLength(0);
+            int c = read();
+            final boolean numeric = c == '#';
+            if (numeric) c = read();
+            while (c >= 0 && this.reference.length() < MAX_NAME && Character.isLetterOrDigit(c)) {
+                this.reference.append((char) c);
+                c = read();
+            }
+            if (c >= 0 && c != ';') unread();
+            int code = -1;
+            if (numeric && this.reference.length() > 0) {
+                try {
+                    code = (this.reference.charAt(0) == 'x' || this.reference.charAt(0) == 'X') ?
+                            Integer.parseInt(this.reference.substring(1), 16) : Integer.parseInt(this.reference.toString());
+                    if (!Character.isValidCodePoint(code) || code == 0) code = 0xFFFD;
+                } catch (NumberFormatException e) {}
+            } else if (!numeric) {
+                final Character e = ENTITIES.get(this.reference.toString());
+                if (e != null) code = e.charValue();
+            }
+            if (code >= 0) {
+                put(code, target);
+                return;
+            }
+            put('&', target);
+            if (numeric) put('#', target);
+            for (int i = 0; i < this.reference.length(); i++) put(this.reference.charAt(i), target);
+            if (c == ';') put(';', target);
+        }
+        
+        private void tag() throws IOException {
+            int c = read();
+            if (c == '!') {
+                declaration();
+                return;
+            }
+            if (c == '?') {
+                skip();
+                return;
+            }
+            final boolean end = c == '/';
+            if (end) c = read();
+            if (c < 0 || !Character.isLetter(c)) {
+                // not a tag
+                put('<', null);
+                if (end) put('/', null);
+                if (c >= 0) unread();
+                return;
+            }
+            this.name.setLength(0);
+            while (c >= 0 && (Character.isLetterOrDigit(c) || c == '-' || c == ':' || c == '_')) {
+                if (this.name.length() < MAX_NAME) this.name.append(Character.toLowerCase((char) c));
+                c = read();
+            }
+            if (c >= 0) unread();
+            final String tag = this.name.toString();
+            attributes(!end && ATTRIBUTES.contains(tag));
+            if (BREAKS.contains(tag)) {
+                this.space = true;
+                this.lineBreak = true;
+            }
+            if (end) return;
+            if (tag.equals("script") || tag.equals("style")) {
+                raw(tag, null);
+            } else if (tag.equals("title")) {
+                this.value.setLength(0);
+                raw(tag, this.value);
+                if (this.title == null) this.title = normalize(this.value);
+                this.space = true;
+                this.lineBreak = true;
+            } else if (tag.equals("a") || tag.equals("area")) {
+                link(this.attributes.get("href"));
+            } else if (tag.equals("frame") || tag.equals("iframe")) {
+                link(this.attributes.get("src"));
+            } else if (tag.equals("base")) {
+                final String href = this.attributes.get("href");
+                if (href != null) try {
+                    this.base = URI.newURL(this.base, href.trim());
+                } catch (MalformedURLException e) {}
+            } else if (tag.equals("meta")) {
+                meta();
+            }
+        }
+        
+        /**
+         * read the attributes of a tag up to the closing '>'
+         * @param keep true if the attributes are stored, otherwise they are only read
+         * @throws IOException
+         */
+        private void attributes(final boolean keep) throws IOException {
+            this.attributes.clear();
+            int c;
+            while ((c = read()) >= 0) {
+                if (c == '>') return;
+                if (c <= ' ' || c == '/') continue;
+                this.name.setLength(0);
+                while (c >= 0 && c > ' ' && c != '=' && c != '>' && c != '/') {
+                    if (this.name.length() < MAX_NAME) this.name.append(Character.toLowerCase((char) c));
+                    c = read();
+                }
+                while (c >= 0 && c <= ' ') c = read();
+                if (c != '=') {
+                    if (keep) this.attributes.put(this.name.toString(), "");
+                    if (c >= 0) unread();
+                    continue;
+                }
+                c = read();
+                while (c >= 0 && c <= ' ') c = read();
+                this.value.setLength(0);
+                if (c == '"' || c == '\'') {
+                    final int quote = c;
+                    while ((c = read()) >= 0 && c != quote) {
+                        if (!keep) continue;
+                        if (c == '&') entity(this.value); else put(c, this.value);
+                    }
+                } else {
+                    while (c >= 0 && c > ' ' && c != '>') {
+                        if (keep) {
+                            if (c == '&') entity(this.value); else put(c, this.value);
+                        }
+                        c = read();
+                    }
+                    if (c == '>') unread();
+                }
+                if (keep) this.attributes.put(this.name.toString(), this.value.toString());
+            }
+        }
+        
+        /**
+         * read the content of an element that contains no tags up to its end tag
+         * @param tag the name of the element
+         * @param target the value for the content or null if the content is not needed
+         * @throws IOException
+         */
+        private void raw(final String tag, final StringBuilder target) throws IOException {
+            int c;
+            while ((c = read()) >= 0) {
+                if (c == '&' && target != null) {
+                    entity(target);
+                    continue;
+                }
+                if (c != '<') {
+                    if (target != null) put(c, target);
+                    continue;
+                }
+                c = read();
+                if (c != '/') {
+                    if (target != null) put('<', target);
+                    if (c >= 0) unread();
+                    continue;
+                }
+                int i = 0;
+                while (i < tag.length() && (c = read()) >= 0 && Character.toLowerCase((char) c) == tag.charAt(i)) i++;
+                if (i == tag.length()) {
+                    c = read();
+                    if (c < 0 || c == '>') return;
+                    if (c <= ' ' || c == '/') {
+                        skip();
+                        return;
+                    }
+                }
+                // not the end tag
+                if (target != null) {
+                    put('<', target);
+                    put('/', target);
+                    for (int j = 0; j < i; j++) put(tag.charAt(j), target);
+                }
+                if (c >= 0) unread();
+            }
+        }
+        
+        /**
+         * read a comment, a cdata section or a doctype declaration after '<!'
+         * @throws IOException
+         */
+        private void declaration() throws IOException {
+            int c = read();
+            if (c == '-') {
+                c = read();
+                if (c != '-') {
+                    if (c >= 0 && c != '>') skip();
+                    return;
+                }
+                int dashes = 0;
+                while ((c = read()) >= 0) {
+                    if (c == '>' && dashes >= 2) return;
+                    dashes = (c == '-') ? dashes + 1 : 0;
+                }
+                return;
+            }
+            if (c == '[') {
+                final String cdata = "CDATA[";
+                int i = 0;
+                while (i < cdata.length() && (c = read()) >= 0 && c == cdata.charAt(i)) i++;
+                if (i < cdata.length()) {
+                    if (c >= 0 && c != '>') skip();
+                    return;
+                }
+                int brackets = 0;
+                while ((c = read()) >= 0) {
+                    if (c == '>' && brackets >= 2) return;
+                    if (c == ']') {
+                        brackets++;
+                        continue;
+                    }
+                    for (; brackets > 0; brackets--) put(']', null);
+                    put(c, null);
+                }
+                return;
+            }
+            if (c >= 0 && c != '>') skip();
+        }
+        
+        /**
+         * read up to the next '>'
+         * @throws IOException
+         */
+        private void skip() throws IOException {
+            int c;
+            while ((c = read()) >= 0 && c != '>');
+        }
+        
+        private void meta() {
+            String n = this.attributes.get("name");
+            final String content = this.attributes.get("content");
+            if (n == null || content == null) return;
+            n = n.toLowerCase();
+            final String c = normalize(content);
+            if (c.length() == 0) return;
+            if (n.equals("description") && this.description == null) this.description = c;
+            else if (n.equals("keywords") && this.keywords == null) this.keywords = c;
+            else if (n.equals("author") && this.author == null) this.author = c;
+            else if (n.equals("title") && this.metaTitle == null) this.metaTitle = c;
+        }
+        
+        /**
+         * give a link to the sink; a link target is not given again while it is among the recent targets
+         * @param href the link as it was written in the page
+         * @throws IOException
+         */
+        private void link(String href) throws IOException {
+            if (href == null) return;
+            href = href.trim();
+            if (href.length() == 0 || href.charAt(0) == '#') return;
+            // only links that the URI class can resolve; no mailto: or javascript: links
+            final int colon = href.indexOf(':'), slash = href.indexOf('/');
+            if (colon >= 0 && (slash < 0 || colon < slash)) {
+                final String protocol = href.substring(0, colon).toLowerCase();
+                if (!protocol.equals("http") && !protocol.equals("https") && !protocol.equals("ftp") &&
+                    !protocol.equals("file") && !protocol.equals("smb")) return;
+            }
+            final String target;
+            try {
+                target = URI.newURL(this.base, href).toNormalform(true, true);
+            } catch (MalformedURLException e) {
+                if (log.isDebugEnabled()) log.debug("bad link '" + href + "' in " + this.source.getURI());
+                return;
+            }
+            if (this.links.put(target, Boolean.TRUE) == null) this.sink.add(this.resource, CIDER.references_link_URI, ResourceFactory.createResource(target));
+        }
+        
+        /**
+         * remove leading and trailing whitespace and collapse all other whitespace to one space
+         */
+        private static String normalize(final CharSequence s) {
+            final StringBuilder sb = new StringBuilder(s.length());
+            boolean space = false;
+            for (int i = 0; i < s.length(); i++) {
+                final char c = s.charAt(i);
+                if (c <= ' ' || c == 0xA0) {
+                    space = sb.length() > 0;
+                    continue;
+                }
+                if (space) sb.append(' ');
+                space = false;
+                sb.append(c);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ *  odfIdiom.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser.idiom;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.vocabulary.DC;
+import com.hp.hpl.jena.vocabulary.VCARD;
+
+import net.yacy.cider.document.DataSource;
+import net.yacy.cider.document.Extension;
+import net.yacy.cider.document.MimeType;
+import net.yacy.cider.parser.AbstractIdiom;
+import net.yacy.cider.parser.Idiom;
+import net.yacy.cider.parser.IdiomSession;
+import net.yacy.cider.parser.ModelStatementSink;
+import net.yacy.cider.parser.ParserException;
+import net.yacy.cider.parser.StatementSink;
+import net.yacy.cider.vocabulary.CIDER;
+
+/**
+ * the odf idiom reads OpenDocument and OpenOffice.org 1.x documents. The content.xml and meta.xml
+ * entries are read with a StAX stream reader directly from the zip stream; no document tree is built
+ * and nothing is written to disk, so that the memory does not grow with the number of paragraphs or cells.
+ */
+public class odfIdiom extends AbstractIdiom implements Idiom {
+
+    private static final Set<MimeType>  SUPPORTED_MIME_TYPES = new HashSet<MimeType>();
+    private static final Set<Extension> SUPPORTED_EXTENSIONS = new HashSet<Extension>();
+    private static final Set<String>    USED_VOCABULARIES    = new HashSet<String>();
+    
+    static {
+        Collections.addAll(SUPPORTED_EXTENSIONS, BuiltinIdioms.ODF_EXTENSIONS);
+        Collections.addAll(SUPPORTED_MIME_TYPES, BuiltinIdioms.ODF_MIME_TYPES);
+        USED_VOCABULARIES.add(DC.getURI());
+        USED_VOCABULARIES.add(VCARD.getURI());
+        USED_VOCABULARIES.add(CIDER.getDataURI());
+    }
+    
+    private static final String TEXT_NS     = "urn:oasis:names:tc:opendocument:xmlns:text:1.0";
+    private static final String TEXT_NS_OOO = "http://openoffice.org/2000/text";
+    private static final String META_NS     = "urn:oasis:names:tc:opendocument:xmlns:meta:1.0";
+    private static final String META_NS_OOO = "http://openoffice.org/2000/meta";
+    private static final int MAX_VALUE = 8192; // longer meta data values are cut
+    private static final char[] SPACE = new char[]{' '};
+    
+    public odfIdiom() {        
+        super("OpenDocument Parser"); 
+    }
+
+    @Override
+    public Set<MimeType> supportedMimeTypes() {
+        return SUPPORTED_MIME_TYPES;
+    }
+
+    @Override
+    public Set<Extension> supportedExtensions() {
+        return SUPPORTED_EXTENSIONS;
+    }
+
+    public Set<String> usedVocabularies() {
+        return USED_VOCABULARIES;
+    }
+    
+    @Override
+    public Model parse(DataSource source) throws ParserException {
+        ModelStatementSink sink = new ModelStatementSink();
+        parse(source, sink, newInputFactory());
+        return sink.getModel();
+    }
+    
+    @Override
+    public void parse(DataSource source, StatementSink sink) throws ParserException {
+        parse(source, sink, newInputFactory());
+    }
+    
+    /**
+     * the session keeps the StAX factory; looking up the implementation is expensive
+     */
+    @Override
+    public IdiomSession openSession() {
+        return new IdiomSession() {
+            private final XMLInputFactory factory = newInputFactory();
+            public Model parse(DataSource source) throws ParserException {
+                ModelStatementSink sink = new ModelStatementSink();
+                odfIdiom.this.parse(source, sink, this.factory);
+                return sink.getModel();
+            }
+            public void parse(DataSource source, StatementSink sink) throws ParserException {
+                odfIdiom.this.parse(source, sink, this.factory);
+            }
+            public void reset() {}
+            public void close() {}
+        };
+    }
+    
+    /**
+     * create a StAX factory that does not load a dtd or external entities
+     */
+    static XMLInputFactory newInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        return factory;
+    }
+    
+    private void parse(DataSource source, StatementSink sink, XMLInputFactory factory) throws ParserException {
+        final InputStream is = source.getStream();
+        if (is == null) throw new ParserException("no content", source.getURI());
+        final Resource resource = source.hasURI() ? ResourceFactory.createResource(source.getURI().toNormalform(true, true)) : ResourceFactory.createResource();
+        final ContentText text = new ContentText(resource, sink);
+        boolean content = false;
+        try {
+            final ZipInputStream zip = new ZipInputStream(is);
+            // the StAX reader closes its stream at the end of the xml document
+            final InputStream entryStream = new FilterInputStream(zip) {
+                public void close() {}
+            };
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                final String name = entry.getName();
+                if (name.equals("content.xml")) {
+                    final XMLStreamReader reader = factory.createXMLStreamReader(entryStream);
+                    try {
+                        content(reader, text);
+                    } finally {
+                        reader.close();
+                    }
+                    content = true;
+                } else if (name.equals("meta.xml")) {
+                    final XMLStreamReader reader = factory.createXMLStreamReader(entryStream);
+                    try {
+                        meta(reader, resource, sink);
+                    } finally {
+                        reader.close();
+                    }
+                }
+            }
+            text.flush();
+        } catch (IOException e) {
+            throw new ParserException("cannot read document: " + e.getMessage(), source.getURI(), e);
+        } catch (XMLStreamException e) {
+            throw new ParserException("cannot parse document: " + e.getMessage(), source.getURI(), e);
+        } catch (IllegalArgumentException e) {
+            // a zip entry name with a wrong encoding
+            throw new ParserException("cannot read document: " + e.getMessage(), source.getURI(), e);
+        }
+        if (!content) throw new ParserException("document has no content.xml", source.getURI());
+    }
+    
+    private static boolean isText(final String ns) {
+        return TEXT_NS.equals(ns) || TEXT_NS_OOO.equals(ns);
+    }
+    
+    private static boolean isMeta(final String ns) {
+        return META_NS.equals(ns) || META_NS_OOO.equals(ns);
+    }
+    
+    /**
+     * read the text of all paragraphs and headings of content.xml
+     */
+    private static void content(final XMLStreamReader reader, final ContentText text) throws XMLStreamException, IOException {
+        int paragraph = 0;
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                if (!isText(reader.getNamespaceURI())) break;
+                final String start = reader.getLocalName();
+                if (start.equals("p") || start.equals("h")) {
+                    paragraph++;
+                } else if (paragraph > 0 && (start.equals("s") || start.equals("tab"))) {
+                    text.collapse(SPACE, 0, 1);
+                } else if (paragraph > 0 && start.equals("line-break")) {
+                    text.newline();
+                }
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+                if (paragraph > 0) text.collapse(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                if (!isText(reader.getNamespaceURI())) break;
+                final String end = reader.getLocalName();
+                if (paragraph > 0 && (end.equals("p") || end.equals("h"))) {
+                    paragraph--;
+                    text.newline();
+                }
+                break;
+            }
+        }
+    }
+    /**
+     * read the meta data of meta.xml and give it to the sink
+     */
+    private static void meta(final XMLStreamReader reader, final Resource resource, final StatementSink sink) throws XMLStreamException, IOException {
+        final StringBuilder value = new StringBuilder();
+        final List<String> keywords = new ArrayList<String>();
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                value.setLength(0);
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+                value.append(reader.getTextCharacters(), reader.getTextStart(), Math.min(reader.getTextLength(), Math.max(0, MAX_VALUE - value.length())));
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                final String v = value.toString().trim();
+                value.setLength(0);
+                if (v.length() == 0) break;
+                final String ns = reader.getNamespaceURI(), name = reader.getLocalName();
+                if (DC.getURI().equals(ns)) {
+                    if (name.equals("title")) sink.add(resource, DC.title, ResourceFactory.createPlainLiteral(v));
+                    else if (name.equals("description")) sink.add(resource, DC.description, ResourceFactory.createPlainLiteral(v));
+                    else if (name.equals("subject")) sink.add(resource, DC.subject, ResourceFactory.createPlainLiteral(v));
+                    else if (name.equals("language")) sink.add(resource, DC.language, ResourceFactory.createPlainLiteral(v));
+                    else if (name.equals("creator")) creator(resource, sink, v);
+                } else if (isMeta(ns)) {
+                    if (name.equals("initial-creator")) creator(resource, sink, v);
+                    else if (name.equals("keyword")) keywords.add(v);
+                }
+                break;
+            }
+        }
+        if (keywords.size() > 0) sink.add(resource, DC.coverage, ResourceFactory.createPlainLiteral(concat(keywords.toArray(new String[keywords.size()]))));
+    }
+    
+    private static void creator(final Resource resource, final StatementSink sink, final String creator) throws IOException {
+        sink.add(resource, VCARD.FN, ResourceFactory.createPlainLiteral(creator));
+        sink.add(resource, DC.creator, ResourceFactory.createPlainLiteral(creator));
+    }
+}
@@ -0,0 +1,1163 @@
+/**
+ *  ole2Idiom.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser.idiom;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.vocabulary.DC;
+import com.hp.hpl.jena.vocabulary.VCARD;
+
+import net.yacy.cider.document.DataSource;
+import net.yacy.cider.document.Extension;
+import net.yacy.cider.document.MimeType;
+import net.yacy.cider.document.URI;
+import net.yacy.cider.parser.AbstractIdiom;
+import net.yacy.cider.parser.Idiom;
+import net.yacy.cider.parser.ModelStatementSink;
+import net.yacy.cider.parser.ParserException;
+import net.yacy.cider.parser.StatementSink;
+import net.yacy.cider.util.ContentBuffer;
+import net.yacy.cider.vocabulary.CIDER;
+
+/**
+ * the ole2 idiom reads the binary formats of Word, Excel and PowerPoint 97 to 2003. These documents are
+ * OLE2 compound documents: a small file system of sectors with an allocation table and a directory.
+ * Only the allocation tables, the directory and the streams that hold text are read; pictures and
+ * embedded objects are never touched. A local file is read through a file channel, other content is
+ * held in a content buffer, which maps large contents from a temporary file.
+ */
+public class ole2Idiom extends AbstractIdiom implements Idiom {
+
+    private static final Set<MimeType>  SUPPORTED_MIME_TYPES = new HashSet<MimeType>();
+    private static final Set<Extension> SUPPORTED_EXTENSIONS = new HashSet<Extension>();
+    private static final Set<String>    USED_VOCABULARIES    = new HashSet<String>();
+    
+    static {
+        Collections.addAll(SUPPORTED_EXTENSIONS, BuiltinIdioms.OLE2_EXTENSIONS);
+        Collections.addAll(SUPPORTED_MIME_TYPES, BuiltinIdioms.OLE2_MIME_TYPES);
+        USED_VOCABULARIES.add(DC.getURI());
+        USED_VOCABULARIES.add(VCARD.getURI());
+        USED_VOCABULARIES.add(CIDER.getDataURI());
+    }
+    
+    private static final byte[] SIGNATURE = new byte[]{(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1};
+    private static final int END_OF_CHAIN = -2;
+    private static final int STREAM = 2, ROOT = 5;
+    private static final int MAX_VALUE = 8192; // longer meta data values are cut
+    private static final int MAX_SUMMARY = 256 * 1024; // a larger summary information is not read
+    private static final int MAX_TABLE = 16 * 1024 * 1024; // larger piece tables and persist directories are rejected
+    private static final char[] SPACE = new char[]{' '};
+    
+    // word keeps compressed text in windows-1252; undefined codes are kept as they are
+    private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+    private static final char[] CP1252 = new char[256];
+    static {
+        final byte[] b = new byte[256];
+        for (int i = 0; i < b.length; i++) b[i] = (byte) i;
+        final String s = new String(b, WINDOWS_1252);
+        for (int i = 0; i < CP1252.length; i++) CP1252[i] = (s.charAt(i) == '\uFFFD') ? (char) i : s.charAt(i);
+    }
+    
+    public ole2Idiom() {        
+        super("OLE2 Office Document Parser"); 
+    }
+
+    @Override
+    public Set<MimeType> supportedMimeTypes() {
+        return SUPPORTED_MIME_TYPES;
+    }
+
+    @Override
+    public Set<Extension> supportedExtensions() {
+        return SUPPORTED_EXTENSIONS;
+    }
+
+    public Set<String> usedVocabularies() {
+        return USED_VOCABULARIES;
+    }
+    
+    @Override
+    public Model parse(DataSource source) throws ParserException {
+        ModelStatementSink sink = new ModelStatementSink();
+        parse(source, sink);
+        return sink.getModel();
+    }
+    
+    @Override
+    public void parse(DataSource source, StatementSink sink) throws ParserException {
+        final Resource resource = source.hasURI() ? ResourceFactory.createResource(source.getURI().toNormalform(true, true)) : ResourceFactory.createResource();
+        final Storage storage = storage(source);
+        try {
+            final Compound doc = new Compound(storage);
+            final Map<String, Entry> streams = doc.streams();
+            final ContentText text = new ContentText(resource, sink);
+            if (streams.containsKey("WordDocument")) {
+                word(doc, streams, text);
+            } else if (streams.containsKey("Workbook")) {
+                new Workbook(doc.open(streams.get("Workbook")), text).read();
+            } else if (streams.containsKey("Book")) {
+                // excel 5 and 95
+                new Workbook(doc.open(streams.get("Book")), text).read();
+            } else if (streams.containsKey("PowerPoint Document")) {
+                powerpoint(doc, streams, text);
+            } else {
+                throw new ParserException("document has no Word, Excel or PowerPoint stream", source.getURI());
+            }
+            text.flush();
+            final Entry summary = streams.get("\005SummaryInformation");
+            if (summary != null && summary.size <= MAX_SUMMARY) summary(doc.open(summary), resource, sink);
+        } catch (IOException e) {
+            throw new ParserException("cannot read document: " + e.getMessage(), source.getURI(), e);
+        } finally {
+            storage.close();
+        }
+    }
+    
+    /**
+     * open the content of the source for random access. A local file is read in place; a stream is held
+     * in a content buffer.
+     */
+    private static Storage storage(final DataSource source) throws ParserException {
+        final URI uri = source.getURI();
+        if (!source.hasStream() && !source.hasArray() && uri != null && uri.isFile()) {
+            try {
+                return new FileStorage(new RandomAccessFile(uri.getFSFile(), "r"));
+            } catch (IOException e) {
+                throw new ParserException("cannot open file: " + e.getMessage(), uri, e);
+            }
+        }
+        if (source.hasArray()) return new BufferStorage(new ContentBuffer(source.getArray()));
+        final InputStream is = source.getStream();
+        if (is == null) throw new ParserException("no content", uri);
+        try {
+            return new BufferStorage(new ContentBuffer(is, source.getContentLength()));
+        } catch (IOException e) {
+            throw new ParserException("cannot read content: " + e.getMessage(), uri, e);
+        } finally {
+            // a stream that was opened from the uri is closed here; a given stream is closed by its owner
+            if (!source.hasStream()) try {is.close();} catch (IOException e) {}
+        }
+    }
+    
+    private static int uint16(final byte[] b, final int pos) {
+        return (b[pos] & 0xff) | ((b[pos + 1] & 0xff) << 8);
+    }
+    
+    private static int int32(final byte[] b, final int pos) {
+        return uint16(b, pos) | (uint16(b, pos + 2) << 16);
+    }
+    
+    private static long uint32(final byte[] b, final int pos) {
+        return int32(b, pos) & 0xffffffffL;
+    }
+    
+    /**
+     * read the text of a word document. Word 97 and later keep the text in pieces that are listed in the
+     * piece table of the table stream; Word 6 and 95 keep it in one block.
+     */
+    private static void word(final Compound doc, final Map<String, Entry> streams, final ContentText text) throws IOException {
+        final Stream main = doc.open(streams.get("WordDocument"));
+        final byte[] fib = new byte[(int) Math.min(main.size(), 1024)];
+        main.read(0, fib, 0, fib.length);
+        if (fib.length < 0x22 || (uint16(fib, 0) != 0xA5EC && uint16(fib, 0) != 0xA5DC)) throw new IOException("no word document");
+        final int flags = uint16(fib, 0x0A);
+        if ((flags & 0x0100) != 0) throw new IOException("document is encrypted");
+        final WordText words = new WordText(text);
+        if (uint16(fib, 0x02) < 0xC1) {
+            words.bytes(main, uint32(fib, 0x18), uint32(fib, 0x1C) - uint32(fib, 0x18));
+            words.flush();
+            return;
+        }
+        // the file information block has two parts of variable length before the table offsets
+        int p = 0x20;
+        p += 2 + 2 * uint16(fib, p);
+        if (p + 2 > fib.length) throw new IOException("file information block is too short");
+        p += 2 + 4 * uint16(fib, p);
+        if (p + 2 > fib.length) throw new IOException("file information block is too short");
+        final int offsets = uint16(fib, p);
+        p += 2;
+        if (offsets < 34 || p + 34 * 8 > fib.length) throw new IOException("file information block is too short");
+        final long fcClx = uint32(fib, p + 33 * 8);
+        final int lcbClx = int32(fib, p + 33 * 8 + 4);
+        final Entry tableEntry = streams.get(((flags & 0x0200) != 0) ? "1Table" : "0Table");
+        if (tableEntry == null) throw new IOException("table stream is missing");
+        final Stream table = doc.open(tableEntry);
+        if (lcbClx <= 0 || fcClx + lcbClx > table.size()) throw new IOException("piece table is missing");
+        if (lcbClx > MAX_TABLE) throw new IOException("piece table is too large");
+        final byte[] clx = new byte[lcbClx];
+        table.read(fcClx, clx, 0, lcbClx);
+        // the piece table follows a list of property modifiers
+        int i = 0;
+        while (i + 3 <= clx.length && clx[i] == 1) i += 3 + uint16(clx, i + 1);
+        if (i + 5 > clx.length || clx[i] != 2) throw new IOException("piece table is broken");
+        final int lcb = int32(clx, i + 1);
+        final int plc = i + 5;
+        if (lcb < 4 || lcb > clx.length - plc) throw new IOException("piece table is broken");
+        final int pieces = (lcb - 4) / 12;
+        final int descriptors = plc + 4 * (pieces + 1);
+        for (int k = 0; k < pieces; k++) {
+            final long count = (long) int32(clx, plc + 4 * (k + 1)) - int32(clx, plc + 4 * k);
+            if (count <= 0) continue;
+            final int fc = int32(clx, descriptors + 8 * k + 2);
+            if ((fc & 0x40000000) != 0) {
+                words.bytes(main, (fc & 0x3FFFFFFF) >>> 1, count);
+            } else {
+                words.chars(main, fc & 0x3FFFFFFF, count);
+            }
+        }
+        words.flush();
+    }
+    
+    /**
+     * read the text of a presentation. The persist directory tells which records belong to the last
+     * edition of the document; the text of the document, slide and notes records is read.
+     */
+    private static void powerpoint(final Compound doc, final Map<String, Entry> streams, final ContentText text) throws IOException {
+        final Stream document = doc.open(streams.get("PowerPoint Document"));
+        final Entry user = streams.get("Current User");
+        final long[] objects = (user == null) ? null : persistObjects(doc.open(user), document);
+        final StreamInput in = new StreamInput(document);
+        if (objects == null) {
+            // without the persist directory all records are read, also those of older editions
+            records(in, 0, document.size(), text);
+            return;
+        }
+        final byte[] header = new byte[8];
+        for (final long offset: objects) {
+            if (offset + 8 > document.size()) continue;
+            document.read(offset, header, 0, 8);
+            final int type = uint16(header, 2);
+            if (type == PPT_DOCUMENT || type == PPT_SLIDE || type == PPT_NOTES) {
+                records(in, offset, Math.min(document.size(), offset + 8 + uint32(header, 4)), text);
+            }
+        }
+    }
+    
+    private static final int PPT_DOCUMENT          = 0x03E8;
+    private static final int PPT_SLIDE             = 0x03EE;
+    private static final int PPT_NOTES             = 0x03F0;
+    private static final int PPT_MAIN_MASTER       = 0x03F8;
+    private static final int PPT_TEXT_CHARS        = 0x0FA0;
+    private static final int PPT_TEXT_BYTES        = 0x0FA8;
+    private static final int PPT_SLIDE_LIST        = 0x0FF0;
+    private static final int PPT_USER_EDIT         = 0x0FF5;
+    private static final int PPT_PERSIST_DIRECTORY = 0x1772;
+    
+    /**
+     * find the offsets of the current persist objects of a presentation. A presentation that was saved
+     * incrementally has several editions, each with a persist directory; the newest entry for an object counts.
+     * @return the offsets in the order of the persist ids, or null if the directory cannot be read
+     */
+    private static long[] persistObjects(final Stream user, final Stream document) throws IOException {
+        if (user.size() < 20) return null;
+        final byte[] b = new byte[28];
+        user.read(0, b, 0, 20);
+        if (int32(b, 12) == 0xF3D1C4DF) throw new IOException("presentation is encrypted");
+        final Map<Integer, Long> objects = new TreeMap<Integer, Long>();
+        long edit = uint32(b, 16);
+        while (edit > 0) {
+            if (edit + 28 > document.size()) return null;
+            document.read(edit, b, 0, 28);
+            if (uint16(b, 2) != PPT_USER_EDIT) return null;
+            final long last = uint32(b, 16), directory = uint32(b, 20);
+            if (directory + 8 > document.size()) return null;
+            document.read(directory, b, 0, 8);
+            final long length = uint32(b, 4);
+            if (uint16(b, 2) != PPT_PERSIST_DIRECTORY || directory + 8 + length > document.size()) return null;
+            if (length > MAX_TABLE) throw new IOException("persist directory is too large");
+            final byte[] d = new byte[(int) length];
+            document.read(directory + 8, d, 0, d.length);
+            for (int i = 0; i + 4 <= d.length;) {
+                final int entry = int32(d, i);
+                i += 4;
+                final int id = entry & 0xFFFFF, count = entry >>> 20;
+                for (int k = 0; k < count && i + 4 <= d.length; k++, i += 4) {
+                    // an older edition does not replace the entry of a newer one
+                    if (!objects.containsKey(id + k)) objects.put(id + k, uint32(d, i));
+                }
+            }
+            // older editions are stored before newer ones; anything else is a loop
+            if (last >= edit) break;
+            edit = last;
+        }
+        if (objects.isEmpty()) return null;
+        final long[] offsets = new long[objects.size()];
+        int i = 0;
+        for (final Long offset: objects.values()) offsets[i++] = offset.longValue();
+        return offsets;
+    }
+    
+    /**
+     * read the text atoms of the records between start and end. Containers are entered;
+     * the text of the masters is skipped.
+     */
+    private static void records(final StreamInput in, final long start, final long end, final ContentText text) throws IOException {
+        final byte[] header = new byte[8];
+        in.seek(start);
+        long p = start;
+        while (p + 8 <= end) {
+            in.readFully(header, 0, 8);
+            final int version = uint16(header, 0), type = uint16(header, 2);
+            final long length = uint32(header, 4);
+            p += 8;
+            if ((version & 0x0F) == 0x0F) {
+                // the records of a container follow its header
+                if (type == PPT_MAIN_MASTER || (type == PPT_SLIDE_LIST && (version >> 4) == 1)) {
+                    p += length;
+                    in.seek(p);
+                }
+                continue;
+            }
+            if (type == PPT_TEXT_CHARS || type == PPT_TEXT_BYTES) pptText(in, Math.min(length, end - p), type == PPT_TEXT_CHARS, text);
+            p += length;
+            in.seek(p);
+        }
+    }
+    
+    /**
+     * read a text atom; each atom is a text box, its paragraphs end with a carriage return
+     */
+    private static void pptText(final StreamInput in, long length, final boolean unicode, final ContentText text) throws IOException {
+        final int width = unicode ? 2 : 1;
+        final byte[] b = new byte[(int) Math.min(length, 8192)];
+        final char[] c = new char[b.length];
+        while (length >= width) {
+            final int n = (int) Math.min(length, b.length) / width * width;
+            in.readFully(b, 0, n);
+            length -= n;
+            int k = 0;
+            for (int i = 0; i < n; i += width) {
+                final char ch = unicode ? (char) uint16(b, i) : (char) (b[i] & 0xff);
+                if (ch == '\r' || ch == 0x0B) {
+                    text.collapse(c, 0, k);
+                    k = 0;
+                    text.newline();
+                } else if (ch == '\t') {
+                    c[k++] = ' ';
+                } else if (ch >= 0x20) {
+                    c[k++] = ch;
+                }
+            }
+            text.collapse(c, 0, k);
+        }
+        text.newline();
+    }
+    
+    private static final int VT_I2 = 0x02, VT_LPSTR = 0x1E, VT_LPWSTR = 0x1F;
+    
+    /**
+     * read the title, subject, author, keywords and comments of the summary information property set
+     */
+    private static void summary(final Stream stream, final Resource resource, final StatementSink sink) throws IOException {
+        final byte[] b = new byte[(int) stream.size()];
+        stream.read(0, b, 0, b.length);
+        if (b.length < 48 || uint16(b, 0) != 0xFFFE) return;
+        final int set = int32(b, 44);
+        if (set < 0 || set > b.length - 8) return;
+        final int count = int32(b, set + 4);
+        final Map<Integer, Integer> properties = new HashMap<Integer, Integer>();
+        for (int i = 0; i < count && set + 16 + 8 * i <= b.length; i++) {
+            final int offset = set + int32(b, set + 12 + 8 * i);
+            if (offset >= set && offset <= b.length - 8) properties.put(int32(b, set + 8 + 8 * i), offset);
+        }
+        // the code page property tells the charset of the other strings
+        final Integer codepage = properties.get(1);
+        final Charset charset = (codepage != null && int32(b, codepage) == VT_I2) ? charset(uint16(b, codepage + 4)) : WINDOWS_1252;
+        final String title = property(b, properties.get(2), charset);
+        if (title != null) sink.add(resource, DC.title, ResourceFactory.createPlainLiteral(title));
+        final String subject = property(b, properties.get(3), charset);
+        if (subject != null) sink.add(resource, DC.subject, ResourceFactory.createPlainLiteral(subject));
+        final String author = property(b, properties.get(4), charset);
+        if (author != null) {
+            sink.add(resource, VCARD.FN, ResourceFactory.createPlainLiteral(author));
+            sink.add(resource, DC.creator, ResourceFactory.createPlainLiteral(author));
+        }
+        final String keywords = property(b, properties.get(5), charset);
+        if (keywords != null) sink.add(resource, DC.coverage, ResourceFactory.createPlainLiteral(concat(keywords.split("\\s*[,;]\\s*"))));
+        final String comments = property(b, properties.get(6), charset);
+        if (comments != null) sink.add(resource, DC.description, ResourceFactory.createPlainLiteral(comments));
+    }
+    
+    private static String property(final byte[] b, final Integer offset, final Charset charset) {
+        if (offset == null) return null;
+        final int type = int32(b, offset), n = int32(b, offset + 4), start = offset + 8;
+        String s;
+        if (type == VT_LPSTR && n >= 0 && n <= b.length - start) {
+            s = new String(b, start, n, charset);
+        } else if (type == VT_LPWSTR && n >= 0 && n <= (b.length - start) / 2) {
+            s = new String(b, start, 2 * n, Charset.forName("UTF-16LE"));
+        } else {
+            return null;
+        }
+        // the strings end with a zero
+        final int end = s.indexOf('\0');
+        if (end >= 0) s = s.substring(0, end);
+        s = s.trim();
+        if (s.length() > MAX_VALUE) s = s.substring(0, MAX_VALUE);
+        return (s.length() == 0) ? null : s;
+    }
+    
+    private static Charset charset(final int codepage) {
+        if (codepage == 1200) return Charset.forName("UTF-16LE");
+        if (codepage == 65001) return Charset.forName("UTF-8");
+        if (codepage == 10000) return Charset.forName("x-MacRoman");
+        if (Charset.isSupported("windows-" + codepage)) return Charset.forName("windows-" + codepage);
+        if (Charset.isSupported("Cp" + codepage)) return Charset.forName("Cp" + codepage);
+        return WINDOWS_1252;
+    }
+    
+    /**
+     * random access to the bytes of a compound document
+     */
+    private static abstract class Storage {
+        
+        public abstract long length();
+        
+        /**
+         * read len bytes at the position
+         * @throws EOFException if the content ends before
+         */
+        public abstract void read(long position, byte[] b, int off, int len) throws IOException;
+        
+        public abstract void close();
+    }
+    
+    private static final class FileStorage extends Storage {
+        
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final long length;
+        
+        public FileStorage(final RandomAccessFile file) throws IOException {
+            this.file = file;
+            this.channel = file.getChannel();
+            this.length = this.channel.size();
+        }
+        
+        public long length() {
+            return this.length;
+        }
+        
+        public void read(final long position, final byte[] b, final int off, final int len) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            // a positional read does not move the channel; no seek is needed
+            while (buffer.hasRemaining()) {
+                if (this.channel.read(buffer, position + buffer.position() - off) < 0) throw new EOFException("document ends before " + (position + len));
+            }
+        }
+        
+        public void close() {
+            try {
+                this.file.close();
+            } catch (IOException e) {}
+        }
+    }
+    
+    private static final class BufferStorage extends Storage {
+        
+        private final ContentBuffer buffer;
+        
+        public BufferStorage(final ContentBuffer buffer) {
+            this.buffer = buffer;
+        }
+        
+        public long length() {
+            return this.buffer.length();
+        }
+        
+        public void read(final long position, final byte[] b, final int off, final int len) throws IOException {
+            if (this.buffer.read(position, b, off, len) < len) throw new EOFException("document ends before " + (position + len));
+        }
+        
+        public void close() {
+            this.buffer.close();
+        }
+    }
+    
+    /**
+     * a directory entry
+     */
+    private static final class Entry {
+        public String name;
+        public int type, left, right, child, start;
+        public long size;
+    }
+    
+    /**
+     * the sector structure of a compound document. The allocation tables are read completely,
+     * they have 1/128 of the size of the document; directory entries are read when they are needed.
+     */
+    private static final class Compound {
+        
+        private final Storage storage;
+        private final int shift, miniShift;
+        private final long miniCutoff;
+        private final int[] fat, miniFat;
+        private final int[] directory; // the sectors of the directory
+        private final int[] miniStream; // the sectors of the stream that holds the mini sectors
+        private final Entry root;
+        
+        public Compound(final Storage storage) throws IOException {
+            this.storage = storage;
+            final byte[] header = new byte[512];
+            storage.read(0, header, 0, header.length);
+            for (int i = 0; i < SIGNATURE.length; i++) if (header[i] != SIGNATURE[i]) throw new IOException("not an ole2 compound document");
+            this.shift = uint16(header, 0x1E);
+            this.miniShift = uint16(header, 0x20);
+            if ((this.shift != 9 && this.shift != 12) || this.miniShift < 1 || this.miniShift >= this.shift) throw new IOException("wrong sector size");
+            final long sectors = (storage.length() >> this.shift) + 1;
+            final int perSector = (1 << this.shift) / 4;
+            final byte[] sector = new byte[1 << this.shift];
+            
+            // the sectors of the allocation table are listed in the header and in a chain of further sectors
+            final int fatSectors = int32(header, 0x2C);
+            if (fatSectors < 0 || fatSectors > sectors) throw new IOException("wrong number of allocation table sectors");
+            final int[] list = new int[fatSectors];
+            int n = 0;
+            for (int i = 0; i < 109 && n < fatSectors; i++) list[n++] = int32(header, 0x4C + 4 * i);
+            int next = int32(header, 0x44);
+            for (int hops = 0; n < fatSectors && next >= 0 && hops < sectors; hops++) {
+                readSector(next, sector);
+                for (int i = 0; i < perSector - 1 && n < fatSectors; i++) list[n++] = int32(sector, 4 * i);
+                next = int32(sector, 4 * (perSector - 1));
+            }
+            if (n < fatSectors) throw new IOException("allocation table is incomplete");
+            this.fat = new int[fatSectors * perSector];
+            for (int i = 0; i < fatSectors; i++) {
+                readSector(list[i], sector);
+                ByteBuffer.wrap(sector).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(this.fat, i * perSector, perSector);
+            }
+            
+            final int[] miniFatSectors = chain(this.fat, int32(header, 0x3C), uint32(header, 0x40));
+            this.miniFat = new int[miniFatSectors.length * perSector];
+            for (int i = 0; i < miniFatSectors.length; i++) {
+                readSector(miniFatSectors[i], sector);
+                ByteBuffer.wrap(sector).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(this.miniFat, i * perSector, perSector);
+            }
+            this.miniCutoff = uint32(header, 0x38);
+            
+            this.directory = chain(this.fat, int32(header, 0x30), sectors);
+            if (this.directory.length == 0) throw new IOException("document has no directory");
+            this.root = entry(0);
+            if (this.root.type != ROOT) throw new IOException("document has no root entry");
+            this.miniStream = chain(this.fat, this.root.start, count(this.root.size, this.shift));
+        }
+        
+        private long position(final int sector) {
+            return ((long) sector + 1) << this.shift;
+        }
+        
+        private long miniPosition(final int sector) throws IOException {
+            final long offset = (long) sector << this.miniShift;
+            final int i = (int) (offset >> this.shift);
+            if (i >= this.miniStream.length) throw new EOFException("mini sector " + sector + " is not in the mini stream");
+            return position(this.miniStream[i]) + (offset & ((1 << this.shift) - 1));
+        }
+        
+        private void readSector(final int sector, final byte[] b) throws IOException {
+            if (sector < 0) throw new IOException("sector " + sector + " does not exist");
+            this.storage.read(position(sector), b, 0, b.length);
+        }
+        
+        private static long count(final long size, final int shift) {
+            return (size + (1L << shift) - 1) >> shift;
+        }
+        
+        /**
+         * follow a sector chain through an allocation table
+         * @param max the maximum number of sectors; the chain ends there
+         */
+        private static int[] chain(final int[] table, final int start, final long max) throws IOException {
+            int[] c = new int[16];
+            int n = 0;
+            for (int s = start; s != END_OF_CHAIN && n < max; s = table[s]) {
+                if (s < 0 || s >= table.length) throw new IOException("broken sector chain");
+                if (n == table.length) throw new IOException("sector chain has a loop");
+                if (n == c.length) c = Arrays.copyOf(c, n * 2);
+                c[n++] = s;
+            }
+            return Arrays.copyOf(c, n);
+        }
+        
+        private Entry entry(final int i) throws IOException {
+            final int perSector = (1 << this.shift) / 128;
+            final byte[] b = new byte[128];
+            this.storage.read(position(this.directory[i / perSector]) + (i % perSector) * 128, b, 0, b.length);
+            final Entry e = new Entry();
+            final int chars = Math.max(0, Math.min(32, uint16(b, 0x40) / 2) - 1);
+            final char[] name = new char[chars];
+            for (int k = 0; k < chars; k++) name[k] = (char) uint16(b, 2 * k);
+            e.name = new String(name);
+            e.type = b[0x42];
+            e.left = int32(b, 0x44);
+            e.right = int32(b, 0x48);
+            e.child = int32(b, 0x4C);
+            e.start = int32(b, 0x74);
+            // the high part of the size is not used in documents with small sectors
+            final long size = (this.shift == 9) ? uint32(b, 0x78) : Math.max(0, uint32(b, 0x78) | ((long) int32(b, 0x7C) << 32));
+            // a stream cannot be larger than the document; the size is used to allocate buffers
+            e.size = Math.min(size, this.storage.length());
+            return e;
+        }
+        
+        /**
+         * list the streams of the root storage. The entries of a storage form a tree; the streams of
+         * sub storages belong to embedded objects and are not listed.
+         * @return the streams by their names, ignoring case
+         */
+        public Map<String, Entry> streams() throws IOException {
+            final Map<String, Entry> streams = new TreeMap<String, Entry>(String.CASE_INSENSITIVE_ORDER);
+            final int entries = this.directory.length * ((1 << this.shift) / 128);
+            final Deque<Integer> open = new ArrayDeque<Integer>();
+            if (this.root.child >= 0 && this.root.child < entries) open.push(this.root.child);
+            int visits = 0;
+            while (!open.isEmpty()) {
+                if (++visits > entries) throw new IOException("directory has a loop");
+                final Entry e = entry(open.pop().intValue());
+                if (e.type == STREAM && !streams.containsKey(e.name)) streams.put(e.name, e);
+                if (e.left >= 0 && e.left < entries) open.push(e.left);
+                if (e.right >= 0 && e.right < entries) open.push(e.right);
+            }
+            return streams;
+        }
+        
+        /**
+         * open a stream; a stream with a sector chain that is shorter than its size is cut at the end of the chain
+         */
+        public Stream open(final Entry e) throws IOException {
+            final boolean mini = e.size < this.miniCutoff;
+            final int s = mini ? this.miniShift : this.shift;
+            final int[] chain = chain(mini ? this.miniFat : this.fat, e.start, count(e.size, s));
+            return new Stream(this, chain, mini, Math.min(e.size, (long) chain.length << s));
+        }
+    }
+    
+    /**
+     * random access to a stream of a compound document
+     */
+    private static final class Stream {
+        
+        private final Compound doc;
+        private final int[] chain;
+        private final boolean mini;
+        private final int shift;
+        private final long size;
+        
+        public Stream(final Compound doc, final int[] chain, final boolean mini, final long size) {
+            this.doc = doc;
+            this.chain = chain;
+            this.mini = mini;
+            this.shift = mini ? doc.miniShift : doc.shift;
+            this.size = size;
+        }
+        
+        public long size() {
+            return this.size;
+        }
+        
+        public void read(long position, final byte[] b, int off, int len) throws IOException {
+            if (position < 0 || position + len > this.size) throw new EOFException("read beyond the end of a stream");
+            final int unit = 1 << this.shift;
+            while (len > 0) {
+                int i = (int) (position >> this.shift);
+                if (i >= this.chain.length) throw new EOFException("stream is shorter than its size");
+                final int in = (int) (position & (unit - 1));
+                final long start = this.mini ? this.doc.miniPosition(this.chain[i]) + in : this.doc.position(this.chain[i]) + in;
+                int c = unit - in;
+                // consecutive sectors are read at once
+                if (!this.mini) while (c < len && i + 1 < this.chain.length && this.chain[i + 1] == this.chain[i] + 1) {
+                    i++;
+                    c += unit;
+                }
+                c = Math.min(c, len);
+                this.doc.storage.read(start, b, off, c);
+                position += c;
+                off += c;
+                len -= c;
+            }
+        }
+    }
+    
+    /**
+     * sequential reading of a stream; skipped bytes are not read
+     */
+    private static final class StreamInput extends InputStream {
+        
+        private final Stream stream;
+        private final byte[] buffer;
+        private long start; // the position of the buffer in the stream
+        private int pos, limit;
+        
+        public StreamInput(final Stream stream) {
+            this.stream = stream;
+            this.buffer = new byte[(int) Math.min(stream.size(), 16 * 1024)];
+            this.start = 0;
+            this.pos = 0;
+            this.limit = 0;
+        }
+        
+        public long position() {
+            return this.start + this.pos;
+        }
+        
+        public void seek(final long position) {
+            if (position >= this.start && position <= this.start + this.limit) {
+                this.pos = (int) (position - this.start);
+            } else {
+                this.start = position;
+                this.pos = 0;
+                this.limit = 0;
+            }
+        }
+        
+        private boolean fill() throws IOException {
+            this.start += this.pos;
+            this.pos = 0;
+            this.limit = (int) Math.max(0, Math.min(this.buffer.length, this.stream.size() - this.start));
+            if (this.limit == 0) return false;
+            this.stream.read(this.start, this.buffer, 0, this.limit);
+            return true;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            if (this.pos >= this.limit && !fill()) return -1;
+            return this.buffer[this.pos++] & 0xff;
+        }
+        
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) return 0;
+            if (this.pos >= this.limit && !fill()) return -1;
+            final int n = Math.min(len, this.limit - this.pos);
+            System.arraycopy(this.buffer, this.pos, b, off, n);
+            this.pos += n;
+            return n;
+        }
+        
+        @Override
+        public long skip(final long n) {
+            final long p = position();
+            final long target = Math.min(this.stream.size(), p + Math.max(0, n));
+            seek(target);
+            return target - p;
+        }
+        
+        public void readFully(final byte[] b, final int off, final int len) throws IOException {
+            int n = 0;
+            while (n < len) {
+                final int c = read(b, off + n, len - n);
+                if (c < 0) throw new EOFException("stream ends");
+                n += c;
+            }
+        }
+    }
+    
+    /**
+     * the characters of a word document. The codes of fields are skipped and their results are kept;
+     * paragraph, cell and line marks end a line.
+     */
+    private static final class WordText {
+        
+        private final ContentText text;
+        private final byte[] bytes;
+        private final char[] run;
+        private int length;
+        private int depth; // the nesting of fields
+        private long code; // a bit for each field level that is in its code part
+        
+        public WordText(final ContentText text) {
+            this.text = text;
+            this.bytes = new byte[8192];
+            this.run = new char[4096];
+            this.length = 0;
+            this.depth = 0;
+            this.code = 0;
+        }
+        
+        /**
+         * read one byte characters in windows-1252
+         */
+        public void bytes(final Stream stream, long offset, long count) throws IOException {
+            count = Math.min(count, stream.size() - offset);
+            while (count > 0) {
+                final int n = (int) Math.min(count, this.bytes.length);
+                stream.read(offset, this.bytes, 0, n);
+                for (int i = 0; i < n; i++) character(CP1252[this.bytes[i] & 0xff]);
+                offset += n;
+                count -= n;
+            }
+        }
+        
+        /**
+         * read two byte characters
+         */
+        public void chars(final Stream stream, long offset, long count) throws IOException {
+            count = Math.min(count, (stream.size() - offset) / 2);
+            while (count > 0) {
+                final int n = (int) Math.min(count, this.bytes.length / 2);
+                stream.read(offset, this.bytes, 0, 2 * n);
+                for (int i = 0; i < n; i++) character((char) uint16(this.bytes, 2 * i));
+                offset += 2 * n;
+                count -= n;
+            }
+        }
+        
+        private void character(final char c) throws IOException {
+            switch (c) {
+            case 0x13: // field begin
+                if (this.depth < 64) this.code |= 1L << this.depth;
+                this.depth++;
+                return;
+            case 0x14: // field separator
+                if (this.depth > 0 && this.depth <= 64) this.code &= ~(1L << (this.depth - 1));
+                return;
+            case 0x15: // field end
+                if (this.depth > 0) this.depth--;
+                if (this.depth < 64) this.code &= ~(1L << this.depth);
+                return;
+            }
+            if (this.code != 0) return;
+            switch (c) {
+            case 0x07: case 0x0B: case 0x0C: case 0x0D: case 0x0E:
+                flush();
+                this.text.newline();
+                return;
+            case 0x09:
+                put(' ');
+                return;
+            case 0x1E: // non breaking hyphen
+                put('-');
+                return;
+            }
+            if (c >= 0x20) put(c);
+        }
+        
+        private void put(final char c) throws IOException {
+            if (this.length == this.run.length) flush();
+            this.run[this.length++] = c;
+        }
+        
+        public void flush() throws IOException {
+            this.text.collapse(this.run, 0, this.length);
+            this.length = 0;
+        }
+    }
+    
+    /**
+     * the records of an excel workbook. Each row of a sheet is a line of the text. Records that have no cells
+     * are skipped without reading them; the shared strings are kept in a string table.
+     */
+    private static final class Workbook {
+        
+        private static final int FORMULA  = 0x0006;
+        private static final int EOF      = 0x000A;
+        private static final int FILEPASS = 0x002F;
+        private static final int CONTINUE = 0x003C;
+        private static final int MULRK    = 0x00BD;
+        private static final int RSTRING  = 0x00D6;
+        private static final int SST      = 0x00FC;
+        private static final int LABELSST = 0x00FD;
+        private static final int NUMBER   = 0x0203;
+        private static final int LABEL    = 0x0204;
+        private static final int STRING   = 0x0207;
+        private static final int RK       = 0x027E;
+        private static final int BOF      = 0x0809;
+        
+        private final StreamInput in;
+        private final ContentText text;
+        private final StringTable strings;
+        private final byte[] header;
+        private byte[] data;
+        private char[] chars;
+        private int type, length, pos; // the current record and the read position in its data
+        private boolean loaded, pending;
+        private boolean biff8, formulaString;
+        private int row;
+        
+        public Workbook(final Stream stream, final ContentText text) {
+            this.in = new StreamInput(stream);
+            this.text = text;
+            this.strings = new StringTable();
+            this.header = new byte[4];
+            this.data = new byte[8224];
+            this.chars = new char[1024];
+            this.loaded = false;
+            this.pending = false;
+            this.biff8 = true;
+            this.formulaString = false;
+            this.row = -1;
+        }
+        
+        public void read() throws IOException {
+            while (next()) {
+                try {
+                    record();
+                } catch (EOFException e) {
+                    // a record that is cut is skipped
+                }
+            }
+            endRow();
+        }
+        
+        private void record() throws IOException {
+            switch (this.type) {
+            case BOF:
+                load();
+                this.biff8 = u16() == 0x0600;
+                endRow();
+                break;
+            case FILEPASS:
+                throw new IOException("workbook is encrypted");
+            case SST:
+                load();
+                sst();
+                break;
+            case LABELSST:
+                load();
+                cell();
+                this.strings.write(i32(), this.text);
+                this.text.collapse(SPACE, 0, 1);
+                break;
+            case LABEL:
+            case RSTRING:
+                load();
+                cell();
+                value(string());
+                break;
+            case NUMBER:
+                load();
+                cell();
+                number(Double.longBitsToDouble((i32() & 0xffffffffL) | ((long) i32() << 32)));
+                break;
+            case RK:
+                load();
+                cell();
+                number(rk(i32()));
+                break;
+            case MULRK:
+                load();
+                row(u16());
+                u16();
+                for (int i = 0; i < (this.length - 6) / 6; i++) {
+                    u16();
+                    number(rk(i32()));
+                }
+                break;
+            case FORMULA:
+                load();
+                cell();
+                final long result = (i32() & 0xffffffffL) | ((long) i32() << 32);
+                // a result that is not a number has 0xffff in the highest bytes; a string result follows in a string record
+                this.formulaString = (result >>> 48) == 0xffff && (result & 0xff) == 0;
+                if ((result >>> 48) != 0xffff) number(Double.longBitsToDouble(result));
+                break;
+            case STRING:
+                if (!this.formulaString) break;
+                this.formulaString = false;
+                load();
+                value(string());
+                break;
+            case EOF:
+                endRow();
+                break;
+            }
+        }
+        
+        private boolean header() throws IOException {
+            int n = 0;
+            while (n < 4) {
+                final int c = this.in.read(this.header, n, 4 - n);
+                // the stream may have some padding after the last record
+                if (c < 0) return false;
+                n += c;
+            }
+            this.type = uint16(this.header, 0);
+            this.length = uint16(this.header, 2);
+            this.loaded = false;
+            this.pos = 0;
+            return true;
+        }
+        
+        private boolean next() throws IOException {
+            if (this.pending) {
+                this.pending = false;
+                return true;
+            }
+            if (!this.loaded) this.in.skip(this.length);
+            return header();
+        }
+        
+        private void load() throws IOException {
+            if (this.data.length < this.length) this.data = new byte[this.length];
+            this.in.readFully(this.data, 0, this.length);
+            this.loaded = true;
+        }
+        
+        /**
+         * continue the data of the current record with the next continue record
+         * @return false if the next record is not a continue record; it is the next record then
+         */
+        private boolean continued() throws IOException {
+            if (!this.loaded) this.in.skip(this.length);
+            if (!header()) return false;
+            if (this.type != CONTINUE) {
+                this.pending = true;
+                return false;
+            }
+            load();
+            return true;
+        }
+        
+        private int u8() throws IOException {
+            if (this.pos >= this.length && !continued()) throw new EOFException("record is cut");
+            return this.data[this.pos++] & 0xff;
+        }
+        
+        private int u16() throws IOException {
+            return u8() | (u8() << 8);
+        }
+        
+        private int i32() throws IOException {
+            return u16() | (u16() << 16);
+        }
+        
+        private void skip(long n) throws IOException {
+            while (n > 0) {
+                if (this.pos >= this.length && !continued()) throw new EOFException("record is cut");
+                final int s = (int) Math.min(n, this.length - this.pos);
+                this.pos += s;
+                n -= s;
+            }
+        }
+        
+        /**
+         * read the characters of a string into the char buffer
+         * @param flags the flags of the string; bit 0 is set for two byte characters
+         * @return the number of characters
+         */
+        private int characters(final int count, int flags) throws IOException {
+            if (this.chars.length < count) this.chars = new char[count];
+            int n = 0;
+            while (n < count) {
+                if (this.pos >= this.length) {
+                    // a string that is continued in the next record has new flags there
+                    if (!continued()) throw new EOFException("string is cut");
+                    flags = u8();
+                }
+                if ((flags & 1) != 0) {
+                    while (n < count && this.pos + 1 < this.length) {
+                        this.chars[n++] = (char) uint16(this.data, this.pos);
+                        this.pos += 2;
+                    }
+                    if (n < count && this.pos + 1 == this.length) this.pos++;
+                } else if (this.biff8) {
+                    // the low bytes of unicode characters
+                    while (n < count && this.pos < this.length) this.chars[n++] = (char) (this.data[this.pos++] & 0xff);
+                } else {
+                    while (n < count && this.pos < this.length) this.chars[n++] = CP1252[this.data[this.pos++] & 0xff];
+                }
+            }
+            return n;
+        }
+        
+        /**
+         * read a cell string; in excel 5 and 95 it has no flags
+         */
+        private int string() throws IOException {
+            final int count = u16();
+            return characters(count, this.biff8 ? u8() : 0);
+        }
+        
+        private void sst() throws IOException {
+            i32();
+            final int unique = i32();
+            for (int i = 0; i < unique; i++) {
+                if (this.pos >= this.length && !continued()) return;
+                final int count = u16(), flags = u8();
+                final int runs = ((flags & 0x08) != 0) ? u16() : 0;
+                final long phonetic = ((flags & 0x04) != 0) ? i32() & 0xffffffffL : 0;
+                final int n = characters(count, flags);
+                this.strings.start();
+                this.strings.append(this.chars, 0, n);
+                skip(4L * runs + phonetic);
+            }
+        }
+        
+        private static double rk(final int rk) {
+            final double d = ((rk & 0x02) != 0) ? (double) (rk >> 2) : Double.longBitsToDouble(((long) (rk & 0xFFFFFFFC)) << 32);
+            return ((rk & 0x01) != 0) ? d / 100 : d;
+        }
+        
+        /**
+         * read the row, column and format of a cell and start a new line if the row changes
+         */
+        private void cell() throws IOException {
+            row(u16());
+            u16();
+            u16();
+        }
+        
+        private void row(final int row) throws IOException {
+            if (row == this.row) return;
+            endRow();
+            this.row = row;
+        }
+        
+        private void endRow() throws IOException {
+            if (this.row >= 0) this.text.newline();
+            this.row = -1;
+        }
+        
+        private void value(final int n) throws IOException {
+            this.text.collapse(this.chars, 0, n);
+            this.text.collapse(SPACE, 0, 1);
+        }
+        
+        private void number(final double d) throws IOException {
+            final String s = (d == Math.rint(d) && Math.abs(d) < 1e15) ? Long.toString((long) d) : Double.toString(d);
+            if (this.chars.length < s.length()) this.chars = new char[s.length()];
+            s.getChars(0, s.length(), this.chars, 0);
+            value(s.length());
+        }
+    }
+}
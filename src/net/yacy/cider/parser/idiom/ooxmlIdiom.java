@@ -0,0 +1,393 @@
+/**
+ *  ooxmlIdiom.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser.idiom;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.vocabulary.DC;
+import com.hp.hpl.jena.vocabulary.VCARD;
+
+import net.yacy.cider.document.DataSource;
+import net.yacy.cider.document.Extension;
+import net.yacy.cider.document.MimeType;
+import net.yacy.cider.parser.AbstractIdiom;
+import net.yacy.cider.parser.Idiom;
+import net.yacy.cider.parser.IdiomSession;
+import net.yacy.cider.parser.ModelStatementSink;
+import net.yacy.cider.parser.ParserException;
+import net.yacy.cider.parser.StatementSink;
+import net.yacy.cider.vocabulary.CIDER;
+
+/**
+ * the ooxml idiom reads Office Open XML documents (docx, pptx, xlsx). The parts with text are read with a
+ * StAX stream reader directly from the zip stream.
+ * Spreadsheet cells refer to xl/sharedStrings.xml, which is often stored after the sheets. The shared strings
+ * are kept in one char buffer with an offset table; sheets that are read before the shared strings are kept
+ * as a list of string numbers and written when the shared strings are known.
+ */
+public class ooxmlIdiom extends AbstractIdiom implements Idiom {
+
+    private static final Set<MimeType>  SUPPORTED_MIME_TYPES = new HashSet<MimeType>();
+    private static final Set<Extension> SUPPORTED_EXTENSIONS = new HashSet<Extension>();
+    private static final Set<String>    USED_VOCABULARIES    = new HashSet<String>();
+    
+    static {
+        Collections.addAll(SUPPORTED_EXTENSIONS, BuiltinIdioms.OOXML_EXTENSIONS);
+        Collections.addAll(SUPPORTED_MIME_TYPES, BuiltinIdioms.OOXML_MIME_TYPES);
+        USED_VOCABULARIES.add(DC.getURI());
+        USED_VOCABULARIES.add(VCARD.getURI());
+        USED_VOCABULARIES.add(CIDER.getDataURI());
+    }
+    
+    private static final Pattern TEXT_PART  = Pattern.compile("word/(document|footnotes|endnotes)\\.xml|ppt/slides/slide\\d+\\.xml");
+    private static final Pattern SHEET_PART = Pattern.compile("xl/worksheets/sheet\\d+\\.xml");
+    private static final int MAX_VALUE = 8192; // longer meta data and cell values are cut
+    private static final char[] SPACE = new char[]{' '};
+    
+    public ooxmlIdiom() {        
+        super("Office Open XML Parser"); 
+    }
+
+    @Override
+    public Set<MimeType> supportedMimeTypes() {
+        return SUPPORTED_MIME_TYPES;
+    }
+
+    @Override
+    public Set<Extension> supportedExtensions() {
+        return SUPPORTED_EXTENSIONS;
+    }
+
+    public Set<String> usedVocabularies() {
+        return USED_VOCABULARIES;
+    }
+    
+    @Override
+    public Model parse(DataSource source) throws ParserException {
+        ModelStatementSink sink = new ModelStatementSink();
+        parse(source, sink, odfIdiom.newInputFactory());
+        return sink.getModel();
+    }
+    
+    @Override
+    public void parse(DataSource source, StatementSink sink) throws ParserException {
+        parse(source, sink, odfIdiom.newInputFactory());
+    }
+    
+    /**
+     * the session keeps the StAX factory
+     */
+    @Override
+    public IdiomSession openSession() {
+        return new IdiomSession() {
+            private final XMLInputFactory factory = odfIdiom.newInputFactory();
+            public Model parse(DataSource source) throws ParserException {
+                ModelStatementSink sink = new ModelStatementSink();
+                ooxmlIdiom.this.parse(source, sink, this.factory);
+                return sink.getModel();
+            }
+            public void parse(DataSource source, StatementSink sink) throws ParserException {
+                ooxmlIdiom.this.parse(source, sink, this.factory);
+            }
+            public void reset() {}
+            public void close() {}
+        };
+    }
+    
+    private void parse(DataSource source, StatementSink sink, XMLInputFactory factory) throws ParserException {
+        final InputStream is = source.getStream();
+        if (is == null) throw new ParserException("no content", source.getURI());
+        final Resource resource = source.hasURI() ? ResourceFactory.createResource(source.getURI().toNormalform(true, true)) : ResourceFactory.createResource();
+        final ContentText text = new ContentText(resource, sink);
+        StringTable shared = null;
+        Cells deferred = null;
+        boolean content = false;
+        try {
+            final ZipInputStream zip = new ZipInputStream(is);
+            // the StAX reader closes its stream at the end of the xml document
+            final InputStream entryStream = new FilterInputStream(zip) {
+                public void close() {}
+            };
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                final String name = entry.getName();
+                final boolean sheet = SHEET_PART.matcher(name).matches();
+                if (!sheet && !name.equals("xl/sharedStrings.xml") && !name.equals("docProps/core.xml") && !TEXT_PART.matcher(name).matches()) continue;
+                final XMLStreamReader reader = factory.createXMLStreamReader(entryStream);
+                try {
+                    if (sheet) {
+                        if (shared == null) {
+                            if (deferred == null) deferred = new Cells();
+                            sheet(reader, deferred, null, null);
+                        } else {
+                            sheet(reader, null, shared, text);
+                        }
+                        content = true;
+                    } else if (name.equals("xl/sharedStrings.xml")) {
+                        shared = sharedStrings(reader);
+                        if (deferred != null) deferred.write(shared, text);
+                        deferred = null;
+                    } else if (name.equals("docProps/core.xml")) {
+                        meta(reader, resource, sink);
+                    } else {
+                        paragraphs(reader, text);
+                        content = true;
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+            // a workbook without shared strings
+            if (deferred != null) deferred.write(new StringTable(), text);
+            text.flush();
+        } catch (IOException e) {
+            throw new ParserException("cannot read document: " + e.getMessage(), source.getURI(), e);
+        } catch (XMLStreamException e) {
+            throw new ParserException("cannot parse document: " + e.getMessage(), source.getURI(), e);
+        } catch (IllegalArgumentException e) {
+            // a zip entry name with a wrong encoding
+            throw new ParserException("cannot read document: " + e.getMessage(), source.getURI(), e);
+        }
+        if (!content) throw new ParserException("document has no text part", source.getURI());
+    }
+    
+    /**
+     * read the text of a word document part or of a slide; in both the text is in 't' elements inside of 'p' elements
+     */
+    private static void paragraphs(final XMLStreamReader reader, final ContentText text) throws XMLStreamException, IOException {
+        boolean t = false;
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                final String start = reader.getLocalName();
+                if (start.equals("t")) t = true;
+                else if (start.equals("tab")) text.collapse(SPACE, 0, 1);
+                else if (start.equals("br") || start.equals("cr")) text.newline();
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+                if (t) text.collapse(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                final String end = reader.getLocalName();
+                if (end.equals("t")) t = false;
+                else if (end.equals("p")) text.newline();
+                break;
+            }
+        }
+    }
+    
+    /**
+     * read the shared strings of a workbook. The text of a string is the text of all its 't' elements
+     * without the phonetic runs.
+     */
+    private static StringTable sharedStrings(final XMLStreamReader reader) throws XMLStreamException, IOException {
+        final StringTable table = new StringTable();
+        boolean t = false;
+        int phonetic = 0;
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                final String start = reader.getLocalName();
+                if (start.equals("si")) table.start();
+                else if (start.equals("t")) t = true;
+                else if (start.equals("rPh")) phonetic++;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+                if (t && phonetic == 0) table.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                final String end = reader.getLocalName();
+                if (end.equals("t")) t = false;
+                else if (end.equals("rPh")) phonetic--;
+                break;
+            }
+        }
+        return table;
+    }
+    
+    /**
+     * read the cells of a sheet. Each row is a line of the text.
+     * @param reader
+     * @param cells the list for the cells if the shared strings are not known yet, otherwise null
+     * @param shared the shared strings, or null if cells is given
+     * @param text the text for the cells, or null if cells is given
+     */
+    private static void sheet(final XMLStreamReader reader, final Cells cells, final StringTable shared, final ContentText text) throws XMLStreamException, IOException {
+        final StringBuilder value = new StringBuilder();
+        final char[] chars = new char[MAX_VALUE];
+        boolean capture = false, sharedCell = false;
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                final String start = reader.getLocalName();
+                if (start.equals("c")) {
+                    sharedCell = "s".equals(reader.getAttributeValue(null, "t"));
+                    value.setLength(0);
+                } else if (start.equals("v") || start.equals("t")) {
+                    capture = true;
+                }
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+                if (capture) value.append(reader.getTextCharacters(), reader.getTextStart(), Math.min(reader.getTextLength(), Math.max(0, MAX_VALUE - value.length())));
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                final String end = reader.getLocalName();
+                if (end.equals("v") || end.equals("t")) {
+                    capture = false;
+                } else if (end.equals("c")) {
+                    if (value.length() == 0) break;
+                    if (sharedCell) {
+                        final int index;
+                        try {
+                            index = Integer.parseInt(value.toString().trim());
+                        } catch (NumberFormatException e) {
+                            break;
+                        }
+                        if (cells != null) cells.shared(index); else shared.write(index, text);
+                    } else {
+                        if (cells != null) {
+                            cells.literal(value);
+                        } else {
+                            value.getChars(0, value.length(), chars, 0);
+                            text.collapse(chars, 0, value.length());
+                        }
+                    }
+                    if (text != null) text.collapse(SPACE, 0, 1);
+                } else if (end.equals("row")) {
+                    if (cells != null) cells.row(); else text.newline();
+                }
+                break;
+            }
+        }
+    }
+    
+    /**
+     * read the document properties and give them to the sink
+     */
+    private static void meta(final XMLStreamReader reader, final Resource resource, final StatementSink sink) throws XMLStreamException, IOException {
+        final StringBuilder value = new StringBuilder();
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                value.setLength(0);
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+                value.append(reader.getTextCharacters(), reader.getTextStart(), Math.min(reader.getTextLength(), Math.max(0, MAX_VALUE - value.length())));
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                final String v = value.toString().trim();
+                value.setLength(0);
+                if (v.length() == 0) break;
+                final String name = reader.getLocalName();
+                if (name.equals("title")) {
+                    sink.add(resource, DC.title, ResourceFactory.createPlainLiteral(v));
+                } else if (name.equals("description")) {
+                    sink.add(resource, DC.description, ResourceFactory.createPlainLiteral(v));
+                } else if (name.equals("subject")) {
+                    sink.add(resource, DC.subject, ResourceFactory.createPlainLiteral(v));
+                } else if (name.equals("language")) {
+                    sink.add(resource, DC.language, ResourceFactory.createPlainLiteral(v));
+                } else if (name.equals("keywords")) {
+                    sink.add(resource, DC.coverage, ResourceFactory.createPlainLiteral(concat(v.split("\\s*[,;]\\s*"))));
+                } else if (name.equals("creator")) {
+                    sink.add(resource, VCARD.FN, ResourceFactory.createPlainLiteral(v));
+                    sink.add(resource, DC.creator, ResourceFactory.createPlainLiteral(v));
+                }
+                break;
+            }
+        }
+    }
+    
+    /**
+     * the cells of sheets that are read before the shared strings. A cell is the number of a shared string,
+     * or -2 - n for the n-th literal value; -1 ends a row.
+     */
+    private static final class Cells {
+        
+        private static final int ROW = -1;
+        
+        private int[] codes;
+        private int size;
+        private final StringTable literals;
+        
+        public Cells() {
+            this.codes = new int[1024];
+            this.size = 0;
+            this.literals = new StringTable();
+        }
+        
+        private void add(final int code) {
+            if (this.size == this.codes.length) {
+                final int[] c = new int[this.codes.length * 2];
+                System.arraycopy(this.codes, 0, c, 0, this.size);
+                this.codes = c;
+            }
+            this.codes[this.size++] = code;
+        }
+        
+        public void shared(final int index) {
+            if (index >= 0) add(index);
+        }
+        
+        public void literal(final StringBuilder value) throws IOException {
+            add(-2 - this.literals.size());
+            this.literals.add(value);
+        }
+        
+        public void row() {
+            add(ROW);
+        }
+        
+        public void write(final StringTable shared, final ContentText text) throws IOException {
+            for (int i = 0; i < this.size; i++) {
+                final int code = this.codes[i];
+                if (code == ROW) {
+                    text.newline();
+                    continue;
+                }
+                if (code >= 0) shared.write(code, text); else this.literals.write(-2 - code, text);
+                text.collapse(SPACE, 0, 1);
+            }
+        }
+    }
+}
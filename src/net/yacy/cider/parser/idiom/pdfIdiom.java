@@ -22,11 +22,8 @@
 
 package net.yacy.cider.parser.idiom;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
-import java.io.Writer;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -40,8 +37,8 @@ import org.apache.pdfbox.pdmodel.encryption.StandardDecryptionMaterial;
 import org.apache.pdfbox.util.PDFTextStripper;
 
 import com.hp.hpl.jena.rdf.model.Model;
-import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
 import com.hp.hpl.jena.vocabulary.DC;
 import com.hp.hpl.jena.vocabulary.VCARD;
 
@@ -50,7 +47,10 @@ import net.yacy.cider.document.Extension;
 import net.yacy.cider.document.MimeType;
 import net.yacy.cider.parser.AbstractIdiom;
 import net.yacy.cider.parser.Idiom;
+import net.yacy.cider.parser.IdiomSession;
+import net.yacy.cider.parser.ModelStatementSink;
 import net.yacy.cider.parser.ParserException;
+import net.yacy.cider.parser.StatementSink;
 import net.yacy.cider.vocabulary.CIDER;
 
 public class pdfIdiom extends AbstractIdiom implements Idiom {
@@ -60,13 +60,8 @@ public class pdfIdiom extends AbstractIdiom implements Idiom {
     private static final Set<String>    USED_VOCABULARIES    = new HashSet<String>();
     
     static {
-        SUPPORTED_EXTENSIONS.add(Extension.PDF);
-        SUPPORTED_MIME_TYPES.add(MimeType.APPLICATION_PDF);
-        SUPPORTED_MIME_TYPES.add(MimeType.APPLICATION_XPDF);
-        SUPPORTED_MIME_TYPES.add(MimeType.APPLICATION_ACROBAT);
-        SUPPORTED_MIME_TYPES.add(MimeType.APPLICATION_VNDPDF);
-        SUPPORTED_MIME_TYPES.add(MimeType.TEXT_PDF);
-        SUPPORTED_MIME_TYPES.add(MimeType.TEXT_XPDF);
+        Collections.addAll(SUPPORTED_EXTENSIONS, BuiltinIdioms.PDF_EXTENSIONS);
+        Collections.addAll(SUPPORTED_MIME_TYPES, BuiltinIdioms.PDF_MIME_TYPES);
         USED_VOCABULARIES.add(DC.getURI());
         USED_VOCABULARIES.add(VCARD.getURI());
         USED_VOCABULARIES.add(CIDER.getDataURI());
@@ -92,9 +87,50 @@ public class pdfIdiom extends AbstractIdiom implements Idiom {
     
     @Override
     public Model parse(DataSource source) throws ParserException {
-        // create an empty Model
-        Model model = ModelFactory.createDefaultModel();
-        Resource resource = source.hasURI() ? model.createResource(source.getURI().toNormalform(true, true)) : model.createResource();
+        ModelStatementSink sink = new ModelStatementSink();
+        parse(source, sink, null);
+        return sink.getModel();
+    }
+    
+    @Override
+    public void parse(DataSource source, StatementSink sink) throws ParserException {
+        parse(source, sink, null);
+    }
+    
+    /**
+     * the session keeps the text stripper; creating a stripper loads its resource tables
+     */
+    @Override
+    public IdiomSession openSession() {
+        return new IdiomSession() {
+            private PDFTextStripper stripper = null;
+            private PDFTextStripper stripper(DataSource source) throws ParserException {
+                if (this.stripper == null) try {
+                    this.stripper = new PDFTextStripper();
+                } catch (IOException e) {
+                    throw new ParserException("PDF text stripper", source.getURI(), e);
+                }
+                return this.stripper;
+            }
+            public Model parse(DataSource source) throws ParserException {
+                ModelStatementSink sink = new ModelStatementSink();
+                pdfIdiom.this.parse(source, sink, stripper(source));
+                return sink.getModel();
+            }
+            public void parse(DataSource source, StatementSink sink) throws ParserException {
+                pdfIdiom.this.parse(source, sink, stripper(source));
+            }
+            public void reset() {
+                // writeText initializes the stripper for every document
+            }
+            public void close() {
+                this.stripper = null;
+            }
+        };
+    }
+    
+    private void parse(DataSource source, StatementSink sink, PDFTextStripper stripper) throws ParserException {
+        Resource resource = source.hasURI() ? ResourceFactory.createResource(source.getURI().toNormalform(true, true)) : ResourceFactory.createResource();
         
         // open pdf document
         final PDDocument theDocument;
@@ -133,50 +169,37 @@ public class pdfIdiom extends AbstractIdiom implements Idiom {
             docKeywordStr = theDocInfo.getKeywords();
         }
         
-        if (docAuthor != null && docAuthor.length() > 0) {
-            resource.addProperty(VCARD.FN, docAuthor);
-            resource.addProperty(DC.creator, docAuthor);
-        }
-        if (docSubject != null && docSubject.length() > 0) {
-            resource.addProperty(DC.subject, docSubject);
-        }
-        if (docTitle != null && docTitle.length() > 0) {
-            resource.addProperty(DC.title, docTitle);
-        }
-        String[] docKeywords = null;
-        if (docKeywordStr != null && docKeywordStr.length() > 0) {
-            docKeywords = docKeywordStr.split(" |,");
-            resource.addProperty(DC.coverage, concat(docKeywords));
-        }
-        
-        // get the content
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        Writer writer;
         try {
-            writer = new OutputStreamWriter(baos, "UTF-8");
-        } catch (UnsupportedEncodingException e1) {
-            writer = new OutputStreamWriter(baos);
+            if (docAuthor != null && docAuthor.length() > 0) {
+                sink.add(resource, VCARD.FN, ResourceFactory.createPlainLiteral(docAuthor));
+                sink.add(resource, DC.creator, ResourceFactory.createPlainLiteral(docAuthor));
+            }
+            if (docSubject != null && docSubject.length() > 0) {
+                sink.add(resource, DC.subject, ResourceFactory.createPlainLiteral(docSubject));
+            }
+            if (docTitle != null && docTitle.length() > 0) {
+                sink.add(resource, DC.title, ResourceFactory.createPlainLiteral(docTitle));
+            }
+            String[] docKeywords = null;
+            if (docKeywordStr != null && docKeywordStr.length() > 0) {
+                docKeywords = docKeywordStr.split(" |,");
+                sink.add(resource, DC.coverage, ResourceFactory.createPlainLiteral(concat(docKeywords)));
+            }
+        } catch (IOException e) {
+            throw new ParserException("cannot write statement: " + e.getMessage(), source.getURI(), e);
         }
+        
+        // get the content; the text is given to the sink in segments while the stripper writes it
+        final ContentText text = new ContentText(resource, sink);
         try {
-            final PDFTextStripper stripper = new PDFTextStripper();
-            stripper.writeText(theDocument, writer);
-            theDocument.close();           
-            writer.close();
+            if (stripper == null) stripper = new PDFTextStripper();
+            stripper.writeText(theDocument, text.writer());
+            text.flush();
         } catch (IOException e) {
-            if (writer != null) try { writer.close(); } catch (final Exception ex) {}
             throw new ParserException("PDF content reader", source.getURI(), e);
+        } finally {
+            try { theDocument.close(); } catch (final IOException e) {}
         }
-        String content;
-        try {
-            content = new String(baos.toByteArray(), "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            content = new String(baos.toByteArray());
-        }
-        if (content != null && content.length() > 0) {
-            resource.addProperty(CIDER.data_content_text, content);
-        }
-        
-        return model;
     }
     
 }
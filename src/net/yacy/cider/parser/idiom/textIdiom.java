@@ -0,0 +1,264 @@
+/**
+ *  textIdiom.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.parser.idiom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+
+import net.yacy.cider.document.DataSource;
+import net.yacy.cider.document.Extension;
+import net.yacy.cider.document.MimeType;
+import net.yacy.cider.parser.AbstractIdiom;
+import net.yacy.cider.parser.ContentSniffer;
+import net.yacy.cider.parser.Idiom;
+import net.yacy.cider.parser.IdiomSession;
+import net.yacy.cider.parser.ModelStatementSink;
+import net.yacy.cider.parser.ParserException;
+import net.yacy.cider.parser.StatementSink;
+import net.yacy.cider.vocabulary.CIDER;
+
+/**
+ * the text idiom decodes plain text in chunks of a fixed size and normalizes the line endings
+ * of Mac, DOS and Unix files to '\n'. The charset is detected from the first chunk if the source does not
+ * name a charset other than the default UTF-8.
+ * Large texts are given to the sink in several content statements that end at a line end,
+ * so that the memory for a text does not grow with its size when a streaming sink is used.
+ */
+public class textIdiom extends AbstractIdiom implements Idiom {
+
+    private static final Set<MimeType>  SUPPORTED_MIME_TYPES = new HashSet<MimeType>();
+    private static final Set<Extension> SUPPORTED_EXTENSIONS = new HashSet<Extension>();
+    private static final Set<String>    USED_VOCABULARIES    = new HashSet<String>();
+    
+    static {
+        Collections.addAll(SUPPORTED_EXTENSIONS, BuiltinIdioms.TEXT_EXTENSIONS);
+        Collections.addAll(SUPPORTED_MIME_TYPES, BuiltinIdioms.TEXT_MIME_TYPES);
+        USED_VOCABULARIES.add(CIDER.getDataURI());
+    }
+    
+    private static final int CHUNK_SIZE = 64 * 1024; // the size of the byte and char buffers
+    
+    public textIdiom() {        
+        super("Text Parser"); 
+    }
+
+    @Override
+    public Set<MimeType> supportedMimeTypes() {
+        return SUPPORTED_MIME_TYPES;
+    }
+
+    @Override
+    public Set<Extension> supportedExtensions() {
+        return SUPPORTED_EXTENSIONS;
+    }
+
+    public Set<String> usedVocabularies() {
+        return USED_VOCABULARIES;
+    }
+    
+    @Override
+    public Model parse(DataSource source) throws ParserException {
+        ModelStatementSink sink = new ModelStatementSink();
+        new Decoder().parse(source, sink);
+        return sink.getModel();
+    }
+    
+    @Override
+    public void parse(DataSource source, StatementSink sink) throws ParserException {
+        new Decoder().parse(source, sink);
+    }
+    
+    /**
+     * the session keeps the buffers and the decoders
+     */
+    @Override
+    public IdiomSession openSession() {
+        return new IdiomSession() {
+            private final Decoder decoder = new Decoder();
+            public Model parse(DataSource source) throws ParserException {
+                ModelStatementSink sink = new ModelStatementSink();
+                this.decoder.parse(source, sink);
+                return sink.getModel();
+            }
+            public void parse(DataSource source, StatementSink sink) throws ParserException {
+                this.decoder.parse(source, sink);
+            }
+            public void reset() {
+                // the buffers are cleared for every document
+            }
+            public void close() {}
+        };
+    }
+    
+    /**
+     * find the charset of a text from its first bytes. A byte order mark is trusted; a text that is valid UTF-8
+     * is UTF-8. Other texts are decoded with windows-1252 or MacRoman, whichever gives more letters.
+     * @param b the first bytes of the text
+     * @param len the number of valid bytes
+     * @return the charset
+     */
+    public static Charset charset(final byte[] b, final int len) {
+        final String bom = ContentSniffer.charset(b, len);
+        if (bom != null) return Charset.forName(bom);
+        if (ContentSniffer.isUTF8(b, len)) return Charset.forName("UTF-8");
+        final Charset windows = Charset.forName("windows-1252");
+        if (!Charset.isSupported("x-MacRoman")) return windows;
+        final Charset mac = Charset.forName("x-MacRoman");
+        final String w = new String(b, 0, len, windows), m = new String(b, 0, len, mac);
+        int score = 0;
+        for (int i = 0; i < len; i++) {
+            if ((b[i] & 0x80) == 0) continue;
+            if (Character.isLetter(m.charAt(i))) score++;
+            if (Character.isLetter(w.charAt(i))) score--;
+        }
+        return (score > 0) ? mac : windows;
+    }
+    
+    /**
+     * the decoder reads a text; it can be used again for the next text but not by two threads at the same time
+     */
+    private static final class Decoder {
+        
+        private final ByteBuffer bytes;
+        private final CharBuffer chars;
+        private final Map<Charset, CharsetDecoder> decoders;
+        
+        public Decoder() {
+            this.bytes = ByteBuffer.allocate(CHUNK_SIZE);
+            this.chars = CharBuffer.allocate(CHUNK_SIZE);
+            this.decoders = new HashMap<Charset, CharsetDecoder>();
+        }
+        
+        private CharsetDecoder decoder(final Charset charset) {
+            CharsetDecoder decoder = this.decoders.get(charset);
+            if (decoder == null) {
+                decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                this.decoders.put(charset, decoder);
+            }
+            return decoder.reset();
+        }
+        
+        public void parse(final DataSource source, final StatementSink sink) throws ParserException {
+            final InputStream is = source.getStream();
+            if (is == null) throw new ParserException("no content", source.getURI());
+            final Resource resource = source.hasURI() ? ResourceFactory.createResource(source.getURI().toNormalform(true, true)) : ResourceFactory.createResource();
+            this.bytes.clear();
+            this.chars.clear();
+            final ContentText text = new ContentText(resource, sink);
+            try {
+                final ReadableByteChannel channel = Channels.newChannel(is);
+                boolean eof = fill(channel);
+                this.bytes.flip();
+                final CharsetDecoder decoder = decoder(charset(source));
+                skipBOM(decoder.charset());
+                boolean cr = false;
+                while (true) {
+                    decoder.decode(this.bytes, this.chars, eof);
+                    if (eof) decoder.flush(this.chars);
+                    this.chars.flip();
+                    cr = append(text, cr);
+                    this.chars.clear();
+                    if (eof) break;
+                    this.bytes.compact();
+                    eof = fill(channel);
+                    this.bytes.flip();
+                }
+                text.flush();
+            } catch (IOException e) {
+                throw new ParserException("cannot read text: " + e.getMessage(), source.getURI(), e);
+            }
+        }
+        
+        /**
+         * read until the byte buffer is full or the stream ends
+         * @return true if the stream has ended
+         */
+        private boolean fill(final ReadableByteChannel channel) throws IOException {
+            while (this.bytes.hasRemaining()) {
+                if (channel.read(this.bytes) < 0) return true;
+            }
+            return false;
+        }
+        
+        /**
+         * the charset of the source; the default UTF-8 is only used if the first chunk is valid UTF-8
+         */
+        private Charset charset(final DataSource source) {
+            if (source.hasCharset() && source.get(DataSource.Names.CHARSET) != null) {
+                try {
+                    final String given = net.yacy.cider.document.Charset.patchCharsetEncoding(source.getCharset());
+                    if (Charset.isSupported(given)) {
+                        final Charset c = Charset.forName(given);
+                        if (!c.name().equals("UTF-8") || ContentSniffer.isUTF8(this.bytes.array(), this.bytes.limit())) return c;
+                    }
+                } catch (IllegalCharsetNameException e) {}
+            }
+            return textIdiom.charset(this.bytes.array(), this.bytes.limit());
+        }
+        
+        private void skipBOM(final Charset charset) {
+            final byte[] b = this.bytes.array();
+            final int len = this.bytes.limit();
+            final String name = charset.name();
+            if (name.equals("UTF-8") && len >= 3 && (b[0] & 0xff) == 0xEF && (b[1] & 0xff) == 0xBB && (b[2] & 0xff) == 0xBF) this.bytes.position(3);
+            if (name.startsWith("UTF-16") && len >= 2 && ((b[0] & 0xff) == 0xFE && (b[1] & 0xff) == 0xFF || (b[0] & 0xff) == 0xFF && (b[1] & 0xff) == 0xFE)) this.bytes.position(2);
+        }
+        
+        /**
+         * append the decoded chars to the text with normalized line ends
+         * @param cr true if the last char of the previous chunk was a '\r'
+         * @return true if the last char of this chunk was a '\r'
+         */
+        private boolean append(final ContentText text, boolean cr) throws IOException {
+            while (this.chars.hasRemaining()) {
+                final char c = this.chars.get();
+                if (c == '\n' && cr) {
+                    cr = false;
+                    continue;
+                }
+                cr = c == '\r';
+                if (c == '\r' || c == '\n') text.newline(); else text.append(c);
+            }
+            return cr;
+        }
+    }
+}
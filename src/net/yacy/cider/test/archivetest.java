@@ -0,0 +1,134 @@
+/**
+ *  archivetest.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 27.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.log4j.Logger;
+
+import net.yacy.cider.document.DataSource;
+import net.yacy.cider.document.URI;
+import net.yacy.cider.parser.Parser;
+import net.yacy.cider.parser.ParserException;
+import net.yacy.cider.util.FileUtils;
+import net.yacy.cider.vocabulary.CIDER;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.ResIterator;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * parse a zip file of text samples:
+ * - the content text of the archive must contain the word of the samples
+ * - every entry must have one content text statement in the model
+ * - a source with an unknown size must not take its length from the file system,
+ *   because the uri of an archive entry does not denote a file
+ * The program exits with status 1 if a check fails.
+ */
+public class archivetest {
+    
+    private static final Logger log = Logger.getLogger(FileUtils.class.getName());
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        
+        boolean ok = true;
+        File zip = null;
+        try {
+            final List<File> files = samples.files("txt", "html");
+            zip = File.createTempFile("archivetest", ".zip");
+            // the deflated entries of a zip stream have no size in their local header
+            final ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zip));
+            try {
+                for (File file: files) {
+                    zos.putNextEntry(new ZipEntry(file.getName()));
+                    final InputStream is = new FileInputStream(file);
+                    try {
+                        final byte[] b = new byte[4096];
+                        int n;
+                        while ((n = is.read(b)) > 0) zos.write(b, 0, n);
+                    } finally {
+                        is.close();
+                    }
+                    zos.closeEntry();
+                }
+            } finally {
+                zos.close();
+            }
+            
+            final Model model = Parser.parseSource(new URI(zip));
+            if (samples.text(model).indexOf(samples.WORD) < 0) {
+                log.error("the archive does not contain '" + samples.WORD + "'");
+                ok = false;
+            }
+            int entries = 0;
+            final ResIterator i = model.listSubjectsWithProperty(CIDER.data_content_text);
+            try {
+                while (i.hasNext()) {
+                    final Resource entry = i.nextResource();
+                    final long statements = model.listStatements(entry, CIDER.data_content_text, (RDFNode) null).toList().size();
+                    if (statements != 1) {
+                        log.error(entry + ": the model has " + statements + " content text statements");
+                        ok = false;
+                    }
+                    entries++;
+                }
+            } finally {
+                i.close();
+            }
+            if (entries < files.size()) {
+                log.error("the model has content text for " + entries + " of " + files.size() + " entries");
+                ok = false;
+            }
+            
+            final DataSource source = new DataSource();
+            source.setURI(new URI(zip));
+            source.setSize(-1);
+            if (source.getContentLength() != -1) {
+                log.error("the length of a source with unknown size was taken from the file system");
+                ok = false;
+            }
+        } catch (ParserException e) {
+            log.error(e.getMessage(), e);
+            ok = false;
+        } catch (InterruptedException e) {
+            log.error(e.getMessage(), e);
+            ok = false;
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            ok = false;
+        } finally {
+            if (zip != null) zip.delete();
+        }
+        log.info("archivetest " + (ok ? "passed" : "failed"));
+        System.exit(ok ? 0 : 1);
+    }
+}
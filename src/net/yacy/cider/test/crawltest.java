@@ -0,0 +1,111 @@
+/**
+ *  crawltest.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 27.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.yacy.cider.test;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import net.yacy.cider.ConcurrentOfflineExtractor;
+import net.yacy.cider.TreeCrawler;
+import net.yacy.cider.document.URI;
+import net.yacy.cider.util.FileUtils;
+
+/**
+ * crawl ciderdict/testfiles with a concurrent extractor. Every file must be either submitted or
+ * skipped, and every submitted file must produce a result. The program exits with status 1
+ * if a check fails or the crawl hangs.
+ */
+public class crawltest {
+    
+    private static final Logger log = Logger.getLogger(FileUtils.class.getName());
+    
+    // a crawl of the test files takes a few seconds; a crawl that runs longer hangs
+    private static final long TIMEOUT = 60000;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        
+        boolean ok = false;
+        final ConcurrentOfflineExtractor extractor = new ConcurrentOfflineExtractor(2);
+        try {
+            final File testdata = new File("ciderdict/testfiles");
+            final URI root = new URI(testdata);
+            final AtomicLong taken = new AtomicLong(0);
+            final Thread consumer = new Thread("crawltest.consumer") {
+                public void run() {
+                    while (!isInterrupted()) {
+                        extractor.take();
+                        if (!isInterrupted()) taken.incrementAndGet();
+                    }
+                }
+            };
+            consumer.setDaemon(true);
+            consumer.start();
+            
+            final TreeCrawler crawler = new TreeCrawler(extractor, 2, 1);
+            final Thread crawl = new Thread("crawltest.crawl") {
+                public void run() {
+                    try {
+                        crawler.crawl(root);
+                    } catch (InterruptedException e) {
+                        log.error("crawl interrupted", e);
+                    }
+                }
+            };
+            crawl.setDaemon(true);
+            crawl.start();
+            crawl.join(TIMEOUT);
+            if (crawl.isAlive()) {
+                log.error("crawl did not terminate within " + TIMEOUT + " milliseconds");
+                return;
+            }
+            final int files = testdata.list().length;
+            if (crawler.submitted() + crawler.skipped() != files) {
+                log.error(files + " files, but " + crawler.submitted() + " submitted and " + crawler.skipped() + " skipped");
+                return;
+            }
+            final long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (taken.get() < crawler.submitted()) {
+                if (System.currentTimeMillis() > deadline) {
+                    log.error("only " + taken.get() + " of " + crawler.submitted() + " documents were extracted");
+                    return;
+                }
+                Thread.sleep(100);
+            }
+            consumer.interrupt();
+            ok = true;
+        } catch (MalformedURLException e) {
+            log.error(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            log.error(e.getMessage(), e);
+        } finally {
+            extractor.close();
+            log.info("crawltest " + (ok ? "passed" : "failed"));
+            System.exit(ok ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ *  extractortest.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 27.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.yacy.cider.test;
+
+import java.io.File;
+import java.net.MalformedURLException;
+
+import org.apache.log4j.Logger;
+
+import net.yacy.cider.ConcurrentOfflineExtractor;
+import net.yacy.cider.document.DataSource;
+import net.yacy.cider.document.URI;
+import net.yacy.cider.parser.Parser;
+import net.yacy.cider.util.FileUtils;
+
+/**
+ * submit all files in ciderdict/testfiles to an extractor with a small result queue and close it
+ * before any result is taken. close() must return, and every source must still produce one result.
+ * The program exits with status 1 if a check fails or close() hangs.
+ */
+public class extractortest {
+    
+    private static final Logger log = Logger.getLogger(FileUtils.class.getName());
+    
+    private static final long TIMEOUT = 60000;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        
+        boolean ok = false;
+        try {
+            final ConcurrentOfflineExtractor extractor = new ConcurrentOfflineExtractor(2, 1);
+            File testdata = new File("ciderdict/testfiles");
+            int submitted = 0;
+            for (String testfilename: testdata.list()) {
+                URI testfileuri = new URI(new File(testdata, testfilename));
+                if (Parser.supportsExtension(testfileuri) != null) continue;
+                DataSource source = new DataSource();
+                source.setURI(testfileuri);
+                // three results fill the result queue, two workers wait with their results
+                // and one source waits in the input queue; one more would block submit()
+                if (submitted < 6 && extractor.submit(source) != null) submitted++;
+            }
+            
+            // close() without a consumer must not wait for space in the result queue
+            final Thread close = new Thread("extractortest.close") {
+                public void run() {
+                    extractor.close();
+                }
+            };
+            close.setDaemon(true);
+            close.start();
+            close.join(TIMEOUT);
+            if (close.isAlive()) {
+                log.error("close() did not terminate within " + TIMEOUT + " milliseconds");
+                return;
+            }
+            
+            // the results are still available after close()
+            for (int i = 0; i < submitted; i++) extractor.take();
+            if (extractor.completed() != submitted) {
+                log.error(submitted + " sources submitted but " + extractor.completed() + " completed");
+                return;
+            }
+            ok = true;
+        } catch (MalformedURLException e) {
+            log.error(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            log.error(e.getMessage(), e);
+        } finally {
+            log.info("extractortest " + (ok ? "passed" : "failed"));
+            System.exit(ok ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ *  htmltest.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 27.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import net.yacy.cider.document.URI;
+import net.yacy.cider.parser.Parser;
+import net.yacy.cider.parser.ParserException;
+import net.yacy.cider.util.FileUtils;
+import net.yacy.cider.vocabulary.CIDER;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+
+/**
+ * parse the html samples and a large html page:
+ * - the content text of every html sample must contain the word of the samples
+ * - the text of a large page must be one statement in a model, also if it consists
+ *   of equal paragraphs, and several statements in a sink
+ * The program exits with status 1 if a check fails.
+ */
+public class htmltest {
+    
+    private static final Logger log = Logger.getLogger(FileUtils.class.getName());
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        
+        boolean ok = samples.check("html", "htm");
+        File large = null;
+        try {
+            large = File.createTempFile("htmltest", ".html");
+            final Writer writer = new OutputStreamWriter(new FileOutputStream(large), "UTF-8");
+            try {
+                writer.write("<html><head><meta charset=\"UTF-8\"><title>" + samples.WORD + "</title></head><body>\n");
+                for (int i = 0; i < 100000; i++) writer.write("<p>In " + samples.WORD + " steht ein Hofbr\u00e4uhaus</p>\n");
+                writer.write("</body></html>\n");
+            } finally {
+                writer.close();
+            }
+            final Model model = Parser.parseSource(new URI(large));
+            final long statements = model.listStatements(null, CIDER.data_content_text, (RDFNode) null).toList().size();
+            final String text = samples.text(model);
+            final List<String> segments = new ArrayList<String>();
+            samples.stream(large, segments);
+            final StringBuilder streamed = new StringBuilder();
+            for (String segment: segments) streamed.append(segment);
+            if (statements != 1) {
+                log.error("large page: the model has " + statements + " content text statements");
+                ok = false;
+            }
+            if (segments.size() < 2 || !text.equals(streamed.toString())) {
+                log.error("large page: the sink received " + segments.size() + " segments that do not match the model");
+                ok = false;
+            }
+        } catch (ParserException e) {
+            log.error(e.getMessage(), e);
+            ok = false;
+        } catch (InterruptedException e) {
+            log.error(e.getMessage(), e);
+            ok = false;
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            ok = false;
+        } finally {
+            if (large != null) large.delete();
+        }
+        log.info("htmltest " + (ok ? "passed" : "failed"));
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ *  journaltest.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 27.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.MalformedURLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import net.yacy.cider.ConcurrentOfflineExtractor;
+import net.yacy.cider.ExtractionJournal;
+import net.yacy.cider.TreeCrawler;
+import net.yacy.cider.document.DataSource;
+import net.yacy.cider.document.URI;
+import net.yacy.cider.util.FileUtils;
+
+/**
+ * check the extraction journal:
+ * - a document is recorded when its result is taken, not when it is parsed
+ * - the records of parsed documents contain the content hash, also for sources that have only an uri
+ * - only parsed documents are skipped in the next run; failed documents are tried again
+ * - a crawl of ciderdict/testfiles that is resumed from the journal of a complete crawl terminates,
+ *   submits only the documents that failed and counts the others as finished
+ * The program exits with status 1 if a check fails or a crawl hangs.
+ */
+public class journaltest {
+    
+    private static final Logger log = Logger.getLogger(FileUtils.class.getName());
+    
+    // a crawl of the test files takes a few seconds; a crawl that runs longer hangs
+    private static final long TIMEOUT = 60000;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        
+        boolean ok = false;
+        File journalfile = null;
+        try {
+            journalfile = File.createTempFile("journaltest", ".journal");
+            journalfile.delete();
+            final File testdata = new File("ciderdict/testfiles");
+            ok = recordOnTake(new URI(new File(testdata, "umlaute_linux.txt")), journalfile) &&
+                 retryFailed(new URI(new File(testdata, "umlaute_linux.odt")), journalfile) &&
+                 resume(new URI(testdata), journalfile);
+        } catch (MalformedURLException e) {
+            log.error(e.getMessage(), e);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            log.error(e.getMessage(), e);
+        } finally {
+            if (journalfile != null) journalfile.delete();
+            log.info("journaltest " + (ok ? "passed" : "failed"));
+            System.exit(ok ? 0 : 1);
+        }
+    }
+    
+    private static boolean recordOnTake(final URI uri, final File journalfile) throws IOException, InterruptedException {
+        journalfile.delete();
+        final ExtractionJournal journal = new ExtractionJournal(journalfile, 1);
+        final ConcurrentOfflineExtractor extractor = new ConcurrentOfflineExtractor(1);
+        extractor.setJournal(journal);
+        try {
+            final DataSource source = new DataSource();
+            source.setURI(uri);
+            extractor.submit(source);
+            final long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (extractor.completed() == 0) {
+                if (System.currentTimeMillis() > deadline) {
+                    log.error("the document was not parsed within " + TIMEOUT + " milliseconds");
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+            if (journal.size() != 0) {
+                log.error("the document was recorded before its result was taken");
+                return false;
+            }
+            if (extractor.take() == null || journal.size() != 1) {
+                log.error("the parsed document was not recorded when its result was taken");
+                return false;
+            }
+        } finally {
+            extractor.close();
+            journal.close();
+        }
+        final String[] fields = lastRecord(journalfile).split("\t");
+        if (fields.length < 5 || fields[3].length() != 32) {
+            log.error("the record of an uri source has no content hash: " + lastRecord(journalfile));
+            return false;
+        }
+        return true;
+    }
+    
+    private static boolean retryFailed(final URI uri, final File journalfile) throws IOException {
+        journalfile.delete();
+        final DataSource source = new DataSource();
+        source.setURI(uri);
+        final ExtractionJournal.Item item = ExtractionJournal.item(source);
+        ExtractionJournal journal = new ExtractionJournal(journalfile, 1);
+        journal.record(item, null, "failed");
+        journal.close();
+        journal = new ExtractionJournal(journalfile, 1);
+        final boolean failedDone = journal.isDone(item);
+        journal.record(item, null, ExtractionJournal.PARSED);
+        journal.close();
+        journal = new ExtractionJournal(journalfile, 1);
+        final boolean parsedDone = journal.isDone(item);
+        journal.close();
+        if (failedDone || !parsedDone) {
+            log.error("failed documents must be tried again, parsed documents must be skipped");
+            return false;
+        }
+        return true;
+    }
+    
+    private static boolean resume(final URI root, final File journalfile) throws IOException, InterruptedException {
+        journalfile.delete();
+        
+        // the first run extracts all files and writes the journal
+        final long[] first = crawl(root, journalfile);
+        if (first == null) return false;
+        log.info("first run: " + first[0] + " submitted, " + first[1] + " finished, " + first[2] + " parsed");
+        if (first[0] == 0 || first[1] != 0) {
+            log.error("first run: expected all files to be submitted");
+            return false;
+        }
+        
+        // the second run resumes from the journal and extracts only the files that were not parsed
+        final long[] second = crawl(root, journalfile);
+        if (second == null) return false;
+        log.info("second run: " + second[0] + " submitted, " + second[1] + " finished, " + second[2] + " parsed");
+        if (second[1] != first[2] || second[0] != first[0] - first[2]) {
+            log.error("second run: expected " + first[2] + " finished files and " + (first[0] - first[2]) + " submissions");
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * crawl the root with a journal and consume all results
+     * @return the numbers of submitted, finished and parsed documents,
+     * or null if the crawl or the extraction did not terminate in time
+     */
+    private static long[] crawl(final URI root, final File journalfile) throws IOException, InterruptedException {
+        final ExtractionJournal journal = new ExtractionJournal(journalfile, 1);
+        final ConcurrentOfflineExtractor extractor = new ConcurrentOfflineExtractor(2);
+        extractor.setJournal(journal);
+        final AtomicLong taken = new AtomicLong(0);
+        final AtomicLong parsed = new AtomicLong(0);
+        final Thread consumer = new Thread("journaltest.consumer") {
+            public void run() {
+                while (!isInterrupted()) {
+                    final boolean model = extractor.take() != null;
+                    if (isInterrupted()) break;
+                    if (model) parsed.incrementAndGet();
+                    taken.incrementAndGet();
+                }
+            }
+        };
+        consumer.setDaemon(true);
+        consumer.start();
+        final TreeCrawler crawler = new TreeCrawler(extractor, 2, 1);
+        final Thread crawl = new Thread("journaltest.crawl") {
+            public void run() {
+                try {
+                    crawler.crawl(root);
+                } catch (InterruptedException e) {
+                    log.error("crawl interrupted", e);
+                }
+            }
+        };
+        crawl.setDaemon(true);
+        try {
+            crawl.start();
+            crawl.join(TIMEOUT);
+            if (crawl.isAlive()) {
+                log.error("crawl did not terminate within " + TIMEOUT + " milliseconds");
+                return null;
+            }
+            final long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (taken.get() < crawler.submitted()) {
+                if (System.currentTimeMillis() > deadline) {
+                    log.error("only " + taken.get() + " of " + crawler.submitted() + " documents were extracted");
+                    return null;
+                }
+                Thread.sleep(100);
+            }
+            return new long[]{crawler.submitted(), crawler.finished(), parsed.get()};
+        } finally {
+            consumer.interrupt();
+            extractor.close();
+            journal.close();
+        }
+    }
+    
+    private static String lastRecord(final File journalfile) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalfile), "UTF-8"));
+        try {
+            String line, last = "";
+            while ((line = reader.readLine()) != null) last = line;
+            return last;
+        } finally {
+            reader.close();
+        }
+    }
+}
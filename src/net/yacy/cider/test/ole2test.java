@@ -0,0 +1,92 @@
+/**
+ *  ole2test.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 27.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.log4j.Logger;
+
+import net.yacy.cider.document.URI;
+import net.yacy.cider.parser.Parser;
+import net.yacy.cider.parser.ParserException;
+import net.yacy.cider.util.FileUtils;
+
+/**
+ * parse the legacy doc, xls and ppt samples:
+ * - the content text of every sample must contain the word of the samples
+ * - a document that is cut off must fail with a ParserException and not with
+ *   an error from a stream size that is larger than the document
+ * The program exits with status 1 if a check fails.
+ */
+public class ole2test {
+    
+    private static final Logger log = Logger.getLogger(FileUtils.class.getName());
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        
+        boolean ok = samples.check("doc", "xls", "ppt");
+        for (File sample: samples.files("doc", "xls", "ppt")) ok &= truncated(sample);
+        log.info("ole2test " + (ok ? "passed" : "failed"));
+        System.exit(ok ? 0 : 1);
+    }
+    
+    private static boolean truncated(final File sample) {
+        File file = null;
+        try {
+            final String name = sample.getName();
+            file = File.createTempFile("ole2test", name.substring(name.lastIndexOf('.')));
+            final InputStream is = new FileInputStream(sample);
+            final OutputStream os = new FileOutputStream(file);
+            try {
+                final byte[] b = new byte[(int) sample.length() / 2];
+                int n = 0, c;
+                while (n < b.length && (c = is.read(b, n, b.length - n)) > 0) n += c;
+                os.write(b, 0, n);
+            } finally {
+                is.close();
+                os.close();
+            }
+            Parser.parseSource(new URI(file));
+            return true;
+        } catch (ParserException e) {
+            return true;
+        } catch (InterruptedException e) {
+            log.error(sample.getName() + ": " + e.getMessage(), e);
+        } catch (IOException e) {
+            log.error(sample.getName() + ": " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            log.error(sample.getName() + ": truncated document: " + e, e);
+        } catch (OutOfMemoryError e) {
+            log.error(sample.getName() + ": truncated document: " + e);
+        } finally {
+            if (file != null) file.delete();
+        }
+        return false;
+    }
+}
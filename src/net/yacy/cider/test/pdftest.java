@@ -0,0 +1,45 @@
+/**
+ *  pdftest.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 27.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.test;
+
+import org.apache.log4j.Logger;
+
+import net.yacy.cider.util.FileUtils;
+
+/**
+ * parse the pdf samples and check that their content text
+ * contains the word of the samples.
+ * The program exits with status 1 if a check fails.
+ */
+public class pdftest {
+    
+    private static final Logger log = Logger.getLogger(FileUtils.class.getName());
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        
+        final boolean ok = samples.check("pdf");
+        log.info("pdftest " + (ok ? "passed" : "failed"));
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ *  samples.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 27.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.yacy.cider.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import net.yacy.cider.document.DataSource;
+import net.yacy.cider.document.URI;
+import net.yacy.cider.parser.Parser;
+import net.yacy.cider.parser.ParserException;
+import net.yacy.cider.parser.StatementSink;
+import net.yacy.cider.util.FileUtils;
+import net.yacy.cider.vocabulary.CIDER;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+
+/**
+ * helper for the behaviour checks that parse the files in ciderdict/testfiles
+ */
+public class samples {
+    
+    private static final Logger log = Logger.getLogger(FileUtils.class.getName());
+    
+    /**
+     * every sample contains this word
+     */
+    public static final String WORD = "M\u00fcnchen";
+    
+    public static final File TESTFILES = new File("ciderdict/testfiles");
+    
+    /**
+     * the samples that have a parser
+     * @param extensions the extensions of the samples, or none for all samples
+     * @return the sample files
+     */
+    public static List<File> files(final String... extensions) {
+        final List<File> files = new ArrayList<File>();
+        for (String name: TESTFILES.list()) {
+            final File file = new File(TESTFILES, name);
+            try {
+                if (Parser.supportsExtension(new URI(file)) != null) continue;
+            } catch (IOException e) {
+                continue;
+            }
+            if (extensions.length == 0) {
+                files.add(file);
+                continue;
+            }
+            for (String extension: extensions) if (name.endsWith("." + extension)) files.add(file);
+        }
+        return files;
+    }
+    
+    /**
+     * the content text of a model
+     * @param model
+     * @return the content text or an empty string
+     */
+    public static String text(final Model model) {
+        final StringBuilder text = new StringBuilder();
+        if (model == null) return "";
+        final StmtIterator i = model.listStatements(null, CIDER.data_content_text, (RDFNode) null);
+        try {
+            while (i.hasNext()) {
+                final Statement s = i.nextStatement();
+                text.append(s.getLiteral().getLexicalForm());
+            }
+        } finally {
+            i.close();
+        }
+        return text.toString();
+    }
+    
+    /**
+     * parse a file into a statement sink
+     * @param file
+     * @param segments the content text statements in the order of the sink
+     * @throws ParserException
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    public static void stream(final File file, final List<String> segments) throws ParserException, InterruptedException, IOException {
+        final URI uri = new URI(file);
+        final InputStream is = uri.getInputStream();
+        try {
+            final DataSource source = new DataSource(uri, Parser.mimeOf(uri), "UTF-8", is);
+            source.setSize(file.length());
+            Parser.parseSource(source, new StatementSink() {
+                public void add(Resource subject, Property predicate, RDFNode object) {
+                    if (predicate.equals(CIDER.data_content_text)) segments.add(object.asNode().getLiteralLexicalForm());
+                }
+            });
+        } finally {
+            is.close();
+        }
+    }
+    
+    /**
+     * parse the samples into a model and into a statement sink and check that the content text
+     * contains the WORD in both cases
+     * @param extensions the extensions of the samples
+     * @return true if all samples passed the check
+     */
+    public static boolean check(final String... extensions) {
+        final List<File> files = files(extensions);
+        int failures = 0;
+        if (files.isEmpty()) {
+            log.error("no samples found");
+            return false;
+        }
+        for (File file: files) {
+            try {
+                final Model model = Parser.parseSource(new URI(file));
+                if (text(model).indexOf(WORD) < 0) {
+                    log.error(file.getName() + ": model does not contain '" + WORD + "'");
+                    failures++;
+                }
+                final List<String> segments = new ArrayList<String>();
+                stream(file, segments);
+                final StringBuilder text = new StringBuilder();
+                for (String segment: segments) text.append(segment);
+                if (text.indexOf(WORD) < 0) {
+                    log.error(file.getName() + ": sink did not receive '" + WORD + "'");
+                    failures++;
+                }
+            } catch (ParserException e) {
+                log.error(file.getName() + ": " + e.getMessage());
+                failures++;
+            } catch (InterruptedException e) {
+                log.error(file.getName() + ": interrupted");
+                failures++;
+            } catch (IOException e) {
+                log.error(file.getName() + ": " + e.getMessage());
+                failures++;
+            }
+        }
+        log.info(files.size() + " samples checked, " + failures + " failures");
+        return failures == 0;
+    }
+}
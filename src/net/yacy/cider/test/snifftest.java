@@ -0,0 +1,116 @@
+/**
+ *  snifftest.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 27.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.yacy.cider.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+
+import org.apache.log4j.Logger;
+
+import net.yacy.cider.document.DataSource;
+import net.yacy.cider.document.URI;
+import net.yacy.cider.parser.Parser;
+import net.yacy.cider.parser.ParserException;
+import net.yacy.cider.util.FileUtils;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+
+/**
+ * parse samples from ciderdict/testfiles that are copied to files with a wrong extension.
+ * The idiom must be chosen from the content, and the source must be read from the
+ * stream that was opened for sniffing. The program exits with status 1 if a check fails.
+ */
+public class snifftest {
+    
+    private static final Logger log = Logger.getLogger(FileUtils.class.getName());
+    
+    // every sample contains this word
+    private static final String WORD = "M\u00fcnchen";
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        
+        boolean ok = true;
+        final File testdata = new File("ciderdict/testfiles");
+        ok &= check(new File(testdata, "umlaute_linux.odt"), "txt");
+        ok &= check(new File(testdata, "umlaute_html_utf8.html"), "doc");
+        ok &= check(new File(testdata, "umlaute_windows.docx"), "html");
+        log.info("snifftest " + (ok ? "passed" : "failed"));
+        System.exit(ok ? 0 : 1);
+    }
+    
+    private static boolean check(final File sample, final String extension) {
+        File copy = null;
+        try {
+            copy = File.createTempFile("snifftest", "." + extension);
+            FileUtils.copy(sample, copy);
+            final DataSource source = new DataSource();
+            source.setURI(new URI(copy));
+            
+            // sniffing opens the uri once and leaves a stream for the parser
+            Parser.sniff(source);
+            if (!source.hasStream()) {
+                log.error(sample.getName() + " as ." + extension + ": sniffing did not leave a stream for the parser");
+                return false;
+            }
+            source.getStream().close();
+            
+            final DataSource fresh = new DataSource();
+            fresh.setURI(new URI(copy));
+            final Model model = Parser.parseSource(fresh);
+            if (model == null || !contains(model)) {
+                log.error(sample.getName() + " as ." + extension + ": model does not contain '" + WORD + "'");
+                return false;
+            }
+            return true;
+        } catch (ParserException e) {
+            log.error(sample.getName() + " as ." + extension + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            log.error(e.getMessage(), e);
+        } catch (MalformedURLException e) {
+            log.error(e.getMessage(), e);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        } finally {
+            if (copy != null) copy.delete();
+        }
+        return false;
+    }
+    
+    private static boolean contains(final Model model) {
+        StmtIterator i = model.listStatements();
+        try {
+            while (i.hasNext()) {
+                final RDFNode node = i.nextStatement().getObject();
+                if (node.isLiteral() && node.toString().indexOf(WORD) >= 0) return true;
+            }
+        } finally {
+            i.close();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ *  texttest.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 27.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.log4j.Logger;
+
+import net.yacy.cider.document.URI;
+import net.yacy.cider.parser.Parser;
+import net.yacy.cider.parser.ParserException;
+import net.yacy.cider.util.FileUtils;
+
+/**
+ * parse the text samples and texts in other charsets than UTF-8:
+ * - the content text of every text sample must contain the word of the samples
+ * - a windows-1252 text and a UTF-16 text with byte order mark must be decoded
+ *   without a charset given in the source
+ * The program exits with status 1 if a check fails.
+ */
+public class texttest {
+    
+    private static final Logger log = Logger.getLogger(FileUtils.class.getName());
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        
+        boolean ok = samples.check("txt");
+        ok &= check("windows-1252", new byte[0]);
+        ok &= check("UTF-16LE", new byte[]{(byte) 0xFF, (byte) 0xFE});
+        log.info("texttest " + (ok ? "passed" : "failed"));
+        System.exit(ok ? 0 : 1);
+    }
+    
+    private static boolean check(final String charset, final byte[] bom) {
+        File file = null;
+        try {
+            file = File.createTempFile("texttest", ".txt");
+            final OutputStream os = new FileOutputStream(file);
+            try {
+                os.write(bom);
+                os.write(("In " + samples.WORD + " steht ein Hofbr\u00e4uhaus\n").getBytes(charset));
+            } finally {
+                os.close();
+            }
+            final String text = samples.text(Parser.parseSource(new URI(file)));
+            if (text.indexOf(samples.WORD) >= 0) return true;
+            log.error(charset + ": the text '" + text + "' does not contain '" + samples.WORD + "'");
+        } catch (ParserException e) {
+            log.error(charset + ": " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            log.error(charset + ": " + e.getMessage(), e);
+        } catch (IOException e) {
+            log.error(charset + ": " + e.getMessage(), e);
+        } finally {
+            if (file != null) file.delete();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ *  ContentBuffer.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.log4j.Logger;
+
+/**
+ * a content buffer holds the content of a stream so that it can be read several times.
+ * Small contents are held in memory; contents that are larger than the memory threshold are written
+ * to a temporary file that is mapped into memory. The heap use of a buffer is therefore limited by the
+ * threshold, independent from the size of the content. Every call to newStream() returns a new stream
+ * that starts at the beginning of the content; streams from the same buffer can be read at the same time.
+ * The buffer must be closed to delete the temporary file.
+ */
+public class ContentBuffer {
+
+    private static final Logger log = Logger.getLogger(ContentBuffer.class.getName());
+    
+    /**
+     * the default size limit for contents that are held on the heap
+     */
+    public static final int DEFAULT_MEMORY_THRESHOLD = 4 * 1024 * 1024;
+    
+    // a mapped region can be at most Integer.MAX_VALUE long; large files are mapped in several regions
+    private static final long MAP_REGION = 1L << 30;
+    
+    private byte[] array;
+    private File spill;
+    private MappedByteBuffer[] regions;
+    private long length;
+    
+    /**
+     * read the stream into a new content buffer. The stream is not closed.
+     * @param source the content
+     * @param contentLength the length of the content if known or -1
+     * @param threshold the maximum number of bytes that are held on the heap
+     * @throws IOException
+     */
+    public ContentBuffer(final InputStream source, final long contentLength, final int threshold) throws IOException {
+        this.array = null;
+        this.spill = null;
+        this.regions = null;
+        final boolean small = contentLength >= 0 && contentLength <= threshold;
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(small ? (int) contentLength : 512);
+        if (small || contentLength < 0) {
+            // try to read the content into memory and see if it fits; the given length may be wrong
+            FileUtils.copy(source, baos, threshold + 1);
+            if (baos.size() <= threshold) {
+                this.array = baos.toByteArray();
+                this.length = this.array.length;
+                return;
+            }
+        }
+        spill(baos, source);
+    }
+    
+    /**
+     * read the stream into a new content buffer with the default memory threshold.
+     * @param source the content
+     * @param contentLength the length of the content if known or -1
+     * @throws IOException
+     */
+    public ContentBuffer(final InputStream source, final long contentLength) throws IOException {
+        this(source, contentLength, DEFAULT_MEMORY_THRESHOLD);
+    }
+    
+    /**
+     * wrap an array into a content buffer. The array is not copied.
+     * @param content the content
+     */
+    public ContentBuffer(final byte[] content) {
+        this.array = content;
+        this.spill = null;
+        this.regions = null;
+        this.length = content.length;
+    }
+    
+    private void spill(final ByteArrayOutputStream head, final InputStream source) throws IOException {
+        this.spill = File.createTempFile("cider", ".content");
+        this.spill.deleteOnExit();
+        final OutputStream os = new FileOutputStream(this.spill);
+        try {
+            head.writeTo(os);
+            // FileUtils.copy flushes every kilobyte; that is too slow for large files
+            final byte[] buffer = new byte[64 * 1024];
+            int c;
+            while ((c = source.read(buffer)) > 0) os.write(buffer, 0, c);
+        } finally {
+            os.close();
+        }
+        final RandomAccessFile raf = new RandomAccessFile(this.spill, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            this.length = channel.size();
+            this.regions = new MappedByteBuffer[(int) ((this.length + MAP_REGION - 1) / MAP_REGION)];
+            for (int i = 0; i < this.regions.length; i++) {
+                final long offset = i * MAP_REGION;
+                this.regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAP_REGION, this.length - offset));
+            }
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+        if (log.isDebugEnabled()) log.debug("spilled " + this.length + " bytes to " + this.spill);
+    }
+    
+    /**
+     * @return the number of bytes in the buffer
+     */
+    public long length() {
+        return this.length;
+    }
+    
+    /**
+     * @return true if the content was written to a temporary file
+     */
+    public boolean isSpilled() {
+        return this.spill != null;
+    }
+    
+    /**
+     * get the content as byte array. This is only possible if the content was not spilled.
+     * @return the content or null if the content is in a temporary file
+     */
+    public byte[] getArray() {
+        return this.array;
+    }
+    
+    /**
+     * create a new stream that reads the content from the beginning
+     * @return a stream over the content
+     */
+    public InputStream newStream() {
+        if (this.array != null) return new ByteArrayInputStream(this.array);
+        if (this.regions == null) throw new IllegalStateException("content buffer is closed");
+        final ByteBuffer[] b = new ByteBuffer[this.regions.length];
+        for (int i = 0; i < b.length; i++) b[i] = this.regions[i].duplicate();
+        return new RegionInputStream(b);
+    }
+    
+    /**
+     * read bytes from any position of the content. This does not change the position of any stream.
+     * @param position the position of the first byte in the content
+     * @param b the target array
+     * @param off the offset in the target array
+     * @param len the number of bytes to read
+     * @return the number of bytes that were read; less than len only at the end of the content
+     */
+    public int read(final long position, final byte[] b, final int off, final int len) {
+        if (position < 0) throw new IndexOutOfBoundsException("position " + position);
+        final int n = (int) Math.max(0, Math.min(len, this.length - position));
+        if (n == 0) return 0;
+        if (this.array != null) {
+            System.arraycopy(this.array, (int) position, b, off, n);
+            return n;
+        }
+        if (this.regions == null) throw new IllegalStateException("content buffer is closed");
+        int done = 0;
+        while (done < n) {
+            final long p = position + done;
+            // a duplicate has its own position, so that streams and other readers are not disturbed
+            final ByteBuffer r = this.regions[(int) (p / MAP_REGION)].duplicate();
+            r.position((int) (p % MAP_REGION));
+            final int c = Math.min(n - done, r.remaining());
+            r.get(b, off + done, c);
+            done += c;
+        }
+        return n;
+    }
+    
+    /**
+     * release the content and delete the temporary file
+     */
+    public void close() {
+        this.array = null;
+        this.regions = null;
+        if (this.spill != null) {
+            // on some platforms the file cannot be deleted until the mapping is garbage collected;
+            // in that case it is deleted at exit
+            if (!this.spill.delete()) log.debug("cannot delete " + this.spill + " now, deleting on exit");
+            this.spill = null;
+        }
+    }
+    
+    private static class RegionInputStream extends InputStream {
+        
+        private final ByteBuffer[] regions;
+        private int current;
+        
+        public RegionInputStream(final ByteBuffer[] regions) {
+            this.regions = regions;
+            this.current = 0;
+        }
+        
+        private ByteBuffer region() {
+            while (this.current < this.regions.length && !this.regions[this.current].hasRemaining()) this.current++;
+            return (this.current < this.regions.length) ? this.regions[this.current] : null;
+        }
+        
+        @Override
+        public int read() {
+            final ByteBuffer b = region();
+            return (b == null) ? -1 : b.get() & 0xff;
+        }
+        
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0) return 0;
+            final ByteBuffer r = region();
+            if (r == null) return -1;
+            final int n = Math.min(len, r.remaining());
+            r.get(b, off, n);
+            return n;
+        }
+        
+        @Override
+        public long skip(final long n) {
+            long skipped = 0;
+            ByteBuffer r;
+            while (skipped < n && (r = region()) != null) {
+                final int s = (int) Math.min(n - skipped, r.remaining());
+                r.position(r.position() + s);
+                skipped += s;
+            }
+            return skipped;
+        }
+        
+        @Override
+        public int available() {
+            final ByteBuffer r = region();
+            return (r == null) ? 0 : r.remaining();
+        }
+    }
+}
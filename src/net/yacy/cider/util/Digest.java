@@ -0,0 +1,136 @@
+/**
+ *  Digest.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public final class Digest {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME  = 0x100000001b3L;
+    
+    /**
+     * compute the md5 hash of a byte array
+     * @param b the bytes
+     * @return the hash as 32 hex characters
+     */
+    public static String md5Hex(final byte[] b) {
+        try {
+            return hex(MessageDigest.getInstance("MD5").digest(b));
+        } catch (NoSuchAlgorithmException e) {
+            // md5 is mandatory for all java platforms
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * compute the md5 hash of the content of a stream. The stream is read to the end but not closed.
+     * @param is the stream
+     * @return the hash as 32 hex characters
+     * @throws IOException
+     */
+    public static String md5Hex(final InputStream is) throws IOException {
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        final byte[] buffer = new byte[64 * 1024];
+        int c;
+        while ((c = is.read(buffer)) > 0) md.update(buffer, 0, c);
+        return hex(md.digest());
+    }
+    
+    /**
+     * wrap a stream into a stream that computes the md5 hash of the bytes that are read through it
+     * @param is the stream
+     * @return the digest stream; the hash is computed with finish()
+     */
+    public static DigestInputStream md5Stream(final InputStream is) {
+        try {
+            return new DigestInputStream(is, MessageDigest.getInstance("MD5"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * read the rest of a digest stream and return the hash of all bytes that were read through it.
+     * The stream is not closed.
+     * @param is the stream
+     * @return the hash as 32 hex characters
+     * @throws IOException
+     */
+    public static String finish(final DigestInputStream is) throws IOException {
+        final byte[] buffer = new byte[64 * 1024];
+        while (is.read(buffer) >= 0) {}
+        return hex(is.getMessageDigest().digest());
+    }
+    
+    /**
+     * compute the md5 hash of the UTF-8 bytes of a string
+     * @param s the string
+     * @return the hash as 32 hex characters
+     */
+    public static String md5Hex(final String s) {
+        try {
+            return md5Hex(s.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            return md5Hex(s.getBytes());
+        }
+    }
+    
+    /**
+     * compute a 64 bit FNV-1a hash of a string. The hash is not cryptographic,
+     * but good enough as key for large hash sets.
+     * @param s the string
+     * @return the hash
+     */
+    public static long fnv64(final String s) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            h ^= (c & 0xff);
+            h *= FNV_PRIME;
+            h ^= (c >>> 8);
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+    
+    public static String hex(final byte[] b) {
+        final char[] c = new char[b.length * 2];
+        for (int i = 0; i < b.length; i++) {
+            c[2 * i] = HEX[(b[i] >> 4) & 0xf];
+            c[2 * i + 1] = HEX[b[i] & 0xf];
+        }
+        return new String(c);
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ *  LongHashSet.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.util;
+
+/**
+ * a set of long values with open addressing in a single long[] array.
+ * This needs about 8 to 16 bytes per element, much less than a HashSet<Long>.
+ * The value 0 is stored in a separate flag because 0 marks empty slots.
+ * The class is not synchronized.
+ */
+public class LongHashSet {
+
+    private long[] table;
+    private int size;
+    private boolean hasZero;
+    
+    public LongHashSet() {
+        this(1024);
+    }
+    
+    public LongHashSet(final int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) capacity <<= 1;
+        this.table = new long[capacity];
+        this.size = 0;
+        this.hasZero = false;
+    }
+    
+    private static int slot(final long key, final int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+    
+    public boolean contains(final long key) {
+        if (key == 0) return this.hasZero;
+        final int mask = this.table.length - 1;
+        int i = slot(key, mask);
+        long k;
+        while ((k = this.table[i]) != 0) {
+            if (k == key) return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+    
+    /**
+     * add a key to the set
+     * @param key
+     * @return true if the key was not in the set before
+     */
+    public boolean add(final long key) {
+        if (key == 0) {
+            if (this.hasZero) return false;
+            this.hasZero = true;
+            this.size++;
+            return true;
+        }
+        if ((this.size + 1) * 2 > this.table.length) grow();
+        final int mask = this.table.length - 1;
+        int i = slot(key, mask);
+        long k;
+        while ((k = this.table[i]) != 0) {
+            if (k == key) return false;
+            i = (i + 1) & mask;
+        }
+        this.table[i] = key;
+        this.size++;
+        return true;
+    }
+    
+    private void grow() {
+        final long[] old = this.table;
+        this.table = new long[old.length * 2];
+        final int mask = this.table.length - 1;
+        for (long key: old) {
+            if (key == 0) continue;
+            int i = slot(key, mask);
+            while (this.table[i] != 0) i = (i + 1) & mask;
+            this.table[i] = key;
+        }
+    }
+    
+    public int size() {
+        return this.size;
+    }
+}
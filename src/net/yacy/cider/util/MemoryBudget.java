@@ -0,0 +1,99 @@
+/**
+ *  MemoryBudget.java
+ *  Copyright 2010 by Michael Peter Christen
+ *  First released 22.4.2010 at http://yacy.net
+ *  
+ *  This file is part of YaCy Content Integration
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file COPYING.LESSER.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cider.util;
+
+import java.util.ArrayDeque;
+
+/**
+ * the memory budget is an admission control for processes that need a large amount of heap space.
+ * A process must acquire the estimated number of bytes before it starts and release them when it is finished.
+ * If the budget would be exceeded, the process waits until enough bytes are released. A single process
+ * that is larger than the whole budget is admitted if no other process holds any bytes, so that it can
+ * run alone. Waiting processes are admitted in the order of their arrival; a large process cannot be
+ * overtaken by a stream of small processes.
+ */
+public class MemoryBudget {
+
+    private final long budget;
+    private long inFlight;
+    private final ArrayDeque<Object> waiting;
+    
+    /**
+     * create a memory budget
+     * @param budget the number of bytes that may be in use at the same time
+     */
+    public MemoryBudget(final long budget) {
+        if (budget <= 0) throw new IllegalArgumentException("budget must be positive");
+        this.budget = budget;
+        this.inFlight = 0;
+        this.waiting = new ArrayDeque<Object>();
+    }
+    
+    /**
+     * acquire bytes from the budget, wait if the bytes are not available
+     * @param bytes the number of bytes that shall be used
+     * @throws InterruptedException
+     */
+    public synchronized void acquire(final long bytes) throws InterruptedException {
+        final Object ticket = new Object();
+        this.waiting.add(ticket);
+        try {
+            while (this.waiting.peek() != ticket || (this.inFlight > 0 && this.inFlight + bytes > this.budget)) this.wait();
+        } finally {
+            this.waiting.remove(ticket);
+            // the next waiting process may be admitted now, or may move to the head of the queue
+            this.notifyAll();
+        }
+        this.inFlight += bytes;
+    }
+    
+    /**
+     * give bytes back to the budget
+     * @param bytes the number of bytes that had been acquired
+     */
+    public synchronized void release(final long bytes) {
+        this.inFlight -= bytes;
+        assert this.inFlight >= 0;
+        this.notifyAll();
+    }
+    
+    /**
+     * the number of bytes that are currently acquired
+     * @return bytes in use
+     */
+    public synchronized long inFlight() {
+        return this.inFlight;
+    }
+    
+    /**
+     * the number of processes that wait for admission
+     * @return waiting processes count
+     */
+    public synchronized int waiting() {
+        return this.waiting.size();
+    }
+    
+    public long getBudget() {
+        return this.budget;
+    }
+}
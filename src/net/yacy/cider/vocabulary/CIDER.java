@@ -78,6 +78,7 @@ public class CIDER {
 
         // definition of the cider references vocabulary 
         references_referrer_URI = references_model.createProperty(REFERENCES_NS, "referrerURI"), // as defined in http://www.ietf.org/rfc/rfc2616.txt 14.36 as 'referer'
+        references_link_URI     = references_model.createProperty(REFERENCES_NS, "linkURI"), // a hyperlink from the content to another resource
 
         // definition of the cider data vocabulary 
         data_content_text       = data_model.createProperty(DATA_NS, "contentText"); // the whole content as plain text, encoded as UTF-8